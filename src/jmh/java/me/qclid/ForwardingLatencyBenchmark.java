@@ -0,0 +1,170 @@
+package me.qclid;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Time from the child writing a line into its stdout pipe until the console has written it,
+ * while a background "child" thread keeps the pipe busy at a fixed rate. The sample-time mode
+ * reports the tail (p99, p99.9, max) next to the average.
+ * The log pipeline is in the path too, but it flushes by size or every 200 ms, so its own
+ * latency is measured by throughput rather than here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ForwardingLatencyBenchmark {
+
+    private static final byte MARK = 1;
+
+    @Param({ "120" })
+    int lineLength;
+
+    /**
+     * Lines per second written by the background thread besides the measured ones.
+     */
+    @Param({ "0", "10000", "100000" })
+    int backgroundRate;
+
+    private OutputStream child;
+    private LogPipeline log;
+    private ConsoleSink console;
+    private MarkCounter delivered;
+    private Thread gobbler;
+    private Thread background;
+    private volatile boolean running;
+    private byte[] marked;
+    private long sent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Pipe pipe = Pipe.open();
+        child = Channels.newOutputStream(pipe.sink());
+
+        log = new LogPipeline("bench", OutputStream.nullOutputStream());
+        ConsoleConfig config = new ConsoleConfig();
+        config.setOverflow("block");
+        console = new ConsoleSink(config);
+        delivered = new MarkCounter();
+        gobbler = new Thread(
+            new StreamGobbler(
+                Channels.newInputStream(pipe.source()),
+                List.of(
+                    log.listener(java.util.logging.Level.INFO),
+                    console.target(new PassthroughConsole(delivered))
+                )
+            ),
+            "bench-gobbler"
+        );
+        gobbler.start();
+
+        Random random = new Random(7);
+        marked = line(random, MARK);
+        running = true;
+        if (backgroundRate > 0) {
+            byte[] filler = line(random, (byte) 'x');
+            background = new Thread(() -> writeAtRate(filler), "bench-child");
+            background.start();
+        }
+    }
+
+    private byte[] line(Random random, byte first) {
+        byte[] text = SyntheticOutput.line(random, lineLength);
+        byte[] line = new byte[text.length + 1];
+        System.arraycopy(text, 0, line, 0, text.length);
+        line[0] = first;
+        line[text.length] = '\n';
+        return line;
+    }
+
+    // Writes in 1 ms ticks, like a busy server printing bursts of lines
+    private void writeAtRate(byte[] filler) {
+        long interval = TimeUnit.MILLISECONDS.toNanos(1);
+        double perTick = backgroundRate / 1000.0;
+        double owed = 0;
+        long next = System.nanoTime();
+        while (running) {
+            owed += perTick;
+            for (; owed >= 1; owed--) {
+                write(filler);
+            }
+            next += interval;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+    }
+
+    private void write(byte[] line) {
+        synchronized (this) {
+            try {
+                child.write(line);
+            } catch (IOException e) {
+                running = false;
+            }
+        }
+    }
+
+    @Benchmark
+    public void childToConsole() {
+        long target = ++sent;
+        write(marked);
+        while (delivered.marks < target) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        running = false;
+        if (background != null) {
+            background.join();
+        }
+        child.close();
+        gobbler.join();
+        log.close();
+        console.close();
+    }
+
+    /**
+     * Console output that counts the measured lines as they are written.
+     */
+    private static final class MarkCounter extends OutputStream {
+
+        volatile long marks;
+
+        @Override
+        public void write(int b) {
+            if (b == MARK) {
+                marks++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            long found = 0;
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == MARK) {
+                    found++;
+                }
+            }
+            if (found > 0) {
+                marks += found;
+            }
+        }
+    }
+}
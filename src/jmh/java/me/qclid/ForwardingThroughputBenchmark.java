@@ -0,0 +1,84 @@
+package me.qclid;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Lines per second through the child output path: {@link StreamGobbler} splitting a stream of
+ * Minecraft-like lines and handing them to the tick health analyzer, or to the log pipeline and
+ * the console, both writing to nowhere. Run with the GC profiler (the default in build.gradle) for the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ForwardingThroughputBenchmark.LINES)
+public class ForwardingThroughputBenchmark {
+
+    static final int LINES = 20_000;
+
+    @Param({ "48", "120", "400" })
+    int lineLength;
+
+    /**
+     * gobbler: splitting only; analyzer: plus the tick health analyzer; log: plus the log pipeline;
+     * log+console: plus the console sink.
+     */
+    @Param({ "gobbler", "analyzer", "log", "log+console" })
+    String sinks;
+
+    private byte[] output;
+    private LogPipeline log;
+    private ConsoleSink console;
+    private final List<StreamGobbler.LineListener> listeners = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        output = SyntheticOutput.lines(LINES, lineLength);
+        if (sinks.equals("analyzer")) {
+            listeners.add(new TickHealthAnalyzer());
+        }
+        if (sinks.startsWith("log")) {
+            log = new LogPipeline("bench", OutputStream.nullOutputStream());
+            listeners.add(log.listener(java.util.logging.Level.INFO));
+        }
+        if (sinks.endsWith("console")) {
+            // Block instead of skipping lines, so every line is really written
+            ConsoleConfig config = new ConsoleConfig();
+            config.setOverflow("block");
+            console = new ConsoleSink(config);
+            listeners.add(console.target(new PassthroughConsole(OutputStream.nullOutputStream())));
+        }
+        if (listeners.isEmpty()) {
+            listeners.add((line, offset, length) -> {});
+        }
+    }
+
+    @Benchmark
+    public void forward() {
+        new StreamGobbler(new ByteArrayInputStream(output), listeners).run();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (log != null) {
+            log.close();
+        }
+        if (console != null) {
+            console.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package me.qclid;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Minecraft-like console output for the benchmarks: timestamped log lines with a mix of
+ * chat, commands, joins and lag warnings, padded or cut to a fixed length.
+ */
+final class SyntheticOutput {
+
+    private static final String[] MESSAGES = {
+        "[%s INFO]: <Player%d> anyone want to trade diamonds for an elytra?",
+        "[%s INFO]: Player%d issued server command: /home base",
+        "[%s INFO]: Player%d joined the game",
+        "[%s INFO]: Player%d lost connection: Disconnected",
+        "[%s WARN]: Can't keep up! Is the server overloaded? Running %d ms or 40 ticks behind",
+        "[%s INFO]: [WorldEdit] Player%d used //set stone on 4096 blocks",
+        "[%s WARN]: [SomePlugin] Task #%d for SomePlugin v1.2.3 generated an exception",
+    };
+
+    private SyntheticOutput() {}
+
+    /**
+     * @param count Number of lines
+     * @param length Length of every line in bytes, not counting the newline
+     * @return The lines, each terminated by '\n'
+     */
+    static byte[] lines(int count, int length) {
+        Random random = new Random(42);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(count * (length + 1));
+        for (int i = 0; i < count; i++) {
+            out.writeBytes(line(random, length));
+            out.write('\n');
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param random Source of the player numbers and message mix
+     * @param length Length of the line in bytes, without a newline
+     * @return One line
+     */
+    static byte[] line(Random random, int length) {
+        String time = String.format("%02d:%02d:%02d", random.nextInt(24), random.nextInt(60), random.nextInt(60));
+        String message = String.format(MESSAGES[random.nextInt(MESSAGES.length)], time, random.nextInt(1000));
+        StringBuilder line = new StringBuilder(length).append(message);
+        while (line.length() < length) {
+            line.append(" lorem ipsum dolor sit amet");
+        }
+        line.setLength(length);
+        return line.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
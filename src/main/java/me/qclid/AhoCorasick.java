@@ -0,0 +1,124 @@
+package me.qclid;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Byte-level Aho-Corasick automaton: finds every one of many literal patterns in a single
+ * pass over a line. Transitions are compiled into a dense table, so matching is one array
+ * lookup per input byte with no backtracking.
+ */
+public class AhoCorasick {
+
+    private final int[] next;
+    private final int[][] outputs;
+
+    /**
+     * Compiles the patterns. Pattern ids are their indexes in the list.
+     * @param patterns The literal patterns; empty patterns never match
+     */
+    public AhoCorasick(List<byte[]> patterns) {
+        // Build the trie
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        trie.add(newRow());
+        out.add(new ArrayList<>());
+        for (int id = 0; id < patterns.size(); id++) {
+            byte[] pattern = patterns.get(id);
+            if (pattern.length == 0) {
+                continue;
+            }
+            int state = 0;
+            for (byte b : pattern) {
+                int c = b & 0xFF;
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newRow());
+                    out.add(new ArrayList<>());
+                }
+                state = trie.get(state)[c];
+            }
+            out.get(state).add(id);
+        }
+
+        // Breadth-first: fill failure transitions so every state has a move for every byte
+        int states = trie.size();
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] root = trie.get(0);
+        for (int c = 0; c < 256; c++) {
+            if (root[c] < 0) {
+                root[c] = 0;
+            } else {
+                fail[root[c]] = 0;
+                queue.add(root[c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] row = trie.get(state);
+            out.get(state).addAll(out.get(fail[state]));
+            for (int c = 0; c < 256; c++) {
+                int child = row[c];
+                if (child < 0) {
+                    row[c] = trie.get(fail[state])[c];
+                } else {
+                    fail[child] = trie.get(fail[state])[c];
+                    queue.add(child);
+                }
+            }
+        }
+
+        next = new int[states * 256];
+        outputs = new int[states][];
+        for (int state = 0; state < states; state++) {
+            System.arraycopy(trie.get(state), 0, next, state * 256, 256);
+            List<Integer> ids = out.get(state);
+            outputs[state] = ids.isEmpty() ? null : ids.stream().mapToInt(Integer::intValue).distinct().toArray();
+        }
+    }
+
+    private static int[] newRow() {
+        int[] row = new int[256];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    /**
+     * Receives pattern matches in the order they end. May be called more than once for the same pattern.
+     */
+    public interface MatchHandler {
+        /**
+         * @param patternId The index of the pattern
+         * @param end The index in the buffer just past the match
+         */
+        void onMatch(int patternId, int end);
+    }
+
+    /**
+     * Scans a slice of a buffer and reports every pattern occurrence.
+     * @param buffer The buffer to scan
+     * @param offset Start of the slice
+     * @param length Length of the slice
+     * @param handler Called for each match
+     */
+    public void scan(byte[] buffer, int offset, int length, MatchHandler handler) {
+        int state = 0;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            state = next[(state << 8) | (buffer[i] & 0xFF)];
+            int[] matched = outputs[state];
+            if (matched != null) {
+                for (int id : matched) {
+                    handler.onMatch(id, i + 1);
+                }
+            }
+        }
+    }
+
+    public int getStateCount() {
+        return outputs.length;
+    }
+}
@@ -0,0 +1,28 @@
+package me.qclid;
+
+import java.util.logging.LogManager;
+
+/**
+ * LogManager that keeps AnyJar's handlers attached while shutdown hooks run.
+ * The stock LogManager resets itself from its own shutdown hook, which would silently drop
+ * everything logged while the server is being stopped.
+ */
+public class AnyJarLogManager extends LogManager {
+
+    private static volatile boolean keepHandlers;
+
+    /**
+     * Ignores later resets, including the one from the JDK's shutdown hook.
+     * Call once logging is set up.
+     */
+    public static void keepHandlers() {
+        keepHandlers = true;
+    }
+
+    @Override
+    public void reset() {
+        if (!keepHandlers) {
+            super.reset();
+        }
+    }
+}
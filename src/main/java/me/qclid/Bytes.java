@@ -0,0 +1,67 @@
+package me.qclid;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allocation-free helpers for matching text inside raw output lines.
+ */
+public final class Bytes {
+
+    private Bytes() {}
+
+    public static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the first occurrence of a pattern in a slice of a buffer.
+     * @param buffer The buffer to search
+     * @param offset Start of the slice
+     * @param length Length of the slice
+     * @param pattern The bytes to look for
+     * @return The index of the match in the buffer, or -1; an empty pattern matches at {@code offset}
+     */
+    public static int indexOf(byte[] buffer, int offset, int length, byte[] pattern) {
+        if (pattern.length == 0) {
+            return offset;
+        }
+        int end = offset + length - pattern.length;
+        byte first = pattern[0];
+        outer:
+        for (int i = offset; i <= end; i++) {
+            if (buffer[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    public static boolean contains(byte[] buffer, int offset, int length, byte[] pattern) {
+        return indexOf(buffer, offset, length, pattern) >= 0;
+    }
+
+    /**
+     * Parses an unsigned decimal number starting at the given index.
+     * @param buffer The buffer to read from
+     * @param from Index of the first digit
+     * @param end Index one past the last readable byte
+     * @return The number, or -1 if there is no digit at {@code from}
+     */
+    public static long parseLong(byte[] buffer, int from, int end) {
+        long value = -1;
+        for (int i = from; i < end; i++) {
+            byte b = buffer[i];
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = (value < 0 ? 0 : value * 10) + (b - '0');
+        }
+        return value;
+    }
+}
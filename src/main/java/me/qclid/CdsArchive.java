@@ -0,0 +1,187 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Manages a dynamic AppCDS archive for a server jar.
+ * The first run records the loaded classes with -XX:ArchiveClassesAtExit; later runs map the
+ * archive with -XX:SharedArchiveFile. The archive is thrown away whenever the jar's size or
+ * modification time or the Java version changes. Time-to-ready of the recording run is kept to compare later runs
+ * against; it is not a plain launch (recording has overhead of its own), so the comparison is only a rough guide.
+ * Each service has an archive of its own, at an absolute path, since its process runs in its own directory.
+ */
+public class CdsArchive {
+
+    private static final Logger logger = Logger.getLogger(CdsArchive.class.getName());
+    private static final File CDS_DIR = new File("Anyjar/cds");
+    private static final int MIN_FEATURE = 13;
+
+    private final File jar;
+    private final File archive;
+    private final File stampFile;
+    private final Properties stamp;
+    private boolean training;
+
+    private CdsArchive(File jar, File archive, File stampFile, Properties stamp, boolean training) {
+        this.jar = jar;
+        this.archive = archive;
+        this.stampFile = stampFile;
+        this.stamp = stamp;
+        this.training = training;
+    }
+
+    /**
+     * Checks the existing archive for the jar and decides whether this run records or uses it.
+     * @param jar The server jar
+     * @param service The service name, or null for the only server
+     * @param runtime The Java runtime that will run the jar
+     * @return The archive, or null if the runtime is too old for dynamic archives
+     */
+    public static CdsArchive prepare(File jar, String service, JavaRuntime runtime) {
+        if (runtime.getFeature() < MIN_FEATURE) {
+            logger.warning(
+                "AppCDS needs Java " + MIN_FEATURE + " or newer for dynamic archives, found " + runtime + ". Skipping."
+            );
+            return null;
+        }
+        // The child resolves the archive against its own working directory, so it gets an absolute path
+        File dir = CDS_DIR.getAbsoluteFile();
+        dir.mkdirs();
+        String name = (service == null ? "" : service + "-") + jar.getName().replaceAll("[^A-Za-z0-9._-]", "_");
+        File archive = new File(dir, name + ".jsa");
+        File stampFile = new File(dir, name + ".properties");
+
+        Properties stamp = new Properties();
+        if (stampFile.exists()) {
+            try (InputStream in = new FileInputStream(stampFile)) {
+                stamp.load(in);
+            } catch (IOException e) {
+                stamp.clear();
+            }
+        }
+
+        String reason = invalidReason(jar, runtime, archive, stamp);
+        if (reason == null) {
+            logger.info("Using AppCDS archive " + archive);
+            return new CdsArchive(jar, archive, stampFile, stamp, false);
+        }
+
+        logger.info("Recording a new AppCDS archive (" + reason + ").");
+        archive.delete();
+        Properties fresh = new Properties();
+        fresh.setProperty("jar.size", Long.toString(jar.length()));
+        fresh.setProperty("jar.mtime", Long.toString(jar.lastModified()));
+        fresh.setProperty("java.version", runtime.getVersion());
+        CdsArchive cds = new CdsArchive(jar, archive, stampFile, fresh, true);
+        cds.save();
+        return cds;
+    }
+
+    private static String invalidReason(File jar, JavaRuntime runtime, File archive, Properties stamp) {
+        if (!archive.exists()) {
+            return "no archive yet";
+        }
+        if (!runtime.getVersion().equals(stamp.getProperty("java.version"))) {
+            return "Java version changed from " + stamp.getProperty("java.version") + " to " + runtime.getVersion();
+        }
+        // The JVM itself refuses an archive once the jar's size or mtime differ, so those are the key
+        boolean statMatches =
+            Long.toString(jar.length()).equals(stamp.getProperty("jar.size")) &&
+            Long.toString(jar.lastModified()).equals(stamp.getProperty("jar.mtime"));
+        return statMatches ? null : jar.getName() + " changed";
+    }
+
+    /**
+     * @return The JVM flags to put in front of -jar for this run
+     */
+    public List<String> jvmFlags() {
+        List<String> flags = new ArrayList<>();
+        if (training) {
+            flags.add("-XX:ArchiveClassesAtExit=" + archive.getPath());
+        } else {
+            flags.add("-XX:SharedArchiveFile=" + archive.getPath());
+            flags.add("-Xshare:auto");
+        }
+        return flags;
+    }
+
+    public boolean isTraining() {
+        return training;
+    }
+
+    /**
+     * Records how long the server took to report it was ready and logs the gain over the baseline.
+     * @param millis Milliseconds from launch to the ready line
+     */
+    public void recordStartup(long millis) {
+        if (training) {
+            stamp.setProperty("recording.ready.millis", Long.toString(millis));
+            logger.info("Server ready in " + millis + " ms during the AppCDS recording run.");
+        } else {
+            long before = recordingMillis();
+            if (before >= 0) {
+                logger.info(
+                    String.format(
+                        "Server ready in %d ms with AppCDS (recording run %d ms, %.1f%% less).",
+                        millis,
+                        before,
+                        before == 0 ? 0.0 : (before - millis) * 100.0 / before
+                    )
+                );
+            } else {
+                logger.info("Server ready in " + millis + " ms with AppCDS.");
+            }
+            stamp.setProperty("last.ready.millis", Long.toString(millis));
+        }
+        save();
+    }
+
+    /**
+     * Reports the outcome of a recording run once the child has exited.
+     * If the archive was written, a restarted server uses it straight away.
+     */
+    public void afterExit() {
+        if (training) {
+            if (archive.exists()) {
+                logger.info("AppCDS archive written to " + archive + " (" + Units.formatBytes(archive.length()) + ").");
+                training = false;
+            } else {
+                logger.warning("The server exited without writing an AppCDS archive; recording again on the next start.");
+            }
+        }
+    }
+
+    /**
+     * @return The recording run's time-to-ready, or -1 if there is none or the stamp holds garbage
+     */
+    private long recordingMillis() {
+        String value = stamp.getProperty("recording.ready.millis");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warning("Discarding the unreadable AppCDS recording time '" + value + "' in " + stampFile + ".");
+            stamp.remove("recording.ready.millis");
+            return -1;
+        }
+    }
+
+    private void save() {
+        try (OutputStream out = new FileOutputStream(stampFile)) {
+            stamp.store(out, "AnyJar AppCDS stamp for " + jar.getName());
+        } catch (IOException e) {
+            logger.warning("Could not save AppCDS stamp: " + e.getMessage());
+        }
+    }
+}
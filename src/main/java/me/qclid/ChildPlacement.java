@@ -0,0 +1,306 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Places the server on the machine: CPU affinity, nice and I/O priority are applied by starting it
+ * through taskset, nice and ionice, so they hold from the first instruction and are inherited by
+ * everything it starts. A cgroup v2 group with cpu.max and memory.high is set up once and the
+ * server is moved into it after every launch. The result is read back from /proc and logged.
+ */
+public class ChildPlacement {
+
+    private static final Logger logger = Logger.getLogger(ChildPlacement.class.getName());
+    private static final Path CGROUP_ROOT = Path.of("/sys/fs/cgroup");
+    private static final long CPU_PERIOD = 100_000;
+
+    private final String label;
+    private final List<String> prefix = new ArrayList<>();
+    private final String cpus;
+    private final Integer nice;
+    private final String ioClass;
+    private final Path cgroup;
+    private final boolean active;
+
+    /**
+     * @param config The placement section of the configuration
+     * @param label What to call the process in log messages, e.g. "server"
+     */
+    public ChildPlacement(PlacementConfig config, String label) {
+        this.label = label;
+        boolean wanted =
+            config.getCpus() != null || config.getNice() != null || config.getIoClass() != null || config.getCgroup() != null;
+        if (wanted && !new File("/proc/self").isDirectory()) {
+            logger.warning("CPU, priority and cgroup placement only works on Linux; starting the " + label + " as is.");
+            wanted = false;
+        }
+        this.cpus = wanted ? blankToNull(config.getCpus()) : null;
+        this.nice = wanted ? config.getNice() : null;
+        this.ioClass = wanted ? ioClassNumber(blankToNull(config.getIoClass())) : null;
+        this.active = wanted;
+
+        if (cpus != null) {
+            addTool("taskset", "CPU affinity", "-c", cpus);
+        }
+        if (nice != null) {
+            addTool("nice", "nice", "-n", Integer.toString(nice));
+        }
+        if (ioClass != null) {
+            if ("3".equals(ioClass) || config.getIoPriority() == null) {
+                addTool("ionice", "I/O priority", "-c", ioClass);
+            } else {
+                addTool("ionice", "I/O priority", "-c", ioClass, "-n", Integer.toString(config.getIoPriority()));
+            }
+        }
+        this.cgroup = wanted && blankToNull(config.getCgroup()) != null
+            ? setUpCgroup(config.getCgroup().trim(), blankToNull(config.getCpuMax()), blankToNull(config.getMemoryHigh()))
+            : null;
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    private static String ioClassNumber(String ioClass) {
+        if (ioClass == null) {
+            return null;
+        }
+        switch (ioClass.toLowerCase(Locale.ROOT)) {
+            case "realtime":
+                return "1";
+            case "best-effort":
+                return "2";
+            case "idle":
+                return "3";
+            default:
+                logger.warning("Unknown io-class '" + ioClass + "', choose from realtime, best-effort and idle.");
+                return null;
+        }
+    }
+
+    private void addTool(String tool, String what, String... args) {
+        String path = ShutdownCoordinator.findExecutable(tool);
+        if (path == null) {
+            logger.warning("Can't set the " + label + "'s " + what + ": '" + tool + "' is not installed.");
+            return;
+        }
+        prefix.add(path);
+        for (String arg : args) {
+            prefix.add(arg);
+        }
+    }
+
+    /**
+     * Creates the group, enables the cpu and memory controllers on the way down and sets its limits.
+     * @return The group's directory, or null if it could not be set up
+     */
+    private Path setUpCgroup(String name, String cpuMax, String memoryHigh) {
+        if (!Files.isRegularFile(CGROUP_ROOT.resolve("cgroup.controllers"))) {
+            logger.warning("Can't move the " + label + " into cgroup '" + name + "': cgroup v2 is not mounted at " + CGROUP_ROOT);
+            return null;
+        }
+        Path dir = CGROUP_ROOT.resolve(name.startsWith("/") ? name.substring(1) : name).normalize();
+        if (!dir.startsWith(CGROUP_ROOT) || dir.equals(CGROUP_ROOT)) {
+            logger.warning("Invalid cgroup '" + name + "'.");
+            return null;
+        }
+        try {
+            Files.createDirectories(dir);
+            for (Path parent = CGROUP_ROOT; !parent.equals(dir); parent = parent.resolve(dir.getName(parent.getNameCount()))) {
+                if (cpuMax != null) {
+                    enableController(parent, "cpu");
+                }
+                if (memoryHigh != null) {
+                    enableController(parent, "memory");
+                }
+            }
+            if (cpuMax != null) {
+                String value = "max".equals(cpuMax)
+                    ? "max " + CPU_PERIOD
+                    : Math.round(Double.parseDouble(cpuMax) * CPU_PERIOD) + " " + CPU_PERIOD;
+                write(dir.resolve("cpu.max"), value);
+            }
+            if (memoryHigh != null) {
+                write(dir.resolve("memory.high"), "max".equals(memoryHigh) ? "max" : Long.toString(Units.parseBytes(memoryHigh)));
+            }
+            logger.info(
+                "The " + label + " will run in cgroup " + dir + (cpuMax != null ? ", cpu.max " + cpuMax + " cores" : "") +
+                (memoryHigh != null ? ", memory.high " + memoryHigh : "") + "."
+            );
+            return dir;
+        } catch (IOException | RuntimeException e) {
+            logger.warning(
+                "Can't set up cgroup " + dir + " for the " + label + " (AnyJar needs write access to it): " + e.getMessage()
+            );
+            return null;
+        }
+    }
+
+    private static void enableController(Path parent, String controller) throws IOException {
+        String enabled = new String(Files.readAllBytes(parent.resolve("cgroup.subtree_control")), StandardCharsets.US_ASCII);
+        for (String name : enabled.trim().split(" ")) {
+            if (name.equals(controller)) {
+                return;
+            }
+        }
+        write(parent.resolve("cgroup.subtree_control"), "+" + controller);
+    }
+
+    private static void write(Path file, String value) throws IOException {
+        Files.write(file, value.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return Whether any placement was asked for, so there is something to verify
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * @param command The command to launch
+     * @return The command, started through taskset, nice and ionice as configured
+     */
+    public List<String> wrapCommand(List<String> command) {
+        if (prefix.isEmpty()) {
+            return command;
+        }
+        List<String> wrapped = new ArrayList<>(prefix.size() + command.size());
+        wrapped.addAll(prefix);
+        wrapped.addAll(command);
+        return wrapped;
+    }
+
+    /**
+     * Moves a newly started child, and anything it already started, into the cgroup.
+     * @param process The child process
+     */
+    public void apply(Process process) {
+        if (cgroup == null) {
+            return;
+        }
+        List<ProcessHandle> tree = new ArrayList<>();
+        tree.add(process.toHandle());
+        process.descendants().forEach(tree::add);
+        for (ProcessHandle handle : tree) {
+            try {
+                write(cgroup.resolve("cgroup.procs"), Long.toString(handle.pid()));
+            } catch (IOException e) {
+                if (handle.isAlive()) {
+                    logger.warning("Could not move pid " + handle.pid() + " into cgroup " + cgroup + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the child's placement back from /proc and logs it, warning about anything that did not stick.
+     * Call it once the child had time to get through taskset, nice and ionice.
+     * @param process The child process
+     */
+    public void verify(Process process) {
+        long pid = process.pid();
+        String status = ContainerLimits.read(Path.of("/proc/" + pid + "/status"));
+        String stat = ContainerLimits.read(Path.of("/proc/" + pid + "/stat"));
+        if (status == null || stat == null) {
+            return;
+        }
+        StringBuilder placed = new StringBuilder();
+        List<String> problems = new ArrayList<>();
+
+        String allowed = field(status, "Cpus_allowed_list:");
+        placed.append("CPUs ").append(allowed);
+        if (cpus != null && allowed != null && !parseCpuList(cpus).equals(parseCpuList(allowed))) {
+            problems.add("CPUs " + allowed + " instead of " + cpus);
+        }
+
+        // pid (comm) state ppid ... priority nice: nice is the 17th field after the command name
+        String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+        String actualNice = fields.length > 16 ? fields[16] : "?";
+        placed.append(", nice ").append(actualNice);
+        if (nice != null && !actualNice.equals(Integer.toString(nice))) {
+            problems.add("nice " + actualNice + " instead of " + nice + (nice < 0 ? " (negative values need root)" : ""));
+        }
+
+        String io = ioPriority(pid);
+        if (io != null) {
+            placed.append(", I/O ").append(io);
+        }
+
+        String cgroupLine = ContainerLimits.read(Path.of("/proc/" + pid + "/cgroup"));
+        String group = null;
+        if (cgroupLine != null) {
+            for (String line : cgroupLine.split("\n")) {
+                if (line.startsWith("0::")) {
+                    group = line.substring(3).trim();
+                }
+            }
+        }
+        if (group != null) {
+            placed.append(", cgroup ").append(group);
+            if (cgroup != null && !CGROUP_ROOT.resolve(group.substring(1)).normalize().equals(cgroup)) {
+                problems.add("cgroup " + group + " instead of " + cgroup);
+            }
+        }
+
+        logger.info("Placement of the " + label + " (pid " + pid + "): " + placed + ".");
+        if (!problems.isEmpty()) {
+            logger.warning("Part of the " + label + "'s placement did not stick: " + String.join("; ", problems) + ".");
+        }
+    }
+
+    private static String field(String status, String name) {
+        for (String line : status.split("\n")) {
+            if (line.startsWith(name)) {
+                return line.substring(name.length()).trim();
+            }
+        }
+        return null;
+    }
+
+    private static BitSet parseCpuList(String list) {
+        BitSet cpus = new BitSet();
+        try {
+            for (String part : list.trim().split(",")) {
+                String[] range = part.trim().split("-");
+                int from = Integer.parseInt(range[0].trim());
+                int to = range.length > 1 ? Integer.parseInt(range[1].trim()) : from;
+                cpus.set(from, to + 1);
+            }
+        } catch (RuntimeException e) {
+            // Not a plain list; compare as is
+        }
+        return cpus;
+    }
+
+    // The I/O priority is not in /proc, so ask ionice
+    private static String ioPriority(long pid) {
+        String ionice = ShutdownCoordinator.findExecutable("ionice");
+        if (ionice == null) {
+            return null;
+        }
+        try {
+            Process process = new ProcessBuilder(ionice, "-p", Long.toString(pid)).redirectErrorStream(true).start();
+            byte[] output = process.getInputStream().readAllBytes();
+            process.waitFor(2, TimeUnit.SECONDS);
+            String text = new String(output, StandardCharsets.US_ASCII).trim();
+            return text.isEmpty() ? null : text;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
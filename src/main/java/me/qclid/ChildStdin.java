@@ -0,0 +1,100 @@
+package me.qclid;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The child's stdin, shared by everything that sends commands: AnyJar's own console,
+ * attached socket clients and the shutdown hook. Each command is written and flushed as one
+ * line under a lock, so commands from different sources never interleave.
+ */
+public class ChildStdin {
+
+    private static final Logger logger = Logger.getLogger(ChildStdin.class.getName());
+
+    private final Charset charset;
+    private final AtomicLong commands = new AtomicLong();
+    private OutputStream out;
+    private boolean closed;
+    private volatile String stopCommand;
+    private volatile Runnable onStop;
+
+    public ChildStdin(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Points the commands at a (new) child process.
+     * @param out The child's stdin
+     */
+    public synchronized void connect(OutputStream out) {
+        this.out = out;
+        if (closed) {
+            // Nobody is left to send commands, so the new child sees the end of its input too
+            close();
+        }
+    }
+
+    /**
+     * Watches for the command that stops the server, so that a deliberate stop is not
+     * mistaken for a crash.
+     * @param stopCommand The stop command, e.g. "stop"
+     * @param onStop Called whenever that command is sent
+     */
+    public void watchStopCommand(String stopCommand, Runnable onStop) {
+        this.stopCommand = stopCommand;
+        this.onStop = onStop;
+    }
+
+    /**
+     * Sends one command line to the child.
+     * @param line The command, without a line terminator
+     * @return false if there is no child to send it to
+     */
+    public boolean send(String line) {
+        String stop = stopCommand;
+        if (stop != null && line.trim().equalsIgnoreCase(stop)) {
+            onStop.run();
+        }
+        byte[] bytes = (line + "\n").getBytes(charset);
+        synchronized (this) {
+            if (out == null) {
+                return false;
+            }
+            try {
+                out.write(bytes);
+                out.flush();
+            } catch (IOException e) {
+                logger.warning("Could not send '" + line + "' to the server: " + e.getMessage());
+                out = null;
+                return false;
+            }
+        }
+        commands.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Closes the child's stdin, so it sees the end of its input. Children connected later
+     * get a closed stdin as well.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            // The child is already gone
+        }
+        out = null;
+    }
+
+    public long getCommands() {
+        return commands.get();
+    }
+}
@@ -0,0 +1,212 @@
+package me.qclid;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * The one way commands reach the server: AnyJar's console, attached clients and the command scheduler
+ * all queue here, and a single thread sends them in order, at most "burst" back to back and then
+ * "rate" per second (a token bucket). A burst from a script or a pile of overdue scheduled commands
+ * is spread out instead of hitting the server at once, and how long commands waited is measured.
+ * The shutdown's stop command does not queue; it is sent straight away.
+ */
+public class CommandQueue implements Metrics.Collector {
+
+    private static final Logger logger = Logger.getLogger(CommandQueue.class.getName());
+
+    /** Upper bounds of the waiting time histogram buckets in seconds; the last bucket is +Inf. */
+    private static final double[] LATENCY_BUCKETS = { 0.001, 0.01, 0.1, 0.5, 1, 5, 30 };
+
+    private final CommandRouter router;
+    private final double rate;
+    private final int burst;
+    private final int capacity;
+    private final Thread sender;
+
+    // Guarded by this
+    private final ArrayDeque<Command> queue = new ArrayDeque<>();
+    private boolean closed;
+
+    private final Map<String, AtomicLong> submitted = new ConcurrentHashMap<>();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+    private final AtomicLong latencyNanosTotal = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private static class Command {
+
+        final String line;
+        final String source;
+        final long queuedNanos;
+
+        Command(String line, String source, long queuedNanos) {
+            this.line = line;
+            this.source = source;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    /**
+     * @param config The commands section of the configuration
+     * @param router Where the commands go once it is their turn
+     */
+    public CommandQueue(CommandsConfig config, CommandRouter router) {
+        this.router = router;
+        this.rate = config.getRate();
+        this.burst = Math.max(1, config.getBurst());
+        this.capacity = Math.max(1, config.getQueueSize());
+        this.sender = new Thread(this::sendAll, "AnyJar-commands");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Queues a command.
+     * @param line The command, possibly starting with "@name "
+     * @param source Who sent it, e.g. "console", for the metrics
+     * @return false if the queue is full or closed
+     */
+    public boolean submit(String line, String source) {
+        return submit(line, source, false);
+    }
+
+    /**
+     * Queues a command.
+     * @param line The command, possibly starting with "@name "
+     * @param source Who sent it, e.g. "console", for the metrics
+     * @param coalesce Whether to skip it if the same command from the same source is still waiting
+     * @return false if the queue is full or closed
+     */
+    public boolean submit(String line, String source, boolean coalesce) {
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            if (coalesce) {
+                for (Command waiting : queue) {
+                    if (waiting.source.equals(source) && waiting.line.equals(line)) {
+                        coalesced.incrementAndGet();
+                        return true;
+                    }
+                }
+            }
+            if (queue.size() >= capacity) {
+                refused.incrementAndGet();
+            } else {
+                queue.addLast(new Command(line, source, System.nanoTime()));
+                notifyAll();
+                submitted.computeIfAbsent(source, s -> new AtomicLong()).incrementAndGet();
+                return true;
+            }
+        }
+        String message = capacity + " commands are already waiting, so '" + line + "' was not sent.";
+        logger.warning(message);
+        System.out.println("[AnyJar] " + message);
+        return false;
+    }
+
+    private void sendAll() {
+        double tokens = burst;
+        long refilled = System.nanoTime();
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (queue.isEmpty() && !closed) {
+                        wait();
+                    }
+                    if (queue.isEmpty()) {
+                        return;
+                    }
+                }
+                if (rate > 0) {
+                    long now = System.nanoTime();
+                    tokens = Math.min(burst, tokens + (now - refilled) / 1e9 * rate);
+                    refilled = now;
+                    if (tokens < 1) {
+                        TimeUnit.NANOSECONDS.sleep((long) Math.ceil((1 - tokens) / rate * 1e9));
+                        continue;
+                    }
+                    tokens -= 1;
+                }
+                Command command;
+                synchronized (this) {
+                    command = queue.pollFirst();
+                }
+                record(System.nanoTime() - command.queuedNanos);
+                router.send(command.line);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void record(long nanos) {
+        double seconds = nanos / 1e9;
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS.length && seconds > LATENCY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        latencyBuckets.incrementAndGet(bucket);
+        latencyNanosTotal.addAndGet(nanos);
+        maxLatencyNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Stops taking commands, sends what is still waiting (for up to the given time) and then
+     * closes every service's stdin.
+     * @param timeoutMillis How long to wait for the queue to drain
+     */
+    public void close(long timeoutMillis) {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            sender.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        router.close();
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.counter("anyjar_commands_total", "Commands queued for the server, by who sent them");
+        for (Map.Entry<String, AtomicLong> entry : submitted.entrySet()) {
+            out.sample("anyjar_commands_total", new String[] { "source", entry.getKey() }, entry.getValue().get());
+        }
+        out.counter("anyjar_commands_refused_total", "Commands refused because the queue was full");
+        out.sample("anyjar_commands_refused_total", refused.get());
+        out.counter("anyjar_commands_coalesced_total", "Scheduled commands skipped because the same one was still waiting");
+        out.sample("anyjar_commands_coalesced_total", coalesced.get());
+        int depth;
+        synchronized (this) {
+            depth = queue.size();
+        }
+        out.gauge("anyjar_command_queue_depth", "Commands waiting to be sent");
+        out.sample("anyjar_command_queue_depth", depth);
+
+        out.histogram("anyjar_command_queue_latency_seconds", "How long commands waited in the queue");
+        long cumulative = 0;
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            cumulative += latencyBuckets.get(i);
+            out.sample(
+                "anyjar_command_queue_latency_seconds_bucket",
+                new String[] { "le", Double.toString(LATENCY_BUCKETS[i]) },
+                cumulative
+            );
+        }
+        cumulative += latencyBuckets.get(LATENCY_BUCKETS.length);
+        out.sample("anyjar_command_queue_latency_seconds_bucket", new String[] { "le", "+Inf" }, cumulative);
+        out.sample("anyjar_command_queue_latency_seconds_sum", latencyNanosTotal.get() / 1e9);
+        out.sample("anyjar_command_queue_latency_seconds_count", cumulative);
+        out.gauge("anyjar_command_queue_latency_max_seconds", "Longest time a command waited in the queue");
+        out.sample("anyjar_command_queue_latency_max_seconds", maxLatencyNanos.get() / 1e9);
+    }
+}
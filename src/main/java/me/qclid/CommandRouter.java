@@ -0,0 +1,78 @@
+package me.qclid;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Sends console commands to the right service. With several services, "@name command" goes to
+ * that service and "@all command" to every service; a command without a name goes to the first one.
+ * With a single service every line is passed through untouched.
+ */
+public class CommandRouter {
+
+    private static final Logger logger = Logger.getLogger(CommandRouter.class.getName());
+
+    private final Map<String, ChildStdin> services = new LinkedHashMap<>();
+    private ChildStdin first;
+
+    /**
+     * @param name The service name
+     * @param stdin The service's stdin
+     */
+    public void add(String name, ChildStdin stdin) {
+        services.put(name, stdin);
+        if (first == null) {
+            first = stdin;
+        }
+    }
+
+    /**
+     * Sends one command line.
+     * @param line The command, possibly starting with "@name "
+     * @return false if nobody received it
+     */
+    public boolean send(String line) {
+        if (services.size() < 2 || !line.startsWith("@")) {
+            return first != null && first.send(line);
+        }
+        int space = line.indexOf(' ');
+        String name = space < 0 ? line.substring(1) : line.substring(1, space);
+        String command = space < 0 ? "" : line.substring(space + 1);
+        if (command.isEmpty()) {
+            reject("Nothing to send to '" + name + "'. Use: @" + name + " <command>");
+            return false;
+        }
+        if ("all".equals(name) && !services.containsKey(name)) {
+            boolean sent = false;
+            for (ChildStdin stdin : services.values()) {
+                sent |= stdin.send(command);
+            }
+            return sent;
+        }
+        ChildStdin stdin = services.get(name);
+        if (stdin == null) {
+            reject("No service named '" + name + "'. Services: " + String.join(", ", services.keySet()));
+            return false;
+        }
+        if (!stdin.send(command)) {
+            reject("The service '" + name + "' is not running, so '" + command + "' was not sent.");
+            return false;
+        }
+        return true;
+    }
+
+    private static void reject(String message) {
+        logger.warning(message);
+        System.out.println("[AnyJar] " + message);
+    }
+
+    /**
+     * Closes every service's stdin.
+     */
+    public void close() {
+        for (ChildStdin stdin : services.values()) {
+            stdin.close();
+        }
+    }
+}
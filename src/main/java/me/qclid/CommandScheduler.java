@@ -0,0 +1,173 @@
+package me.qclid;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Sends the commands of the "schedule" list: every so often, on a cron schedule, or a while after the
+ * server prints a certain line (e.g. "Done (" after every start). Scheduled commands go through the
+ * {@link CommandQueue} like typed ones, and one that is still waiting there is not queued a second time,
+ * so a slow server never gets a pile of identical saves. The schedule keeps a timer thread of its own,
+ * so a slow job on AnyJar's shared scheduler (a flight recording, a metrics snapshot) can't hold back a restart warning.
+ */
+public class CommandScheduler {
+
+    private static final Logger logger = Logger.getLogger(CommandScheduler.class.getName());
+    private static final String SOURCE = "schedule";
+
+    private final List<Entry> entries = new ArrayList<>();
+    private volatile CommandQueue queue;
+    private volatile ScheduledExecutorService executor;
+
+    private static class Entry {
+
+        final String command;
+        final String target;
+        final String interval;
+        final long every;
+        final CronSchedule cron;
+        final byte[] after;
+        final long delay;
+
+        Entry(ScheduledCommand config) {
+            this.command = config.getCommand();
+            if (command == null || command.trim().isEmpty()) {
+                throw new IllegalArgumentException("Every scheduled command needs a command");
+            }
+            int kinds = (config.getEvery() != null ? 1 : 0) + (config.getCron() != null ? 1 : 0) + (config.getAfter() != null ? 1 : 0);
+            if (kinds != 1) {
+                throw new IllegalArgumentException("'" + command + "' needs exactly one of every, cron or after");
+            }
+            this.interval = config.getEvery();
+            this.every = interval != null ? Units.parseMillis(interval) : 0;
+            if (config.getEvery() != null && every < 1000) {
+                throw new IllegalArgumentException("'" + command + "' can't run more often than once a second");
+            }
+            this.cron = config.getCron() != null ? new CronSchedule(config.getCron()) : null;
+            if (config.getAfter() != null && config.getAfter().isEmpty()) {
+                throw new IllegalArgumentException("'" + command + "' needs some text to wait for in after");
+            }
+            this.after = config.getAfter() != null ? config.getAfter().getBytes(StandardCharsets.UTF_8) : null;
+            this.delay = config.getDelay() != null ? Units.parseMillis(config.getDelay()) : 0;
+            // "@name command" is watched in that service's output, anything else in the first service's
+            int space = command.indexOf(' ');
+            this.target = command.startsWith("@") && space > 1 ? command.substring(1, space) : null;
+        }
+    }
+
+    /**
+     * @param schedule The schedule list of the configuration
+     * @throws IllegalArgumentException If an entry is invalid
+     */
+    public CommandScheduler(List<ScheduledCommand> schedule) {
+        for (ScheduledCommand config : schedule) {
+            entries.add(new Entry(config));
+        }
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Starts the interval and cron schedules; "after" entries fire from then on.
+     * @param queue Where the commands go
+     */
+    public void start(CommandQueue queue) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        this.queue = queue;
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AnyJar-schedule");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor = executor;
+        for (Entry entry : entries) {
+            if (entry.every > 0) {
+                executor.scheduleAtFixedRate(() -> send(entry), entry.every, entry.every, TimeUnit.MILLISECONDS);
+                logger.info("Scheduled '" + entry.command + "' every " + entry.interval + ".");
+            } else if (entry.cron != null) {
+                ZonedDateTime now = ZonedDateTime.now();
+                ZonedDateTime first = entry.cron.next(now);
+                if (first != null) {
+                    logger.info("Scheduled '" + entry.command + "' on '" + entry.cron + "', first at " + first.toLocalDateTime() + ".");
+                }
+                scheduleCron(entry, now);
+            } else {
+                logger.info(
+                    "Scheduled '" + entry.command + "' " + (entry.delay > 0 ? entry.delay + " ms " : "") + "after '" +
+                    new String(entry.after, StandardCharsets.UTF_8) + "' in the output."
+                );
+            }
+        }
+    }
+
+    private void scheduleCron(Entry entry, ZonedDateTime after) {
+        ZonedDateTime next = entry.cron.next(after);
+        if (next == null) {
+            logger.warning("The cron expression '" + entry.cron + "' of '" + entry.command + "' never matches.");
+            return;
+        }
+        long delay = Math.max(0, Duration.between(ZonedDateTime.now(), next).toMillis());
+        executor.schedule(
+            () -> {
+                send(entry);
+                // From the planned time, in case the scheduler woke up a little early
+                ZonedDateTime now = ZonedDateTime.now();
+                scheduleCron(entry, now.isAfter(next) ? now : next);
+            },
+            delay,
+            TimeUnit.MILLISECONDS
+        );
+    }
+
+    private void send(Entry entry) {
+        queue.submit(entry.command, SOURCE, true);
+    }
+
+    /**
+     * Makes a listener that fires the "after" entries meant for one service.
+     * @param service The service name, or null for the only server
+     * @param first Whether it is the service that gets commands without a name
+     * @return The listener, or null if no entry watches this service
+     */
+    public StreamGobbler.LineListener watcher(String service, boolean first) {
+        List<Entry> watched = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.after == null) {
+                continue;
+            }
+            boolean forAll = "all".equals(entry.target);
+            boolean forThis = entry.target == null ? first : entry.target.equals(service);
+            if (forAll || forThis) {
+                watched.add(entry);
+            }
+        }
+        if (watched.isEmpty()) {
+            return null;
+        }
+        return new StreamGobbler.LineListener() {
+            @Override
+            public void onLine(byte[] line, int offset, int length) {
+                ScheduledExecutorService scheduler = executor;
+                if (scheduler == null) {
+                    return;
+                }
+                for (Entry entry : watched) {
+                    if (Bytes.contains(line, offset, length, entry.after)) {
+                        scheduler.schedule(() -> send(entry), entry.delay, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        };
+    }
+}
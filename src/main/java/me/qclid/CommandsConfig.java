@@ -0,0 +1,76 @@
+package me.qclid;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The "commands" section of server.yml: how fast commands reach the server, and commands
+ * AnyJar sends by itself on a schedule.
+ */
+public class CommandsConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private double rate = 5;
+    private int burst = 10;
+    private int queueSize = 1000;
+    private List<ScheduledCommand> schedule = new ArrayList<>();
+
+    /**
+     * @return Commands per second sent to the server once a burst is used up
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * @return How many commands may be sent back to back
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    public void setBurst(int burst) {
+        this.burst = burst;
+    }
+
+    /**
+     * @return How many commands may wait; more are refused
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public List<ScheduledCommand> getSchedule() {
+        return schedule;
+    }
+
+    public void setSchedule(List<ScheduledCommand> schedule) {
+        this.schedule = schedule == null ? new ArrayList<>() : schedule;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "CommandsConfig{" +
+            "rate=" +
+            rate +
+            ", burst=" +
+            burst +
+            ", queueSize=" +
+            queueSize +
+            ", schedule=" +
+            schedule +
+            '}'
+        );
+    }
+}
@@ -66,8 +66,260 @@ public class ConfigManager {
                 "# Example: python server.py\n"
             );
             writer.write(
-                "manual-startup-command: java -jar actual-server.jar nogui\n"
+                "manual-startup-command: java -jar actual-server.jar nogui\n\n"
             );
+
+            writer.write(
+                "# console-passthrough: Copy the server's output to the console as raw bytes instead of decoding every line.\n# It's much faster on chatty servers. Set it to false if your console shows garbled characters.\n"
+            );
+            writer.write("console-passthrough: true\n\n");
+
+            writer.write(
+                "# config-snapshot: Keep a quick-to-read copy of this file in Anyjar/cache once it has loaded fine, so AnyJar starts\n# faster while you don't touch it. Your edits are picked up as soon as you save them, snapshot or not.\n"
+            );
+            writer.write("config-snapshot: true\n\n");
+
+            writer.write(
+                "# startup-timing: Curious how long AnyJar itself takes before your server gets going? This logs it, step by step.\n"
+            );
+            writer.write("startup-timing: false\n\n");
+
+            writer.write(
+                "# logging: How AnyJar keeps its log files in Anyjar/logs from eating your disk.\n"
+            );
+            writer.write(
+                "# max-file-size: Start a new log file once the current one gets this big.\n# rotate-daily: Also start a new log file every midnight.\n# compress: Gzip old log files in the background. They shrink a LOT.\n# max-files / max-total-size: Delete the oldest log files once there are too many or they get too big.\n# index-interval: Note down the time every this many bytes, so 'logs --since' finds its place without reading everything.\n"
+            );
+            writer.write("logging:\n");
+            writer.write("  max-file-size: 100M\n");
+            writer.write("  rotate-daily: true\n");
+            writer.write("  compress: true\n");
+            writer.write("  max-files: 30\n");
+            writer.write("  max-total-size: 2G\n");
+            writer.write("  index-interval: 64K\n\n");
+
+            writer.write(
+                "# jvm: Extra tricks for .jar servers started with use-options: true.\n"
+            );
+            writer.write(
+                "# app-cds: Remember which classes the server loads and reuse them on the next start. Needs Java 13+.\n# The first start records the archive, every start after that boots faster. It's rebuilt automatically\n# when the server jar or your Java version changes.\n"
+            );
+            writer.write(
+                "# profile: 'manual' uses ram-max and ram-min above. 'auto' reads your container's memory and CPU limits\n# and picks the heap size, garbage collector and GC threads for you. Check the log to see what it chose and why.\n"
+            );
+            writer.write(
+                "# flags: Override or add single JVM flags, e.g. 'MaxGCPauseMillis: 100' or 'AlwaysPreTouch: false'.\n# Use 'Xmx: 6G' to pin the heap, or leave a flag empty (e.g. 'AlwaysPreTouch:') to drop it.\n"
+            );
+            writer.write("jvm:\n");
+            writer.write("  app-cds: false\n");
+            writer.write("  profile: manual\n");
+            writer.write("  flags: {}\n\n");
+
+            writer.write(
+                "# metrics: Keep an eye on your server's CPU, memory, threads, open files and disk I/O.\n"
+            );
+            writer.write(
+                "# When enabled, they're served at http://bind:port/metrics in Prometheus format, sampled every sample-interval.\n# Set file to true to also write a snapshot to Anyjar/metrics every file-interval.\n"
+            );
+            writer.write("metrics:\n");
+            writer.write("  enabled: false\n");
+            writer.write("  bind: 127.0.0.1\n");
+            writer.write("  port: 9225\n");
+            writer.write("  sample-interval: 5s\n");
+            writer.write("  file: false\n");
+            writer.write("  file-interval: 1m\n");
+            writer.write("  file-max-size: 50M\n");
+            writer.write("  file-max-files: 10\n\n");
+
+            writer.write(
+                "# filters: Tame a noisy console. Each rule matches lines containing 'match' (fast) or matching 'regex'.\n"
+            );
+            writer.write(
+                "# action: suppress  - hide the line from the console (it's still in the log file)\n#         route     - also copy the line to Anyjar/logs/<sink>/\n#         rate-limit - show at most 'limit' matching lines 'per' time window, then print a summary\n"
+            );
+            writer.write("# Example:\n");
+            writer.write("# filters:\n");
+            writer.write("#   - name: deprecations\n");
+            writer.write("#     match: \"is using a deprecated\"\n");
+            writer.write("#     action: rate-limit\n");
+            writer.write("#     limit: 5\n");
+            writer.write("#     per: 1m\n");
+            writer.write("#   - name: chat\n");
+            writer.write("#     regex: \"<[A-Za-z0-9_]{3,16}> \"\n");
+            writer.write("#     action: route\n");
+            writer.write("#     sink: chat\n");
+            writer.write("filters: []\n\n");
+
+            writer.write(
+                "# console: Lost your panel session? Set socket to true and AnyJar opens a console socket that you can\n# attach to (and detach from) as often as you like with: java -jar <AnyJar jar> attach\n# Only you can attach: the socket's folder must belong to you and be closed to everyone else (AnyJar creates it that way).\n"
+            );
+            writer.write(
+                "# scrollback is how much recent output a new client gets to catch up on.\n# A client that falls more than client-buffer behind is disconnected, so it can never slow the server down.\n"
+            );
+            writer.write(
+                "# overflow: What to do when the console can't keep up with the server. The log file always gets every line.\n#   block              - make the server wait for the console (the default, as it always was)\n#   drop-and-summarize - skip lines and say how many were skipped (the server never waits)\n#   drop-oldest        - skip the oldest waiting lines instead\n# buffer-lines is how many lines may wait for the console before that kicks in.\n"
+            );
+            writer.write("console:\n");
+            writer.write("  overflow: block\n");
+            writer.write("  buffer-lines: 8192\n");
+            writer.write("  socket: false\n");
+            writer.write("  socket-path: Anyjar/console/console.sock\n");
+            writer.write("  scrollback: 4M\n");
+            writer.write("  client-buffer: 1M\n\n");
+
+            writer.write(
+                "# restart: Bring the server back up when it stops unexpectedly.\n# policy: never (the default), on-failure (only after a crash, i.e. a non-zero exit code) or always.\n# Typing 'stop' into a Minecraft server's console always stops it for good.\n"
+            );
+            writer.write(
+                "# Restarts wait initial-backoff, doubling up to max-backoff, give or take some jitter, and the wait starts over once\n# the server has been up for stable-after. After crash-loop-limit exits within crash-loop-window, AnyJar gives up.\n"
+            );
+            writer.write("restart:\n");
+            writer.write("  policy: never\n");
+            writer.write("  initial-backoff: 1s\n");
+            writer.write("  max-backoff: 1m\n");
+            writer.write("  jitter: 0.2\n");
+            writer.write("  stable-after: 2m\n");
+            writer.write("  crash-loop-limit: 5\n");
+            writer.write("  crash-loop-window: 10m\n\n");
+
+            writer.write(
+                "# shutdown: How AnyJar stops your server, and everything it started, when AnyJar itself is stopped.\n# First it sends stop-command (auto = 'stop' for .jar servers, nothing for anything else) and waits stop-timeout,\n# then it asks every remaining process to terminate and waits term-timeout, and then it stops them for good.\n"
+            );
+            writer.write(
+                "# parent-death-watch: On Linux, make sure nothing is left running even if AnyJar is killed outright.\n"
+            );
+            writer.write("shutdown:\n");
+            writer.write("  stop-command: auto\n");
+            writer.write("  stop-timeout: 30s\n");
+            writer.write("  term-timeout: 10s\n");
+            writer.write("  parent-death-watch: true\n\n");
+
+            writer.write(
+                "# prewarm: Just rebooted? Read the server's files into memory before it starts, so the first players don't wait on a cold disk.\n# paths: What to read, relative to the server. Leave it empty for the server jar, libraries, plugins, mods and every world.\n"
+            );
+            writer.write(
+                "# AnyJar stops after max-bytes (or half your memory, whichever is less) or after timeout, and logs how much it read.\n# background: Start the server right away and read the files alongside it at idle disk priority.\n"
+            );
+            writer.write("prewarm:\n");
+            writer.write("  enabled: false\n");
+            writer.write("  paths: []\n");
+            writer.write("  max-bytes: 2G\n");
+            writer.write("  timeout: 30s\n");
+            writer.write("  threads: 4\n");
+            writer.write("  background: false\n\n");
+
+            writer.write(
+                "# placement: Keep your server snappy on a shared box (Linux only). Leave anything out to not change it.\n# cpus: Only run on these CPUs, e.g. 2-5. nice: -20 (first in line, needs root) to 19 (last in line).\n# io-class: realtime, best-effort or idle, with io-priority 0 (highest) to 7 for the first two.\n"
+            );
+            writer.write(
+                "# cgroup: Put the server in its own cgroup v2 group (e.g. anyjar/server) with at most cpu-max cores, and have the\n# kernel squeeze its memory above memory-high. AnyJar needs write access to /sys/fs/cgroup for this.\n"
+            );
+            writer.write("# Example:\n");
+            writer.write("# placement:\n");
+            writer.write("#   cpus: 2-5\n");
+            writer.write("#   nice: 5\n");
+            writer.write("#   io-class: best-effort\n");
+            writer.write("#   io-priority: 2\n");
+            writer.write("#   cgroup: anyjar/server\n");
+            writer.write("#   cpu-max: 3.5\n");
+            writer.write("#   memory-high: 6G\n");
+            writer.write("placement: {}\n\n");
+
+            writer.write(
+                "# gc-log: Have a .jar server write a GC log and let AnyJar read along: pause times, heap after GC and allocation rate\n# show up on the metrics endpoint, and pauses longer than pause-warning (a tick is 50ms, after all) are logged as warnings.\n"
+            );
+            writer.write(
+                "# The JVM writes to <directory>/gc.log (gc-<name>.log for services) and keeps file-count files of up to file-size.\n# window: How far back the pause percentiles look. poll-interval: How often AnyJar checks the log for new lines.\n"
+            );
+            writer.write("gc-log:\n");
+            writer.write("  enabled: false\n");
+            writer.write("  directory: Anyjar/gc\n");
+            writer.write("  file-count: 5\n");
+            writer.write("  file-size: 20M\n");
+            writer.write("  pause-warning: 50ms\n");
+            writer.write("  window: 5m\n");
+            writer.write("  poll-interval: 1s\n\n");
+
+            writer.write(
+                "# jfr: Lagging at 3 a.m. with nobody around? AnyJar captures a Java Flight Recording of a .jar server for you when\n# it sees lag-events \"Can't keep up!\" warnings within lag-window, CPU above cpu-percent (100 = one core) for cpu-duration,\n"
+            );
+            writer.write(
+                "# or resident memory growing by rss-growth within rss-window. Set lag-events or cpu-percent to 0, or leave rss-growth out, to skip a check.\n# continuous: Keep a light recording of the last max-age running and save it on a trigger, so you see what led up to it.\n"
+            );
+            writer.write(
+                "# Otherwise a detailed recording is started on a trigger and runs for record-for. After a capture, AnyJar waits cooldown\n# before the next one, and keeps at most max-recordings recordings and max-bytes per service in directory. Needs jcmd (part of any JDK).\n"
+            );
+            writer.write("jfr:\n");
+            writer.write("  enabled: false\n");
+            writer.write("  directory: Anyjar/jfr\n");
+            writer.write("  continuous: true\n");
+            writer.write("  max-age: 10m\n");
+            writer.write("  record-for: 60s\n");
+            writer.write("  lag-events: 3\n");
+            writer.write("  lag-window: 1m\n");
+            writer.write("  cpu-percent: 0\n");
+            writer.write("  cpu-duration: 30s\n");
+            writer.write("  rss-window: 10m\n");
+            writer.write("  cooldown: 30m\n");
+            writer.write("  max-recordings: 10\n");
+            writer.write("  max-bytes: 2G\n\n");
+
+            writer.write(
+                "# memory: Find out why the server died. AnyJar watches its resident memory against the container's limit, warns at\n# rss-warning percent, and tells an OutOfMemoryError inside Java apart from the kernel's OOM killer (exit code 137).\n"
+            );
+            writer.write(
+                "# heap-dumps: Let a .jar server write a heap dump on OutOfMemoryError to dump-directory, keeping at most max-dumps\n# dumps and max-dump-bytes per service. exit-on-oom: Stop a server that ran out of memory right away, so it can be restarted.\n"
+            );
+            writer.write(
+                "# adjust-heap: After an out-of-memory crash, give the server more heap (or less, if the kernel killed it) on the next\n# restart. This only lasts until AnyJar stops; it tells you which ram-max to set to keep it.\n"
+            );
+            writer.write("memory:\n");
+            writer.write("  enabled: false\n");
+            writer.write("  rss-warning: 90\n");
+            writer.write("  heap-dumps: true\n");
+            writer.write("  dump-directory: Anyjar/dumps\n");
+            writer.write("  max-dumps: 2\n");
+            writer.write("  max-dump-bytes: 8G\n");
+            writer.write("  exit-on-oom: true\n");
+            writer.write("  adjust-heap: false\n\n");
+
+            writer.write(
+                "# commands: Everything sent to the server, from this console, attached clients or the schedule, waits its turn in one queue.\n# rate / burst: At most burst commands back to back, then rate per second, so a pasted script can't flood the server (rate 0 = no limit).\n"
+            );
+            writer.write(
+                "# queue-size: How many commands may wait; more are refused.\n# schedule: Commands AnyJar sends by itself, every so often, on a cron schedule (minute hour day month weekday), or after the\n# server prints something. With several services, start the command with '@name' or '@all' as usual.\n"
+            );
+            writer.write("# Example:\n");
+            writer.write("#   schedule:\n");
+            writer.write("#     - command: save-all\n");
+            writer.write("#       every: 30m\n");
+            writer.write("#     - command: say Restarting soon!\n");
+            writer.write("#       cron: \"55 3 * * *\"\n");
+            writer.write("#     - command: gamerule doDaylightCycle false\n");
+            writer.write("#       after: \"Done (\"\n");
+            writer.write("#       delay: 5s\n");
+            writer.write("commands:\n");
+            writer.write("  rate: 5\n");
+            writer.write("  burst: 10\n");
+            writer.write("  queue-size: 1000\n");
+            writer.write("  schedule: []\n\n");
+
+            writer.write(
+                "# services: Run more than one thing at once, e.g. your server, a Discord bot and a web panel, all from this one AnyJar.\n# Each service needs a name and either a server-jar or a manual-startup-command, and can have its own directory,\n# ram-max, ram-min, jvm, restart, shutdown, prewarm, placement, jfr and memory settings. Anything you leave out is taken from the top of this file.\n"
+            );
+            writer.write(
+                "# Their output is marked with [name] on the console and logged to Anyjar/logs/services/<name>/.\n# Send a command to one of them with '@name command', or to all of them with '@all command'.\n"
+            );
+            writer.write("# Example:\n");
+            writer.write("# services:\n");
+            writer.write("#   - name: paper\n");
+            writer.write("#     server-jar: paper.jar\n");
+            writer.write("#     restart:\n");
+            writer.write("#       policy: on-failure\n");
+            writer.write("#   - name: bot\n");
+            writer.write("#     directory: bot\n");
+            writer.write("#     manual-startup-command: python bot.py\n");
+            writer.write("services: []\n");
         }
     }
 
@@ -0,0 +1,157 @@
+package me.qclid;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A binary copy of the last server.yml that loaded and passed validation, in Anyjar/cache/config.snapshot,
+ * so an unchanged configuration skips YAML parsing on the next start.
+ * The snapshot is keyed on server.yml's size and modification time, with a CRC32 of its contents as
+ * the fallback when only the time changed (a copy or a touch), and on the size and time of AnyJar's own
+ * jar, so a new AnyJar with new settings never reads an old snapshot. Without a jar (running from class
+ * folders) there is nothing to key on and no snapshot is used. A refused snapshot just means parsing again.
+ * The configuration is serialized before anything starts using it, and only the bytes are written later.
+ */
+public final class ConfigSnapshot {
+
+    private static final Logger logger = Logger.getLogger(ConfigSnapshot.class.getName());
+    private static final File FILE = new File("Anyjar/cache/config.snapshot");
+    private static final int MAGIC = 0x414a4353;
+    private static final int VERSION = 1;
+    // Only the configuration classes and the collections and boxes SnakeYAML fills them with
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+        "maxdepth=16;me.qclid.*;java.util.*;java.lang.*;!*"
+    );
+
+    private ConfigSnapshot() {}
+
+    /**
+     * Reads the snapshot if it still matches the configuration file.
+     * @param config The configuration file
+     * @return The configuration, or null if there is no usable snapshot
+     */
+    public static ServerConfig read(File config) {
+        return read(config, FILE, buildStamp());
+    }
+
+    static ServerConfig read(File config, File snapshot, String build) {
+        if (build == null || !snapshot.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !build.equals(in.readUTF())) {
+                return null;
+            }
+            long size = in.readLong();
+            long modified = in.readLong();
+            long crc = in.readLong();
+            if (size != config.length()) {
+                return null;
+            }
+            if (modified != config.lastModified() && crc != crc(config)) {
+                return null;
+            }
+            ObjectInputStream objects = new ObjectInputStream(in);
+            objects.setObjectInputFilter(FILTER);
+            return (ServerConfig) objects.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.info("Not using the config snapshot (" + e + "); reading server.yml.");
+            return null;
+        }
+    }
+
+    /**
+     * Serializes a configuration that loaded and passed validation, before anything can change it.
+     * @param config The configuration file it came from
+     * @param loaded The configuration
+     * @return The snapshot for {@link #write(byte[])}, or null if none should be kept
+     */
+    public static byte[] serialize(File config, ServerConfig loaded) {
+        return serialize(config, loaded, buildStamp());
+    }
+
+    static byte[] serialize(File config, ServerConfig loaded, String build) {
+        if (build == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(build);
+            out.writeLong(config.length());
+            out.writeLong(config.lastModified());
+            out.writeLong(crc(config));
+            ObjectOutputStream objects = new ObjectOutputStream(out);
+            objects.writeObject(loaded);
+            objects.flush();
+        } catch (IOException e) {
+            logger.warning("Could not save the config snapshot: " + e.getMessage());
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Saves a serialized snapshot, replacing the old one.
+     * @param snapshot From {@link #serialize(File, ServerConfig)}
+     */
+    public static void write(byte[] snapshot) {
+        write(snapshot, FILE);
+    }
+
+    static void write(byte[] snapshot, File file) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(snapshot);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warning("Could not save the config snapshot: " + e.getMessage());
+            temp.delete();
+        }
+    }
+
+    /**
+     * Deletes the snapshot, e.g. when config-snapshot is turned off.
+     */
+    public static void delete() {
+        FILE.delete();
+    }
+
+    private static long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(file.toPath()));
+        return crc.getValue();
+    }
+
+    /**
+     * @return The size and modification time of the jar AnyJar runs from, or null if it is not a jar
+     */
+    private static String buildStamp() {
+        try {
+            CodeSource source = ConfigSnapshot.class.getProtectionDomain().getCodeSource();
+            File code = new File(source.getLocation().toURI());
+            return code.isFile() ? code.length() + ":" + code.lastModified() : null;
+        } catch (URISyntaxException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package me.qclid;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * The "attach" subcommand: connects a terminal to a running AnyJar's console socket.
+ * Output is copied to stdout as raw bytes and stdin is forwarded as commands.
+ */
+public class ConsoleClient {
+
+    /**
+     * Attaches to the console and returns when either side hangs up.
+     * @param socketPath The console socket of the running AnyJar
+     * @return The exit code for the process
+     */
+    public static int attach(Path socketPath) {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            System.err.println("Could not attach to " + socketPath + ": " + e.getMessage());
+            System.err.println("Is AnyJar running with console.socket set to true?");
+            return 1;
+        }
+        System.err.println("Attached to " + socketPath + ". Type commands for the server; press Ctrl-D to detach.");
+
+        // Read and write the channel directly: the Channels stream adapters share one lock,
+        // so a blocked read would hold up every command
+        Thread output = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            OutputStream out = new FileOutputStream(FileDescriptor.out);
+            try {
+                while (channel.read(buffer) != -1) {
+                    out.write(buffer.array(), 0, buffer.position());
+                    out.flush();
+                    buffer.clear();
+                }
+                System.err.println("The server closed the console.");
+            } catch (IOException e) {
+                // Detached from our side
+            }
+            System.exit(0);
+        }, "AnyJar-attach-output");
+        output.setDaemon(true);
+        output.start();
+
+        byte[] buffer = new byte[8 * 1024];
+        try {
+            int read;
+            while ((read = System.in.read(buffer)) != -1) {
+                ByteBuffer command = ByteBuffer.wrap(buffer, 0, read);
+                while (command.hasRemaining()) {
+                    channel.write(command);
+                }
+            }
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Lost the console: " + e.getMessage());
+            return 1;
+        }
+        System.err.println("Detached.");
+        return 0;
+    }
+}
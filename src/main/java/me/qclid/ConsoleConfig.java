@@ -0,0 +1,100 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * The "console" section of server.yml: how output is delivered to the console, and the
+ * attachable console socket with its scrollback.
+ */
+public class ConsoleConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private boolean socket = false;
+    private String socketPath = "Anyjar/console/console.sock";
+    private String scrollback = "4M";
+    private String clientBuffer = "1M";
+    private String overflow = "block";
+    private int bufferLines = 8192;
+
+    public boolean isSocket() {
+        return socket;
+    }
+
+    public void setSocket(boolean socket) {
+        this.socket = socket;
+    }
+
+    public String getSocketPath() {
+        return socketPath;
+    }
+
+    public void setSocketPath(String socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    /**
+     * @return How much recent output is replayed to a client when it attaches, e.g. "4M"
+     */
+    public String getScrollback() {
+        return scrollback;
+    }
+
+    public void setScrollback(String scrollback) {
+        this.scrollback = scrollback;
+    }
+
+    /**
+     * @return How much output may queue up for one client before it is disconnected, e.g. "1M"
+     */
+    public String getClientBuffer() {
+        return clientBuffer;
+    }
+
+    public void setClientBuffer(String clientBuffer) {
+        this.clientBuffer = clientBuffer;
+    }
+
+    /**
+     * @return What happens when the console falls behind: "block", "drop-oldest" or "drop-and-summarize"
+     */
+    public String getOverflow() {
+        return overflow;
+    }
+
+    public void setOverflow(String overflow) {
+        this.overflow = overflow;
+    }
+
+    public int getBufferLines() {
+        return bufferLines;
+    }
+
+    public void setBufferLines(int bufferLines) {
+        this.bufferLines = bufferLines;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "ConsoleConfig{" +
+            "socket=" +
+            socket +
+            ", socketPath='" +
+            socketPath +
+            '\'' +
+            ", scrollback='" +
+            scrollback +
+            '\'' +
+            ", clientBuffer='" +
+            clientBuffer +
+            '\'' +
+            ", overflow='" +
+            overflow +
+            '\'' +
+            ", bufferLines=" +
+            bufferLines +
+            '}'
+        );
+    }
+}
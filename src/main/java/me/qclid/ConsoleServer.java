@@ -0,0 +1,426 @@
+package me.qclid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves the server console on a Unix domain socket, so any number of clients can attach,
+ * detach and send commands while the server keeps running.
+ * New clients get the most recent output replayed from a fixed-size scrollback ring.
+ * Output is only ever copied into per-client buffers on the gobbler thread; a single selector
+ * thread does all socket I/O, and a client that falls more than its buffer behind is disconnected
+ * instead of slowing the server down.
+ */
+public class ConsoleServer implements StreamGobbler.LineListener, Metrics.Collector, Closeable {
+
+    private static final Logger logger = Logger.getLogger(ConsoleServer.class.getName());
+
+    private final Path path;
+    private final CommandQueue commandQueue;
+    private final Charset charset;
+    private final int clientBuffer;
+
+    // Guarded by this
+    private final byte[] scrollback;
+    private int scrollbackEnd;
+    private boolean scrollbackWrapped;
+    private final List<Client> clients = new ArrayList<>();
+    private boolean pending;
+
+    private final AtomicLong attached = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+
+    private ServerSocketChannel server;
+    private Selector selector;
+    private volatile boolean open;
+
+    /**
+     * @param config The console section of the configuration
+     * @param commandQueue Where commands from clients are queued
+     * @param charset Charset used to decode client commands
+     */
+    public ConsoleServer(ConsoleConfig config, CommandQueue commandQueue, Charset charset) {
+        this.path = Path.of(config.getSocketPath()).toAbsolutePath().normalize();
+        this.commandQueue = commandQueue;
+        this.charset = charset;
+        this.scrollback = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(0, Units.parseBytes(config.getScrollback())))];
+        this.clientBuffer = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(64 * 1024, Units.parseBytes(config.getClientBuffer())));
+    }
+
+    /**
+     * Binds the socket and starts the selector thread.
+     * A stale socket file left behind by a previous run is replaced.
+     * @throws IOException If the socket's directory is not private to this user, or binding fails
+     */
+    public void start() throws IOException {
+        privateDirectory(path.getParent());
+        Files.deleteIfExists(path);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system; the directory permissions will have to do
+        }
+        server.configureBlocking(false);
+        selector = Selector.open();
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        open = true;
+
+        Thread thread = new Thread(this::run, "AnyJar-console-socket");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Console socket listening on " + path + " (attach with: java -jar <AnyJar jar> attach)");
+    }
+
+    /**
+     * Creates the socket's directory as rwx------, or checks that an existing one is just as private.
+     * The socket itself only gets its permissions after binding, so the directory is what keeps other
+     * local users from connecting in between and typing commands into the server.
+     */
+    private static void privateDirectory(Path dir) throws IOException {
+        if (dir.getParent() != null) {
+            Files.createDirectories(dir.getParent());
+        }
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (FileAlreadyExistsException e) {
+            // Checked below
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system; nothing to check either
+            Files.createDirectories(dir);
+            return;
+        }
+        PosixFileAttributes attributes = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isDirectory()) {
+            throw new IOException(dir + " is not a directory");
+        }
+        UserPrincipal self = currentUser();
+        if (!attributes.owner().equals(self)) {
+            throw new IOException(dir + " belongs to " + attributes.owner().getName() + ", not " + self.getName());
+        }
+        Set<PosixFilePermission> permissions = attributes.permissions();
+        permissions.removeAll(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE));
+        if (!permissions.isEmpty()) {
+            throw new IOException(
+                "other users can get into " + dir + " (" + PosixFilePermissions.toString(attributes.permissions()) +
+                "); run 'chmod 700' on it or point socket-path into a directory of its own"
+            );
+        }
+    }
+
+    /**
+     * Finds out who AnyJar runs as from a directory it creates, since a container may run it as a UID
+     * without a name to look up.
+     */
+    private static UserPrincipal currentUser() throws IOException {
+        Path probe = Files.createTempDirectory("anyjar-owner");
+        try {
+            return Files.getOwner(probe, LinkOption.NOFOLLOW_LINKS);
+        } finally {
+            Files.deleteIfExists(probe);
+        }
+    }
+
+    @Override
+    public synchronized void onLine(byte[] line, int offset, int length) {
+        appendScrollback(line, offset, length);
+        for (Client client : clients) {
+            client.offer(line, offset, length);
+        }
+        pending |= !clients.isEmpty();
+    }
+
+    @Override
+    public void flush() {
+        boolean wake;
+        synchronized (this) {
+            wake = pending;
+            pending = false;
+        }
+        if (wake) {
+            selector.wakeup();
+        }
+    }
+
+    // Must hold this
+    private void appendScrollback(byte[] line, int offset, int length) {
+        if (scrollback.length == 0) {
+            return;
+        }
+        if (length + 1 >= scrollback.length) {
+            // Longer than the whole ring: keep its tail
+            offset += length + 1 - scrollback.length;
+            length = scrollback.length - 1;
+        }
+        int first = Math.min(length, scrollback.length - scrollbackEnd);
+        System.arraycopy(line, offset, scrollback, scrollbackEnd, first);
+        System.arraycopy(line, offset + first, scrollback, 0, length - first);
+        scrollbackEnd += length;
+        if (scrollbackEnd >= scrollback.length) {
+            scrollbackEnd -= scrollback.length;
+            scrollbackWrapped = true;
+        }
+        scrollback[scrollbackEnd++] = '\n';
+        if (scrollbackEnd == scrollback.length) {
+            scrollbackEnd = 0;
+            scrollbackWrapped = true;
+        }
+    }
+
+    // Must hold this. Copies the scrollback in order, starting at the oldest complete line.
+    private byte[] copyScrollback() {
+        if (!scrollbackWrapped) {
+            byte[] copy = new byte[scrollbackEnd];
+            System.arraycopy(scrollback, 0, copy, 0, scrollbackEnd);
+            return copy;
+        }
+        int start = scrollbackEnd;
+        for (int i = 0; i < scrollback.length; i++) {
+            if (scrollback[(scrollbackEnd + i) % scrollback.length] == '\n') {
+                start = (scrollbackEnd + i + 1) % scrollback.length;
+                break;
+            }
+        }
+        int length = start <= scrollbackEnd ? scrollbackEnd - start : scrollback.length - start + scrollbackEnd;
+        byte[] copy = new byte[length];
+        int first = Math.min(length, scrollback.length - start);
+        System.arraycopy(scrollback, start, copy, 0, first);
+        System.arraycopy(scrollback, 0, copy, first, length - first);
+        return copy;
+    }
+
+    private void run() {
+        while (open) {
+            try {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read((Client) key.attachment());
+                    }
+                }
+                writeAll();
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (open) {
+                    logger.log(Level.WARNING, "Console socket error: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Client client = new Client(channel);
+        synchronized (this) {
+            client.replay = ByteBuffer.wrap(copyScrollback());
+            clients.add(client);
+        }
+        client.key = channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, client);
+        logger.info("Console client " + client.id + " attached (" + client.replay.remaining() + " bytes of scrollback).");
+    }
+
+    private void read(Client client) {
+        int read;
+        try {
+            read = client.channel.read(client.in);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            disconnect(client, "detached");
+            return;
+        }
+
+        ByteBuffer in = client.in;
+        int lineStart = 0;
+        for (int i = 0; i < in.position(); i++) {
+            if (in.get(i) == '\n') {
+                command(in, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart == 0 && !in.hasRemaining()) {
+            // No newline in a full buffer; take what we have as one command
+            command(in, 0, in.position());
+            lineStart = in.position();
+        }
+        in.limit(in.position()).position(lineStart);
+        in.compact();
+    }
+
+    private void command(ByteBuffer in, int start, int end) {
+        if (end > start && in.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        in.get(start, bytes);
+        commands.incrementAndGet();
+        commandQueue.submit(new String(bytes, charset), "socket");
+    }
+
+    private void writeAll() {
+        List<Client> slow = null;
+        synchronized (this) {
+            for (Client client : clients) {
+                if (client.overflowed) {
+                    slow = slow == null ? new ArrayList<>() : slow;
+                    slow.add(client);
+                    continue;
+                }
+                try {
+                    boolean done = client.write();
+                    client.key.interestOps(SelectionKey.OP_READ | (done ? 0 : SelectionKey.OP_WRITE));
+                } catch (IOException e) {
+                    // Broken pipe; the next read sees the end of stream and cleans up
+                    client.key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+        }
+        if (slow != null) {
+            for (Client client : slow) {
+                dropped.incrementAndGet();
+                disconnect(client, "disconnected: fell more than " + Units.formatBytes(clientBuffer) + " behind");
+            }
+        }
+    }
+
+    private void disconnect(Client client, String reason) {
+        synchronized (this) {
+            if (!clients.remove(client)) {
+                return;
+            }
+        }
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+        logger.info("Console client " + client.id + " " + reason + ".");
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        int connected;
+        synchronized (this) {
+            connected = clients.size();
+        }
+        out.gauge("anyjar_console_clients", "Clients attached to the console socket");
+        out.sample("anyjar_console_clients", connected);
+        out.counter("anyjar_console_clients_attached_total", "Console socket clients that attached");
+        out.sample("anyjar_console_clients_attached_total", attached.get());
+        out.counter("anyjar_console_clients_dropped_total", "Console socket clients disconnected for reading too slowly");
+        out.sample("anyjar_console_clients_dropped_total", dropped.get());
+        out.counter("anyjar_console_commands_total", "Commands received from console socket clients");
+        out.sample("anyjar_console_commands_total", commands.get());
+    }
+
+    /**
+     * Disconnects every client and removes the socket file.
+     */
+    @Override
+    public void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            selector.close();
+            server.close();
+            synchronized (this) {
+                for (Client client : clients) {
+                    client.channel.close();
+                }
+                clients.clear();
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warning("Could not close the console socket: " + e.getMessage());
+        }
+    }
+
+    private class Client {
+
+        final long id = attached.incrementAndGet();
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(8 * 1024);
+        final ByteBuffer out = ByteBuffer.allocate(clientBuffer);
+        ByteBuffer replay;
+        SelectionKey key;
+        boolean overflowed;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // Must hold ConsoleServer.this
+        void offer(byte[] line, int offset, int length) {
+            if (overflowed) {
+                return;
+            }
+            if (out.remaining() < length + 1) {
+                overflowed = true;
+                return;
+            }
+            out.put(line, offset, length).put((byte) '\n');
+        }
+
+        // Must hold ConsoleServer.this. Returns true once everything queued was written.
+        boolean write() throws IOException {
+            if (replay != null) {
+                channel.write(replay);
+                if (replay.hasRemaining()) {
+                    return false;
+                }
+                replay = null;
+            }
+            if (out.position() == 0) {
+                return true;
+            }
+            out.flip();
+            channel.write(out);
+            out.compact();
+            return out.position() == 0;
+        }
+    }
+}
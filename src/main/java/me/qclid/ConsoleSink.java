@@ -0,0 +1,333 @@
+package me.qclid;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Decouples draining the child from writing to the console.
+ * Gobbler threads copy each line into a bounded ring buffer and return; a single writer thread
+ * delivers the lines to the real consoles. When the console can't keep up and the ring fills,
+ * the overflow policy decides whether the gobbler waits ("block"), the oldest queued line is
+ * discarded ("drop-oldest"), or new lines are discarded and a summary printed once the console
+ * catches up ("drop-and-summarize"). The log file is fed separately and never loses lines.
+ */
+public class ConsoleSink implements Closeable, Metrics.Collector {
+
+    private static final Logger logger = Logger.getLogger(ConsoleSink.class.getName());
+
+    private static final int BATCH_SIZE = 256;
+
+    private enum Overflow {
+        BLOCK,
+        DROP_OLDEST,
+        DROP_AND_SUMMARIZE,
+    }
+
+    private final Overflow overflow;
+    private final List<StreamGobbler.LineListener> consoles = new ArrayList<>();
+
+    // Ring buffer, guarded by lock
+    private final byte[][] lines;
+    private final int[] lengths;
+    private final int[] targets;
+    private int head;
+    private int count;
+    private long[] unreported = new long[0];
+    private boolean closed;
+    private boolean writerDone;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Batch copied out of the ring, owned by the writer thread
+    private byte[] arena = new byte[64 * 1024];
+    private final int[] batchOffsets = new int[BATCH_SIZE];
+    private final int[] batchLengths = new int[BATCH_SIZE];
+    private final int[] batchTargets = new int[BATCH_SIZE];
+    private final Thread writer;
+
+    // Counters
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong stallNanosTotal = new AtomicLong();
+    private volatile long maxStallNanos;
+    private volatile long maxWriteNanos;
+    private volatile int maxQueueDepth;
+
+    /**
+     * @param config The console section of the configuration
+     */
+    public ConsoleSink(ConsoleConfig config) {
+        this.overflow = parseOverflow(config.getOverflow());
+        int capacity = Math.max(BATCH_SIZE, config.getBufferLines());
+        this.lines = new byte[capacity][];
+        this.lengths = new int[capacity];
+        this.targets = new int[capacity];
+        this.writer = new Thread(this::drainLoop, "AnyJar-console-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private static Overflow parseOverflow(String overflow) {
+        switch (overflow == null ? "block" : overflow.toLowerCase(Locale.ROOT)) {
+            case "block":
+                return Overflow.BLOCK;
+            case "drop-oldest":
+                return Overflow.DROP_OLDEST;
+            case "drop-and-summarize":
+                return Overflow.DROP_AND_SUMMARIZE;
+            default:
+                logger.warning(
+                    "Unknown console overflow policy '" + overflow + "', using block " +
+                    "(choose from block, drop-oldest and drop-and-summarize)."
+                );
+                return Overflow.BLOCK;
+        }
+    }
+
+    /**
+     * Registers a console and returns the listener that queues lines for it.
+     * The console itself is only ever called from the writer thread.
+     * @param console The console to deliver to, e.g. a {@link PassthroughConsole}
+     * @return A listener for {@link StreamGobbler} or {@link OutputFilter#wrap}
+     */
+    public StreamGobbler.LineListener target(StreamGobbler.LineListener console) {
+        int target;
+        lock.lock();
+        try {
+            target = consoles.size();
+            consoles.add(console);
+            unreported = Arrays.copyOf(unreported, consoles.size());
+        } finally {
+            lock.unlock();
+        }
+        return (line, offset, length) -> publish(target, line, offset, length);
+    }
+
+    private void publish(int target, byte[] line, int offset, int length) {
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (writerDone) {
+                // Shut down: nobody else is writing to the console any more
+                StreamGobbler.LineListener console = consoles.get(target);
+                console.onLine(line, offset, length);
+                console.flush();
+                return;
+            }
+            if (count == lines.length) {
+                switch (overflow) {
+                    case BLOCK:
+                        while (count == lines.length && !writerDone) {
+                            notFull.awaitUninterruptibly();
+                        }
+                        if (writerDone) {
+                            StreamGobbler.LineListener console = consoles.get(target);
+                            console.onLine(line, offset, length);
+                            console.flush();
+                            return;
+                        }
+                        break;
+                    case DROP_OLDEST:
+                        head = (head + 1) % lines.length;
+                        count--;
+                        dropped.incrementAndGet();
+                        break;
+                    case DROP_AND_SUMMARIZE:
+                        unreported[target]++;
+                        dropped.incrementAndGet();
+                        return;
+                }
+            }
+            int slot = (head + count) % lines.length;
+            byte[] buffer = lines[slot];
+            if (buffer == null || buffer.length < length) {
+                buffer = new byte[Math.max(length, 128)];
+                lines[slot] = buffer;
+            }
+            System.arraycopy(line, offset, buffer, 0, length);
+            lengths[slot] = length;
+            targets[slot] = target;
+            count++;
+            if (count > maxQueueDepth) {
+                maxQueueDepth = count;
+            }
+            if (count == 1) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+            long stall = System.nanoTime() - start;
+            stallNanosTotal.addAndGet(stall);
+            if (stall > maxStallNanos) {
+                maxStallNanos = stall;
+            }
+        }
+    }
+
+    private void drainLoop() {
+        boolean[] touched = new boolean[0];
+        List<byte[]> summaries = new ArrayList<>();
+        List<Integer> summaryTargets = new ArrayList<>();
+        while (true) {
+            int taken;
+            boolean stop;
+            lock.lock();
+            try {
+                while (count == 0 && !closed && !hasUnreported()) {
+                    notEmpty.awaitUninterruptibly();
+                }
+
+                // Copy the batch out so producers may reuse or drop slots while we write
+                taken = Math.min(count, BATCH_SIZE);
+                int used = 0;
+                for (int i = 0; i < taken; i++) {
+                    int slot = (head + i) % lines.length;
+                    int length = lengths[slot];
+                    if (used + length > arena.length) {
+                        arena = Arrays.copyOf(arena, Math.max(arena.length * 2, used + length));
+                    }
+                    System.arraycopy(lines[slot], 0, arena, used, length);
+                    batchOffsets[i] = used;
+                    batchLengths[i] = length;
+                    batchTargets[i] = targets[slot];
+                    used += length;
+                }
+                head = (head + taken) % lines.length;
+                count -= taken;
+                if (taken > 0) {
+                    notFull.signalAll();
+                }
+
+                for (int target = 0; target < unreported.length; target++) {
+                    if (unreported[target] > 0) {
+                        summaries.add(
+                            String.format(
+                                Locale.ROOT,
+                                "Skipped %d lines because the console couldn't keep up (they're all in the log file).",
+                                unreported[target]
+                            ).getBytes(StandardCharsets.UTF_8)
+                        );
+                        summaryTargets.add(target);
+                        unreported[target] = 0;
+                    }
+                }
+                if (touched.length < consoles.size()) {
+                    touched = new boolean[consoles.size()];
+                }
+                stop = closed && count == 0;
+            } finally {
+                lock.unlock();
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < taken; i++) {
+                consoles.get(batchTargets[i]).onLine(arena, batchOffsets[i], batchLengths[i]);
+                touched[batchTargets[i]] = true;
+            }
+            for (int i = 0; i < summaries.size(); i++) {
+                byte[] summary = summaries.get(i);
+                consoles.get(summaryTargets.get(i)).onLine(summary, 0, summary.length);
+                touched[summaryTargets.get(i)] = true;
+            }
+            for (int target = 0; target < touched.length; target++) {
+                if (touched[target]) {
+                    consoles.get(target).flush();
+                    touched[target] = false;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (elapsed > maxWriteNanos) {
+                maxWriteNanos = elapsed;
+            }
+            delivered.addAndGet(taken);
+            summaries.clear();
+            summaryTargets.clear();
+
+            if (stop) {
+                lock.lock();
+                try {
+                    writerDone = true;
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+        }
+    }
+
+    // Must hold lock
+    private boolean hasUnreported() {
+        for (long skipped : unreported) {
+            if (skipped > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getDroppedLines() {
+        return dropped.get();
+    }
+
+    public long getMaxStallNanos() {
+        return maxStallNanos;
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        int depth;
+        lock.lock();
+        try {
+            depth = count;
+        } finally {
+            lock.unlock();
+        }
+        out.counter("anyjar_console_lines_total", "Lines written to the console");
+        out.sample("anyjar_console_lines_total", delivered.get());
+        out.counter("anyjar_console_dropped_lines_total", "Lines left off the console because it couldn't keep up");
+        out.sample("anyjar_console_dropped_lines_total", dropped.get());
+        out.gauge("anyjar_console_queue_depth", "Lines waiting for the console");
+        out.sample("anyjar_console_queue_depth", depth);
+        out.gauge("anyjar_console_queue_depth_max", "Most lines waiting for the console at once");
+        out.sample("anyjar_console_queue_depth_max", maxQueueDepth);
+        out.counter("anyjar_console_stall_seconds_total", "Time the output readers spent handing lines to the console");
+        out.sample("anyjar_console_stall_seconds_total", stallNanosTotal.get() / 1e9);
+        out.gauge("anyjar_console_stall_seconds_max", "Longest time one line held up an output reader");
+        out.sample("anyjar_console_stall_seconds_max", maxStallNanos / 1e9);
+        out.gauge("anyjar_console_write_seconds_max", "Longest time the console took to accept one batch");
+        out.sample("anyjar_console_write_seconds_max", maxWriteNanos / 1e9);
+    }
+
+    /**
+     * Delivers everything still queued, then writes later lines directly. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package me.qclid;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Memory and CPU limits of the container AnyJar runs in, read from cgroup v2 or v1.
+ * Anything that cannot be found falls back to what the host reports.
+ */
+public class ContainerLimits {
+
+    private static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+    // cgroup v1 reports "unlimited" as a huge page-aligned number
+    private static final long V1_UNLIMITED = Long.MAX_VALUE / 2;
+
+    private final String source;
+    private final Path cgroupDir;
+    private final long memoryLimit;
+    private final long hostMemory;
+    private final double cpuQuota;
+    private final int cpusetCount;
+    private final int hostCpus;
+
+    private ContainerLimits(
+        String source,
+        Path cgroupDir,
+        long memoryLimit,
+        long hostMemory,
+        double cpuQuota,
+        int cpusetCount,
+        int hostCpus
+    ) {
+        this.source = source;
+        this.cgroupDir = cgroupDir;
+        this.memoryLimit = memoryLimit;
+        this.hostMemory = hostMemory;
+        this.cpuQuota = cpuQuota;
+        this.cpusetCount = cpusetCount;
+        this.hostCpus = hostCpus;
+    }
+
+    public static ContainerLimits detect() {
+        long hostMemory = readMemInfoTotal();
+        int hostCpus = Runtime.getRuntime().availableProcessors();
+
+        Path v2 = cgroupV2Dir();
+        if (v2 != null) {
+            long memory = parseLimit(read(v2.resolve("memory.max")));
+            double quota = -1;
+            String cpuMax = read(v2.resolve("cpu.max"));
+            if (cpuMax != null) {
+                String[] parts = cpuMax.trim().split("\\s+");
+                if (parts.length == 2) {
+                    quota = quota(parseLimit(parts[0]), parseLimit(parts[1]));
+                }
+            }
+            int cpuset = countCpus(read(v2.resolve("cpuset.cpus.effective")));
+            return new ContainerLimits("cgroup v2", v2, memory, hostMemory, quota, cpuset, hostCpus);
+        }
+
+        Path v1Memory = cgroupV1Dir("memory");
+        if (v1Memory != null) {
+            long memory = parseLimit(read(v1Memory.resolve("memory.limit_in_bytes")));
+            if (memory >= V1_UNLIMITED) {
+                memory = -1;
+            }
+            double quota = -1;
+            Path cpu = cgroupV1Dir("cpu");
+            if (cpu != null) {
+                // A quota of -1 means no limit
+                quota = quota(parseLimit(read(cpu.resolve("cpu.cfs_quota_us"))), parseLimit(read(cpu.resolve("cpu.cfs_period_us"))));
+            }
+            Path cpusetDir = cgroupV1Dir("cpuset");
+            int cpuset = cpusetDir == null ? -1 : countCpus(read(cpusetDir.resolve("cpuset.cpus")));
+            return new ContainerLimits("cgroup v1", v1Memory, memory, hostMemory, quota, cpuset, hostCpus);
+        }
+
+        return new ContainerLimits("host", null, -1, hostMemory, -1, -1, hostCpus);
+    }
+
+    private static Path cgroupV2Dir() {
+        if (!Files.exists(CGROUP_ROOT.resolve("cgroup.controllers"))) {
+            return null;
+        }
+        // "0::/some/path" names our own cgroup; inside a container namespace it is usually "/"
+        String self = read(Paths.get("/proc/self/cgroup"));
+        if (self != null) {
+            for (String line : self.split("\n")) {
+                if (line.startsWith("0::")) {
+                    Path dir = CGROUP_ROOT.resolve(line.substring(3).replaceFirst("^/", ""));
+                    if (Files.exists(dir.resolve("memory.max"))) {
+                        return dir;
+                    }
+                }
+            }
+        }
+        return CGROUP_ROOT;
+    }
+
+    private static Path cgroupV1Dir(String controller) {
+        Path mount = CGROUP_ROOT.resolve(controller);
+        if (!Files.isDirectory(mount)) {
+            return null;
+        }
+        // "4:memory:/some/path" or "1:cpu,cpuacct:/some/path"; the path only exists outside a cgroup namespace
+        String self = read(Paths.get("/proc/self/cgroup"));
+        if (self != null) {
+            for (String line : self.split("\n")) {
+                String[] fields = line.split(":", 3);
+                if (fields.length == 3 && (',' + fields[1] + ',').contains(',' + controller + ',')) {
+                    Path dir = mount.resolve(fields[2].replaceFirst("^/", ""));
+                    if (Files.isDirectory(dir)) {
+                        return dir;
+                    }
+                }
+            }
+        }
+        return mount;
+    }
+
+    private static long parseLimit(String value) {
+        if (value == null || value.trim().equals("max")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static double quota(long quota, long period) {
+        return quota > 0 && period > 0 ? (double) quota / period : -1;
+    }
+
+    // -1 for an empty or garbled list
+    private static int countCpus(String list) {
+        if (list == null || list.isBlank()) {
+            return -1;
+        }
+        int count = 0;
+        try {
+            for (String range : list.trim().split(",")) {
+                String[] bounds = range.trim().split("-");
+                count += bounds.length == 2 ? Integer.parseInt(bounds[1]) - Integer.parseInt(bounds[0]) + 1 : 1;
+            }
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return count > 0 ? count : -1;
+    }
+
+    private static long readMemInfoTotal() {
+        String meminfo = read(Paths.get("/proc/meminfo"));
+        if (meminfo != null) {
+            for (String line : meminfo.split("\n")) {
+                if (line.startsWith("MemTotal:")) {
+                    long kib = parseLimit(line.substring(9).replace("kB", ""));
+                    if (kib > 0) {
+                        return kib * 1024;
+                    }
+                }
+            }
+        }
+        return Runtime.getRuntime().maxMemory();
+    }
+
+    static String read(Path path) {
+        try {
+            return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        } catch (IOException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Where the limits came from: "cgroup v2", "cgroup v1" or "host"
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return The cgroup directory AnyJar belongs to, or null when not in a cgroup
+     */
+    public Path getCgroupDir() {
+        return cgroupDir;
+    }
+
+    /**
+     * @return The container memory limit in bytes, or -1 if unlimited
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * @return The memory that can actually be used: the container limit, or the host's total memory
+     */
+    public long getEffectiveMemory() {
+        return memoryLimit > 0 ? Math.min(memoryLimit, hostMemory) : hostMemory;
+    }
+
+    /**
+     * @return The number of CPUs the child may use, taking quota and cpuset into account
+     */
+    public int getEffectiveCpus() {
+        int cpus = hostCpus;
+        if (cpusetCount > 0) {
+            cpus = Math.min(cpus, cpusetCount);
+        }
+        if (cpuQuota > 0) {
+            cpus = Math.min(cpus, (int) Math.ceil(cpuQuota));
+        }
+        return Math.max(1, cpus);
+    }
+
+    public double getCpuQuota() {
+        return cpuQuota;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "%s: memory %s%s, cpus %d (quota %s, cpuset %s, host %d)",
+            source,
+            memoryLimit > 0 ? Units.formatBytes(memoryLimit) : "unlimited",
+            memoryLimit > 0 ? "" : " (host " + Units.formatBytes(hostMemory) + ")",
+            getEffectiveCpus(),
+            cpuQuota > 0 ? String.format("%.2f", cpuQuota) : "none",
+            cpusetCount > 0 ? Integer.toString(cpusetCount) : "all",
+            hostCpus
+        );
+    }
+}
@@ -0,0 +1,153 @@
+package me.qclid;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * A five-field cron expression: minute, hour, day of month, month and day of week (0 or 7 is Sunday).
+ * Fields take "*", numbers, ranges ("1-5"), lists ("1,15") and steps ("8-18/2", "5/10" for 5 to the end, or a star and "/10").
+ * As in cron, when both day fields are restricted a day matching either one counts.
+ * "@hourly", "@daily", "@weekly" and "@monthly" are accepted as shorthands.
+ */
+public class CronSchedule {
+
+    // Nothing fires less than once in four years (the 29th of February)
+    private static final int MAX_DAYS = 4 * 366 + 1;
+
+    private final String expression;
+    private final BitSet minutes;
+    private final BitSet hours;
+    private final BitSet days;
+    private final BitSet months;
+    private final BitSet weekdays;
+    private final boolean anyDay;
+    private final boolean anyWeekday;
+
+    /**
+     * @param expression The cron expression
+     * @throws IllegalArgumentException If it is not a valid expression
+     */
+    public CronSchedule(String expression) {
+        this.expression = expression.trim();
+        String[] fields = expand(this.expression).split("\\s+");
+        if (fields.length != 5) {
+            throw new IllegalArgumentException(
+                "Invalid cron expression '" + expression + "': expected minute, hour, day of month, month and day of week"
+            );
+        }
+        this.minutes = parse(fields[0], 0, 59);
+        this.hours = parse(fields[1], 0, 23);
+        this.days = parse(fields[2], 1, 31);
+        this.months = parse(fields[3], 1, 12);
+        this.weekdays = parse(fields[4], 0, 7);
+        if (weekdays.get(7)) {
+            weekdays.set(0);
+        }
+        this.anyDay = fields[2].startsWith("*");
+        this.anyWeekday = fields[4].startsWith("*");
+    }
+
+    private static String expand(String expression) {
+        switch (expression.toLowerCase(Locale.ROOT)) {
+            case "@hourly":
+                return "0 * * * *";
+            case "@daily":
+                return "0 0 * * *";
+            case "@weekly":
+                return "0 0 * * 0";
+            case "@monthly":
+                return "0 0 1 * *";
+            default:
+                return expression;
+        }
+    }
+
+    private BitSet parse(String field, int min, int max) {
+        BitSet values = new BitSet(max + 1);
+        for (String part : field.split(",")) {
+            int step = 1;
+            int slash = part.indexOf('/');
+            if (slash >= 0) {
+                step = number(part.substring(slash + 1), 1, max);
+                part = part.substring(0, slash);
+                if (part.isEmpty()) {
+                    throw new IllegalArgumentException(
+                        "Step without a range in cron expression '" + expression + "' (write */" + step + " for every " + step + ")"
+                    );
+                }
+            }
+            int from;
+            int to;
+            if (part.equals("*")) {
+                from = min;
+                to = max;
+            } else if (part.indexOf('-') > 0) {
+                from = number(part.substring(0, part.indexOf('-')), min, max);
+                to = number(part.substring(part.indexOf('-') + 1), min, max);
+            } else {
+                from = number(part, min, max);
+                to = slash >= 0 ? max : from;
+            }
+            if (from > to) {
+                throw new IllegalArgumentException("Invalid range '" + part + "' in cron expression '" + expression + "'");
+            }
+            for (int value = from; value <= to; value += step) {
+                values.set(value);
+            }
+        }
+        return values;
+    }
+
+    private int number(String text, int min, int max) {
+        try {
+            int value = Integer.parseInt(text.trim());
+            if (value >= min && value <= max) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(
+            "Invalid value '" + text + "' in cron expression '" + expression + "' (expected " + min + "-" + max + ")"
+        );
+    }
+
+    /**
+     * @param after A point in time
+     * @return The first matching minute after it, or null if the expression never matches
+     */
+    public ZonedDateTime next(ZonedDateTime after) {
+        ZonedDateTime time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        ZonedDateTime limit = time.plusDays(MAX_DAYS);
+        while (time.isBefore(limit)) {
+            if (!months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!dayMatches(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time;
+            }
+        }
+        return null;
+    }
+
+    private boolean dayMatches(ZonedDateTime time) {
+        boolean day = days.get(time.getDayOfMonth());
+        boolean weekday = weekdays.get(time.getDayOfWeek().getValue() % 7);
+        if (anyDay || anyWeekday) {
+            return day && weekday;
+        }
+        return day || weekday;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,108 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * One entry of the "filters" list in server.yml.
+ * A rule matches a line that contains its literal "match" text, or that matches its "regex"
+ * (if both are set, the regex is only tried on lines that contain the literal).
+ */
+public class FilterRule implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+    private String match;
+    private String regex;
+    private String action = "suppress";
+    private String sink;
+    private int limit = 10;
+    private String per = "1m";
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getMatch() {
+        return match;
+    }
+
+    public void setMatch(String match) {
+        this.match = match;
+    }
+
+    public String getRegex() {
+        return regex;
+    }
+
+    public void setRegex(String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * @return "suppress", "route" or "rate-limit"
+     */
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(String action) {
+        this.action = action;
+    }
+
+    public String getSink() {
+        return sink;
+    }
+
+    public void setSink(String sink) {
+        this.sink = sink;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public String getPer() {
+        return per;
+    }
+
+    public void setPer(String per) {
+        this.per = per;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "FilterRule{" +
+            "name='" +
+            name +
+            '\'' +
+            ", match='" +
+            match +
+            '\'' +
+            ", regex='" +
+            regex +
+            '\'' +
+            ", action='" +
+            action +
+            '\'' +
+            ", sink='" +
+            sink +
+            '\'' +
+            ", limit=" +
+            limit +
+            ", per='" +
+            per +
+            '\'' +
+            '}'
+        );
+    }
+}
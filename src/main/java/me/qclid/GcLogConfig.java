@@ -0,0 +1,111 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * The "gc-log" section of server.yml: GC logging for .jar servers, read back by AnyJar for pause statistics.
+ */
+public class GcLogConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private boolean enabled = false;
+    private String directory = "Anyjar/gc";
+    private int fileCount = 5;
+    private String fileSize = "20M";
+    private String pauseWarning = "50ms";
+    private String window = "5m";
+    private String pollInterval = "1s";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return How many rotated GC log files the JVM keeps
+     */
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public void setFileCount(int fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    public String getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(String fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * @return Pauses longer than this are logged as warnings
+     */
+    public String getPauseWarning() {
+        return pauseWarning;
+    }
+
+    public void setPauseWarning(String pauseWarning) {
+        this.pauseWarning = pauseWarning;
+    }
+
+    /**
+     * @return How far back the pause percentiles look
+     */
+    public String getWindow() {
+        return window;
+    }
+
+    public void setWindow(String window) {
+        this.window = window;
+    }
+
+    public String getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollInterval(String pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "GcLogConfig{" +
+            "enabled=" +
+            enabled +
+            ", directory='" +
+            directory +
+            '\'' +
+            ", fileCount=" +
+            fileCount +
+            ", fileSize='" +
+            fileSize +
+            '\'' +
+            ", pauseWarning='" +
+            pauseWarning +
+            '\'' +
+            ", window='" +
+            window +
+            '\'' +
+            ", pollInterval='" +
+            pollInterval +
+            '\'' +
+            '}'
+        );
+    }
+}
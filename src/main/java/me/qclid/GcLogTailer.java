@@ -0,0 +1,315 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns on unified GC logging for a Java server and follows the log as it is written.
+ * Every poll reads only what was appended since the last one; when the JVM rotates the file
+ * (or a restarted JVM starts a new one) the old file is read to its end before moving on.
+ * Pause lines give the rolling pause percentiles, the heap after each collection and, from the
+ * heap growth between collections, the allocation rate. Pauses that eat into the 50 ms tick
+ * budget are logged as warnings.
+ */
+public class GcLogTailer implements Runnable, Metrics.Collector {
+
+    private static final Logger logger = Logger.getLogger(GcLogTailer.class.getName());
+    private static final int MAX_PAUSES = 4096;
+    private static final int MAX_LINE = 4096;
+    private static final long WARNING_INTERVAL = 10_000;
+
+    // [12.345s][1760650381123ms][info][gc] GC(7) Pause Young (Normal) (G1 Evacuation Pause) 120M->40M(512M) 12.345ms
+    private static final Pattern UPTIME = Pattern.compile("^\\[(\\d+(?:\\.\\d+)?)s\\]");
+    private static final Pattern TIME_MILLIS = Pattern.compile("^(?:\\[[^\\]]*\\])*?\\[(\\d+)ms\\]");
+    private static final Pattern HEAP = Pattern.compile("(\\d+)([KMG])->(\\d+)([KMG])\\((\\d+)([KMG])\\)");
+    private static final Pattern DURATION = Pattern.compile("(\\d+(?:\\.\\d+)?)ms\\s*$");
+
+    private final String label;
+    private final Path file;
+    private final long fileSize;
+    private final int fileCount;
+    private final double warnMillis;
+    private final long window;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private final byte[] partial = new byte[MAX_LINE];
+    private int partialLength;
+    private FileChannel channel;
+    private Object fileKey;
+    private Object skippedKey;
+
+    // Pauses as (wall clock millis from the line's decoration, duration), oldest overwritten first
+    private final long[] pauseTimes = new long[MAX_PAUSES];
+    private final double[] pauseMillis = new double[MAX_PAUSES];
+    private int pauseCount;
+    private int pauseNext;
+
+    private long pausesTotal;
+    private double pauseSecondsTotal;
+    private long slowPauses;
+    private long allocatedTotal;
+    private double allocationRate;
+    private long heapAfter = -1;
+    private long heapCommitted = -1;
+    private double lastUptime = -1;
+    private long lastAfter = -1;
+
+    private long lastWarning;
+    private int suppressedWarnings;
+
+    /**
+     * @param config The gc-log section of the configuration
+     * @param name The service name, or null for the only server
+     * @param label What to call the process in log messages, e.g. "server"
+     */
+    public GcLogTailer(GcLogConfig config, String name, String label) {
+        this.label = label;
+        this.file = new File(config.getDirectory(), name == null ? "gc.log" : "gc-" + name + ".log")
+            .toPath()
+            .toAbsolutePath()
+            .normalize();
+        this.fileSize = Units.parseBytes(config.getFileSize());
+        // With no rotation the JVM would truncate the file in place instead of starting a new one
+        this.fileCount = Math.max(1, config.getFileCount());
+        this.warnMillis = Units.parseMillis(config.getPauseWarning());
+        this.window = Math.max(1000, Units.parseMillis(config.getWindow()));
+        try {
+            Files.createDirectories(file.getParent());
+        } catch (IOException e) {
+            logger.warning("Could not create the GC log directory " + file.getParent() + ": " + e.getMessage());
+        }
+        // Whatever is there now is from an earlier run; the JVM moves it aside when it starts
+        this.skippedKey = fileKey(file);
+    }
+
+    /**
+     * Only the gc tag is logged: its one line per pause has everything that is parsed, where gc* would
+     * add phase and heap region detail to every pause. The wall clock time is logged so a pause is
+     * counted from when it happened, not from when AnyJar got around to reading it.
+     * @return The flag that makes the JVM write the GC log this tailer reads
+     */
+    public String jvmFlag() {
+        return (
+            "-Xlog:gc:file=\"" +
+            file +
+            "\":uptime,timemillis,level,tags:filecount=" +
+            fileCount +
+            ",filesize=" +
+            fileSize
+        );
+    }
+
+    /**
+     * Reads whatever was appended to the GC log since the last call. Runs on the scheduler.
+     */
+    @Override
+    public void run() {
+        try {
+            if (channel != null) {
+                drain();
+            }
+            Object key = fileKey(file);
+            if (key == null || key.equals(skippedKey) || key.equals(fileKey)) {
+                return;
+            }
+            // Rotated, or a new JVM: the old file is done, follow the new one from its start
+            close();
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            fileKey = key;
+            skippedKey = null;
+            drain();
+        } catch (IOException e) {
+            logger.fine("Could not read the GC log " + file + ": " + e.getMessage());
+            close();
+        }
+    }
+
+    private void drain() throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read <= 0) {
+                return;
+            }
+            byte[] bytes = buffer.array();
+            int start = 0;
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n') {
+                    appendPartial(bytes, start, i - start);
+                    try {
+                        onLine(new String(partial, 0, partialLength, StandardCharsets.UTF_8));
+                    } catch (RuntimeException e) {
+                        logger.fine("Skipped a GC log line AnyJar could not parse: " + e);
+                    }
+                    partialLength = 0;
+                    start = i + 1;
+                }
+            }
+            // Keep the unfinished last line for the next read
+            appendPartial(bytes, start, read - start);
+        }
+    }
+
+    private void appendPartial(byte[] bytes, int offset, int length) {
+        int copied = Math.min(length, partial.length - partialLength);
+        System.arraycopy(bytes, offset, partial, partialLength, copied);
+        partialLength += copied;
+    }
+
+    private void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to read from it anyway
+            }
+            channel = null;
+        }
+        fileKey = null;
+        partialLength = 0;
+    }
+
+    private static Object fileKey(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            // Not every file system has keys; fall back to the creation time
+            return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Records one GC log line if it is a pause.
+     * @param line The line without its line break
+     */
+    synchronized void onLine(String line) {
+        int pause = line.indexOf(" Pause ");
+        if (pause < 0) {
+            return;
+        }
+        Matcher duration = DURATION.matcher(line);
+        if (!duration.find()) {
+            return;
+        }
+        double millis = Double.parseDouble(duration.group(1));
+        long now = System.currentTimeMillis();
+        Matcher time = TIME_MILLIS.matcher(line);
+        pauseTimes[pauseNext] = time.find() ? Long.parseLong(time.group(1)) : now;
+        pauseMillis[pauseNext] = millis;
+        pauseNext = (pauseNext + 1) % MAX_PAUSES;
+        pauseCount = Math.min(pauseCount + 1, MAX_PAUSES);
+        pausesTotal++;
+        pauseSecondsTotal += millis / 1000;
+
+        Matcher heap = HEAP.matcher(line);
+        int end = duration.start();
+        if (heap.find(pause)) {
+            end = heap.start();
+            onHeap(line, heap);
+        }
+
+        if (millis > warnMillis) {
+            slowPauses++;
+            if (now - lastWarning >= WARNING_INTERVAL) {
+                logger.warning(
+                    String.format(
+                        Locale.ROOT,
+                        "GC pause of %.1f ms in the %s (%s), over the %s ms warning threshold%s.",
+                        millis,
+                        label,
+                        line.substring(pause + 1, end).trim(),
+                        formatMillis(warnMillis),
+                        suppressedWarnings > 0 ? "; " + suppressedWarnings + " more since the last warning" : ""
+                    )
+                );
+                lastWarning = now;
+                suppressedWarnings = 0;
+            } else {
+                suppressedWarnings++;
+            }
+        }
+    }
+
+    private void onHeap(String line, Matcher heap) {
+        long before = size(heap.group(1), heap.group(2));
+        long after = size(heap.group(3), heap.group(4));
+        heapAfter = after;
+        heapCommitted = size(heap.group(5), heap.group(6));
+
+        Matcher uptimeMatch = UPTIME.matcher(line);
+        double uptime = uptimeMatch.find() ? Double.parseDouble(uptimeMatch.group(1)) : -1;
+        if (uptime < lastUptime) {
+            // A new JVM; nothing carries over
+            lastAfter = -1;
+        }
+        if (lastAfter >= 0 && before >= lastAfter) {
+            long allocated = before - lastAfter;
+            allocatedTotal += allocated;
+            double elapsed = uptime - lastUptime;
+            if (uptime >= 0 && elapsed > 0) {
+                double rate = allocated / elapsed;
+                allocationRate = allocationRate == 0 ? rate : allocationRate * 0.7 + rate * 0.3;
+            }
+        }
+        lastAfter = after;
+        lastUptime = uptime;
+    }
+
+    private static long size(String number, String unit) {
+        return Units.parseBytes(number + unit);
+    }
+
+    private static String formatMillis(double millis) {
+        return millis == Math.rint(millis) ? Long.toString((long) millis) : Double.toString(millis);
+    }
+
+    @Override
+    public synchronized void collect(Metrics.Writer out) {
+        long since = System.currentTimeMillis() - window;
+        double[] recent = new double[pauseCount];
+        int n = 0;
+        for (int i = 0; i < pauseCount; i++) {
+            if (pauseTimes[i] >= since) {
+                recent[n++] = pauseMillis[i];
+            }
+        }
+        Arrays.sort(recent, 0, n);
+
+        out.gauge("anyjar_gc_pause_seconds", "GC pause quantiles over the gc-log window");
+        for (double q : new double[] { 0.5, 0.9, 0.99 }) {
+            double value = n == 0 ? 0 : recent[Math.max(0, (int) Math.ceil(q * n) - 1)] / 1000;
+            out.sample("anyjar_gc_pause_seconds", new String[] { "quantile", Double.toString(q) }, value);
+        }
+        out.gauge("anyjar_gc_pause_max_seconds", "Longest GC pause within the gc-log window");
+        out.sample("anyjar_gc_pause_max_seconds", n == 0 ? 0 : recent[n - 1] / 1000);
+        out.counter("anyjar_gc_pauses_total", "GC pauses read from the GC log");
+        out.sample("anyjar_gc_pauses_total", pausesTotal);
+        out.counter("anyjar_gc_pause_seconds_total", "Time spent in GC pauses");
+        out.sample("anyjar_gc_pause_seconds_total", pauseSecondsTotal);
+        out.counter("anyjar_gc_slow_pauses_total", "GC pauses over the pause-warning threshold");
+        out.sample("anyjar_gc_slow_pauses_total", slowPauses);
+        out.counter("anyjar_gc_allocated_bytes_total", "Heap allocated between collections");
+        out.sample("anyjar_gc_allocated_bytes_total", allocatedTotal);
+        out.gauge("anyjar_gc_allocation_rate_bytes", "Smoothed heap allocation rate in bytes per second");
+        out.sample("anyjar_gc_allocation_rate_bytes", allocationRate);
+        if (heapAfter >= 0) {
+            out.gauge("anyjar_gc_heap_after_bytes", "Heap in use after the last collection");
+            out.sample("anyjar_gc_heap_after_bytes", heapAfter);
+            out.gauge("anyjar_gc_heap_committed_bytes", "Heap committed at the last collection");
+            out.sample("anyjar_gc_heap_committed_bytes", heapCommitted);
+        }
+    }
+}
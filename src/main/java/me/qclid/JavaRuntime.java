@@ -0,0 +1,91 @@
+package me.qclid;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The Java runtime that will run the child, found by asking "java -version".
+ */
+public class JavaRuntime {
+
+    private static final Logger logger = Logger.getLogger(JavaRuntime.class.getName());
+
+    private final String executable;
+    private final String version;
+    private final int feature;
+
+    private JavaRuntime(String executable, String version, int feature) {
+        this.executable = executable;
+        this.version = version;
+        this.feature = feature;
+    }
+
+    /**
+     * Runs "{executable} -version" and parses the first line of its output.
+     * @param executable The java launcher to probe, usually "java"
+     * @return The runtime, with feature version 0 if it could not be determined
+     */
+    public static JavaRuntime probe(String executable) {
+        try {
+            Process process = new ProcessBuilder(executable, "-version").redirectErrorStream(true).start();
+            String firstLine;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                firstLine = reader.readLine();
+                while (reader.readLine() != null) {
+                    // Drain the rest so the process can exit
+                }
+            }
+            process.waitFor(10, TimeUnit.SECONDS);
+            if (firstLine != null) {
+                int start = firstLine.indexOf('"');
+                int end = firstLine.indexOf('"', start + 1);
+                if (start >= 0 && end > start) {
+                    String version = firstLine.substring(start + 1, end);
+                    return new JavaRuntime(executable, version, parseFeature(version));
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Could not run " + executable + " -version: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new JavaRuntime(executable, "unknown", 0);
+    }
+
+    static int parseFeature(String version) {
+        // "1.8.0_392" -> 8, "17.0.9" -> 17, "21-ea" -> 21
+        String[] parts = version.split("[.\\-+_]");
+        try {
+            int first = Integer.parseInt(parts[0]);
+            if (first == 1 && parts.length > 1) {
+                return Integer.parseInt(parts[1]);
+            }
+            return first;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public String getExecutable() {
+        return executable;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The feature release, e.g. 17 for "17.0.9", or 0 if unknown
+     */
+    public int getFeature() {
+        return feature;
+    }
+
+    @Override
+    public String toString() {
+        return executable + " " + version;
+    }
+}
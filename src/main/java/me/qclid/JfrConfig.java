@@ -0,0 +1,207 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * The "jfr" section of server.yml: when to capture a Java Flight Recording of a .jar server
+ * on its own, and how many recordings to keep.
+ */
+public class JfrConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private boolean enabled = false;
+    private String directory = "Anyjar/jfr";
+    private boolean continuous = true;
+    private String maxAge = "10m";
+    private String recordFor = "60s";
+    private int lagEvents = 3;
+    private String lagWindow = "1m";
+    private int cpuPercent = 0;
+    private String cpuDuration = "30s";
+    private String rssGrowth;
+    private String rssWindow = "10m";
+    private String cooldown = "30m";
+    private int maxRecordings = 10;
+    private String maxBytes = "2G";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return Whether a low-overhead recording runs all the time and is dumped on a trigger,
+     *         instead of starting a recording when the trigger fires
+     */
+    public boolean isContinuous() {
+        return continuous;
+    }
+
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+    }
+
+    /**
+     * @return How much history the continuous recording keeps
+     */
+    public String getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(String maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @return How long a recording started by a trigger runs, when not continuous
+     */
+    public String getRecordFor() {
+        return recordFor;
+    }
+
+    public void setRecordFor(String recordFor) {
+        this.recordFor = recordFor;
+    }
+
+    /**
+     * @return How many "Can't keep up!" warnings within lag-window fire a capture, or 0 to not watch lag
+     */
+    public int getLagEvents() {
+        return lagEvents;
+    }
+
+    public void setLagEvents(int lagEvents) {
+        this.lagEvents = lagEvents;
+    }
+
+    public String getLagWindow() {
+        return lagWindow;
+    }
+
+    public void setLagWindow(String lagWindow) {
+        this.lagWindow = lagWindow;
+    }
+
+    /**
+     * @return CPU usage in percent of one core (e.g. 300 for three cores) that, held for cpu-duration,
+     *         fires a capture, or 0 to not watch CPU
+     */
+    public int getCpuPercent() {
+        return cpuPercent;
+    }
+
+    public void setCpuPercent(int cpuPercent) {
+        this.cpuPercent = cpuPercent;
+    }
+
+    public String getCpuDuration() {
+        return cpuDuration;
+    }
+
+    public void setCpuDuration(String cpuDuration) {
+        this.cpuDuration = cpuDuration;
+    }
+
+    /**
+     * @return How much the resident memory may grow within rss-window before a capture, e.g. "1G", or null to not watch it
+     */
+    public String getRssGrowth() {
+        return rssGrowth;
+    }
+
+    public void setRssGrowth(String rssGrowth) {
+        this.rssGrowth = rssGrowth;
+    }
+
+    public String getRssWindow() {
+        return rssWindow;
+    }
+
+    public void setRssWindow(String rssWindow) {
+        this.rssWindow = rssWindow;
+    }
+
+    /**
+     * @return The least time between two captures
+     */
+    public String getCooldown() {
+        return cooldown;
+    }
+
+    public void setCooldown(String cooldown) {
+        this.cooldown = cooldown;
+    }
+
+    public int getMaxRecordings() {
+        return maxRecordings;
+    }
+
+    public void setMaxRecordings(int maxRecordings) {
+        this.maxRecordings = maxRecordings;
+    }
+
+    public String getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(String maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "JfrConfig{" +
+            "enabled=" +
+            enabled +
+            ", directory='" +
+            directory +
+            '\'' +
+            ", continuous=" +
+            continuous +
+            ", maxAge='" +
+            maxAge +
+            '\'' +
+            ", recordFor='" +
+            recordFor +
+            '\'' +
+            ", lagEvents=" +
+            lagEvents +
+            ", lagWindow='" +
+            lagWindow +
+            '\'' +
+            ", cpuPercent=" +
+            cpuPercent +
+            ", cpuDuration='" +
+            cpuDuration +
+            '\'' +
+            ", rssGrowth='" +
+            rssGrowth +
+            '\'' +
+            ", rssWindow='" +
+            rssWindow +
+            '\'' +
+            ", cooldown='" +
+            cooldown +
+            '\'' +
+            ", maxRecordings=" +
+            maxRecordings +
+            ", maxBytes='" +
+            maxBytes +
+            '\'' +
+            '}'
+        );
+    }
+}
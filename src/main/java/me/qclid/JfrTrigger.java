@@ -0,0 +1,339 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Captures a Java Flight Recording of the server when something is wrong and nobody is watching:
+ * a run of "Can't keep up!" warnings, CPU usage held above a limit, or resident memory growing fast.
+ * By default a low-overhead recording runs from launch and the last few minutes of it are dumped
+ * with jcmd when a trigger fires, so the recording shows what led up to the problem. A cooldown
+ * keeps a struggling server from being buried in recordings, and only the newest ones are kept.
+ */
+public class JfrTrigger implements Runnable, Metrics.Collector {
+
+    private static final Logger logger = Logger.getLogger(JfrTrigger.class.getName());
+    private static final String RECORDING = "anyjar";
+    private static final String[] REASONS = { "lag", "cpu", "memory" };
+
+    private final JfrConfig config;
+    private final String prefix;
+    private final String label;
+    private final TickHealthAnalyzer tickHealth;
+    private final ProcessSampler sampler;
+    private final Path directory;
+    private final Pattern ownRecording;
+    private final String jcmd;
+    private final long lagWindow;
+    private final long cpuDuration;
+    private final long rssGrowth;
+    private final long rssWindow;
+    private final long cooldown;
+    private final long maxBytes;
+
+    private final AtomicBoolean capturing = new AtomicBoolean();
+    private final AtomicLong[] captures = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    // Only touched by the scheduler thread
+    private ProcessHandle tracked;
+    private long cpuSince;
+    private final ArrayDeque<long[]> rssSamples = new ArrayDeque<>();
+    private long lastCapture;
+    private boolean inCooldown;
+
+    /**
+     * @param config The jfr section of the configuration
+     * @param name The service name, or null for the only server
+     * @param label What to call the process in log messages, e.g. "server"
+     * @param tickHealth Lag warnings seen in the server's output
+     * @param sampler The sampler of the server's process tree, for CPU and memory
+     */
+    public JfrTrigger(JfrConfig config, String name, String label, TickHealthAnalyzer tickHealth, ProcessSampler sampler) {
+        this.config = config;
+        this.prefix = name == null ? "server" : name;
+        this.label = label;
+        this.tickHealth = tickHealth;
+        tickHealth.rememberLagEvents(config.getLagEvents());
+        this.sampler = sampler;
+        this.directory = new File(config.getDirectory()).toPath().toAbsolutePath().normalize();
+        // Services may share the directory; each one only counts and deletes its own recordings
+        this.ownRecording = Pattern.compile(Pattern.quote(prefix) + "-\\d{4}-\\d{2}-\\d{2}_\\d{2}-\\d{2}-\\d{2}-[a-z]+\\.jfr");
+        this.lagWindow = Units.parseMillis(config.getLagWindow());
+        this.cpuDuration = Units.parseMillis(config.getCpuDuration());
+        String growth = config.getRssGrowth();
+        this.rssGrowth = growth == null || growth.trim().isEmpty() ? 0 : Units.parseBytes(growth);
+        this.rssWindow = Units.parseMillis(config.getRssWindow());
+        this.cooldown = Units.parseMillis(config.getCooldown());
+        this.maxBytes = Units.parseBytes(config.getMaxBytes());
+        this.jcmd = ShutdownCoordinator.findExecutable("jcmd");
+        if (jcmd == null) {
+            logger.warning("Can't capture flight recordings of the " + label + ": 'jcmd' is not installed (it comes with a JDK).");
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            logger.warning("Could not create the recording directory " + directory + ": " + e.getMessage());
+        }
+        prune();
+    }
+
+    /**
+     * @return The flag that starts the continuous recording, or null if recordings start on a trigger
+     */
+    public String jvmFlag() {
+        if (!config.isContinuous()) {
+            return null;
+        }
+        long maxAge = Math.max(1, Units.parseMillis(config.getMaxAge()) / 1000);
+        return "-XX:StartFlightRecording=name=" + RECORDING + ",settings=default,disk=true,maxage=" + maxAge + "s";
+    }
+
+    /**
+     * Checks the triggers against the latest sample. Runs on the scheduler after the sampler.
+     */
+    @Override
+    public void run() {
+        ProcessHandle root = sampler.getRoot();
+        if (jcmd == null || root == null || !root.isAlive()) {
+            return;
+        }
+        if (root != tracked) {
+            // A new launch; nothing carries over
+            tracked = root;
+            cpuSince = 0;
+            rssSamples.clear();
+        }
+        long now = System.currentTimeMillis();
+        String reason = null;
+        String detail = null;
+
+        int lag = config.getLagEvents() > 0 ? tickHealth.lagEventsSince(now - lagWindow) : 0;
+        double cpu = sampler.getCpuUsage() * 100;
+        long rss = sampler.getTreeRssBytes();
+        if (config.getLagEvents() > 0 && lag >= config.getLagEvents()) {
+            reason = "lag";
+            detail = lag + " \"Can't keep up!\" warnings within " + config.getLagWindow();
+        }
+
+        if (config.getCpuPercent() > 0 && cpu >= config.getCpuPercent()) {
+            if (cpuSince == 0) {
+                cpuSince = now;
+            } else if (reason == null && now - cpuSince >= cpuDuration) {
+                reason = "cpu";
+                detail = String.format(Locale.ROOT, "CPU usage of %.0f%% for %s", cpu, config.getCpuDuration());
+            }
+        } else {
+            cpuSince = 0;
+        }
+
+        if (rssGrowth > 0 && rss > 0) {
+            rssSamples.addLast(new long[] { now, rss });
+            while (rssSamples.peekFirst()[0] < now - rssWindow) {
+                rssSamples.removeFirst();
+            }
+            long lowest = rss;
+            for (long[] sample : rssSamples) {
+                lowest = Math.min(lowest, sample[1]);
+            }
+            if (reason == null && rss - lowest >= rssGrowth) {
+                reason = "memory";
+                detail = "resident memory grew by " + Units.formatBytes(rss - lowest) + " within " + config.getRssWindow();
+            }
+        }
+
+        if (reason == null) {
+            inCooldown = false;
+            return;
+        }
+        if (now - lastCapture < cooldown || capturing.get()) {
+            if (!inCooldown) {
+                // Once per episode, not on every check
+                suppressed.incrementAndGet();
+                logger.fine("Not capturing a flight recording of the " + label + " (" + detail + "): still cooling down.");
+                inCooldown = true;
+            }
+            return;
+        }
+        lastCapture = now;
+        cpuSince = 0;
+        rssSamples.clear();
+        String why = reason;
+        String what = detail;
+        capturing.set(true);
+        Thread thread = new Thread(
+            () -> {
+                try {
+                    capture(root, why, what);
+                } finally {
+                    capturing.set(false);
+                }
+            },
+            "AnyJar-jfr"
+        );
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void capture(ProcessHandle root, String reason, String detail) {
+        ProcessHandle java = javaProcess(root);
+        String stamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+        Path file = directory.resolve(prefix + "-" + stamp + "-" + reason + ".jfr");
+        List<String> command = new ArrayList<>();
+        command.add(jcmd);
+        command.add(Long.toString(java.pid()));
+        if (config.isContinuous()) {
+            command.add("JFR.dump");
+            command.add("name=" + RECORDING);
+        } else {
+            command.add("JFR.start");
+            command.add("name=" + RECORDING + "-" + stamp);
+            command.add("settings=profile");
+            command.add("duration=" + Math.max(1, Units.parseMillis(config.getRecordFor()) / 1000) + "s");
+        }
+        command.add("filename=" + file);
+
+        logger.warning("The " + label + " is struggling (" + detail + "); capturing a flight recording.");
+        String output;
+        int exitCode = -1;
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (process.waitFor(30, TimeUnit.SECONDS)) {
+                exitCode = process.exitValue();
+            } else {
+                process.destroyForcibly();
+                output = "jcmd did not finish within 30 seconds";
+            }
+        } catch (IOException e) {
+            output = e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (exitCode != 0 || (config.isContinuous() && !Files.isRegularFile(file))) {
+            failures.incrementAndGet();
+            logger.warning("Could not capture a flight recording of the " + label + " (jcmd exit code " + exitCode + "): " + output);
+            return;
+        }
+        if (!config.isContinuous()) {
+            logger.info(
+                "Recording the " + label + " for " + config.getRecordFor() + "; the recording will be saved to " + file + "."
+            );
+            // The JVM writes the file when the duration is up; until then there is nothing to count or prune
+            if (!awaitRecording(java, file)) {
+                failures.incrementAndGet();
+                logger.warning("The flight recording of the " + label + " was not written to " + file + ".");
+                return;
+            }
+        }
+        captures[reasonIndex(reason)].incrementAndGet();
+        logger.info("Saved a flight recording of the " + label + " to " + file + ".");
+        prune();
+    }
+
+    /**
+     * Waits for a triggered recording to be written, which keeps this capture going until then.
+     * @return Whether the file showed up
+     */
+    private boolean awaitRecording(ProcessHandle java, Path file) {
+        long deadline = System.currentTimeMillis() + Units.parseMillis(config.getRecordFor()) + 60_000;
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                if (Files.isRegularFile(file)) {
+                    return true;
+                }
+                if (!java.isAlive()) {
+                    break;
+                }
+                Thread.sleep(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Files.isRegularFile(file);
+    }
+
+    // The root is java itself unless a wrapper sits in between
+    private static ProcessHandle javaProcess(ProcessHandle root) {
+        if (isJava(root)) {
+            return root;
+        }
+        Optional<ProcessHandle> java = root.descendants().filter(JfrTrigger::isJava).findFirst();
+        return java.orElse(root);
+    }
+
+    private static boolean isJava(ProcessHandle process) {
+        String command = process.info().command().orElse("");
+        String name = new File(command).getName();
+        return name.equals("java") || name.equals("java.exe");
+    }
+
+    private static int reasonIndex(String reason) {
+        for (int i = 0; i < REASONS.length; i++) {
+            if (REASONS[i].equals(reason)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Deletes this service's oldest recordings beyond max-recordings or max-bytes. The newest one is always kept.
+     */
+    private void prune() {
+        List<Path> recordings = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> ownRecording.matcher(p.getFileName().toString()).matches()).forEach(recordings::add);
+        } catch (IOException e) {
+            return;
+        }
+        // Newest first; the names start with the time, so no need to ask the file system
+        recordings.sort(Comparator.comparing((Path p) -> p.getFileName().toString()).reversed());
+        long total = 0;
+        for (int i = 0; i < recordings.size(); i++) {
+            Path recording = recordings.get(i);
+            long size = recording.toFile().length();
+            total += size;
+            if (i > 0 && (i >= config.getMaxRecordings() || total > maxBytes)) {
+                try {
+                    Files.deleteIfExists(recording);
+                    logger.fine("Deleted old flight recording " + recording);
+                } catch (IOException e) {
+                    logger.warning("Could not delete old flight recording " + recording + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.counter("anyjar_jfr_recordings_total", "Flight recordings captured, by what triggered them");
+        for (int i = 0; i < REASONS.length; i++) {
+            out.sample("anyjar_jfr_recordings_total", new String[] { "reason", REASONS[i] }, captures[i].get());
+        }
+        out.counter("anyjar_jfr_failures_total", "Flight recordings that jcmd could not capture");
+        out.sample("anyjar_jfr_failures_total", failures.get());
+        out.counter("anyjar_jfr_suppressed_total", "Triggers that fired during the cooldown");
+        out.sample("anyjar_jfr_suppressed_total", suppressed.get());
+    }
+}
@@ -0,0 +1,56 @@
+package me.qclid;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The "jvm" section of server.yml: extras for .jar targets started with use-options.
+ */
+public class JvmConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private boolean appCds = false;
+    private String profile = "manual";
+    private Map<String, Object> flags = new LinkedHashMap<>();
+
+    public boolean isAppCds() {
+        return appCds;
+    }
+
+    public void setAppCds(boolean appCds) {
+        this.appCds = appCds;
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public void setProfile(String profile) {
+        this.profile = profile;
+    }
+
+    public Map<String, Object> getFlags() {
+        return flags;
+    }
+
+    public void setFlags(Map<String, Object> flags) {
+        this.flags = flags == null ? new LinkedHashMap<>() : flags;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "JvmConfig{" +
+            "appCds=" +
+            appCds +
+            ", profile='" +
+            profile +
+            '\'' +
+            ", flags=" +
+            flags +
+            '}'
+        );
+    }
+}
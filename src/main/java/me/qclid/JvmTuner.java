@@ -0,0 +1,213 @@
+package me.qclid;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Chooses heap size, garbage collector and thread counts for a .jar target.
+ * In the "manual" profile only ram-max/ram-min are used; the "auto" profile sizes everything
+ * from the container limits. Without a container memory limit the machine is likely shared, so the
+ * auto profile then only takes a fraction of it and does not commit the heap up front. Several services
+ * on the auto profile split the memory between them evenly.
+ * Per-flag overrides from server.yml are applied last in both.
+ */
+public class JvmTuner {
+
+    private static final Logger logger = Logger.getLogger(JvmTuner.class.getName());
+
+    private static final long MB = 1024L * 1024;
+    private static final long GB = 1024 * MB;
+    private static final long MIN_HEAP = 256 * MB;
+    private static final long MIN_NON_HEAP = 384 * MB;
+    private static final long WRAPPER_MARGIN = 64 * MB;
+    private static final long ZGC_MIN_HEAP = 16 * GB;
+    private static final long LARGE_G1_HEAP = 12 * GB;
+    // Same share the JVM takes by default (MaxRAMPercentage=25) when nothing limits it
+    private static final int HOST_SHARE_DIVISOR = 4;
+
+    // Flag name -> value; "Xmx"-style flags are rendered as -Xmx<value>, the rest as -XX options
+    private final Map<String, String> flags = new LinkedHashMap<>();
+    private final List<String> reasons = new ArrayList<>();
+
+    /**
+     * Works out the JVM flags for the child and logs what was chosen and why.
+     * @param config The server configuration
+     * @param runtime The Java runtime that will run the jar, only needed for the auto profile
+     * @param sharedBy How many services on the auto profile (this one included) share the memory
+     * @return The flags to place before -jar
+     */
+    public static List<String> tune(ServerConfig config, JavaRuntime runtime, int sharedBy) {
+        JvmTuner tuner = new JvmTuner();
+        JvmConfig jvm = config.getJvm();
+        if ("auto".equalsIgnoreCase(jvm.getProfile())) {
+            tuner.auto(ContainerLimits.detect(), runtime, Math.max(1, sharedBy));
+        } else {
+            tuner.set("Xmx", config.getRamMax());
+            tuner.set("Xms", config.getRamMin());
+        }
+        tuner.applyOverrides(jvm.getFlags());
+
+        List<String> rendered = tuner.render();
+        if ("auto".equalsIgnoreCase(jvm.getProfile()) || !jvm.getFlags().isEmpty()) {
+            for (String reason : tuner.reasons) {
+                logger.info("JVM tuning: " + reason);
+            }
+            logger.info("JVM flags: " + String.join(" ", rendered));
+        }
+        return rendered;
+    }
+
+    private void auto(ContainerLimits limits, JavaRuntime runtime, int sharedBy) {
+        reasons.add("limits from " + limits);
+
+        long memory = limits.getEffectiveMemory();
+        long wrapper = wrapperFootprint();
+        long available = memory - wrapper;
+        // Only a container limit says the memory is ours to take; pre-touching all of a shared host's would starve its neighbours
+        boolean dedicated = limits.getMemoryLimit() > 0;
+        if (dedicated) {
+            reasons.add(
+                "reserving " + Units.formatBytes(wrapper) + " for AnyJar itself, " +
+                Units.formatBytes(available) + " left for the server"
+            );
+        } else {
+            available /= HOST_SHARE_DIVISOR;
+            reasons.add(
+                "no container memory limit, so taking a quarter of the host's memory (" + Units.formatBytes(available) +
+                ") without committing it up front; set a jvm flag or use the manual profile for more"
+            );
+        }
+        if (sharedBy > 1) {
+            // Each one pre-touches its heap, so together they must fit
+            available /= sharedBy;
+            reasons.add(
+                sharedBy + " services use the auto profile, so this one takes " + Units.formatBytes(available) +
+                "; set ram-max and the manual profile per service to split it differently"
+            );
+        }
+
+        boolean zgc = runtime.getFeature() >= 21 && available - nonHeap(available, true) >= ZGC_MIN_HEAP;
+        long nonHeap = nonHeap(available, zgc);
+        long heap = Math.max(MIN_HEAP, (available - nonHeap) / (16 * MB) * (16 * MB));
+        set("Xmx", heap / MB + "M");
+        if (dedicated) {
+            set("Xms", heap / MB + "M");
+            set("AlwaysPreTouch", "true");
+        }
+        reasons.add(
+            "heap " + Units.formatBytes(heap) + ", keeping " + Units.formatBytes(nonHeap) +
+            " for metaspace, code cache, thread stacks, direct buffers and GC structures"
+        );
+
+        int cpus = limits.getEffectiveCpus();
+        int parallel = cpus <= 8 ? cpus : 8 + (cpus - 8) * 5 / 8;
+        set("ActiveProcessorCount", Integer.toString(cpus));
+        set("ParallelGCThreads", Integer.toString(parallel));
+
+        if (zgc) {
+            set("UseZGC", "true");
+            if (runtime.getFeature() < 23) {
+                // Generational mode became the default (and only) ZGC mode in Java 23
+                set("ZGenerational", "true");
+            }
+            set("ConcGCThreads", Integer.toString(Math.max(1, cpus / 4)));
+            set("DisableExplicitGC", "true");
+            set("PerfDisableSharedMem", "true");
+            reasons.add(
+                "Generational ZGC: heap is at least " + Units.formatBytes(ZGC_MIN_HEAP) + " on Java " +
+                runtime.getFeature() + ", where sub-millisecond pauses beat G1's throughput edge"
+            );
+        } else {
+            set("ConcGCThreads", Integer.toString(Math.max(1, (parallel + 2) / 4)));
+            g1(heap, runtime);
+            reasons.add(
+                "G1 tuned for short-lived allocations: " +
+                (runtime.getFeature() < 21 ? "Java " + runtime.getFeature() + " has no generational ZGC" : "heap is below " + Units.formatBytes(ZGC_MIN_HEAP))
+            );
+        }
+        reasons.add(cpus + " active processors, " + parallel + " parallel GC threads, " + flags.get("ConcGCThreads") + " concurrent GC threads");
+    }
+
+    private void g1(long heap, JavaRuntime runtime) {
+        boolean large = heap >= LARGE_G1_HEAP;
+        set("UseG1GC", "true");
+        set("ParallelRefProcEnabled", "true");
+        set("MaxGCPauseMillis", "200");
+        set("UnlockExperimentalVMOptions", "true");
+        set("DisableExplicitGC", "true");
+        set("G1NewSizePercent", large ? "40" : "30");
+        set("G1MaxNewSizePercent", large ? "50" : "40");
+        set("G1HeapRegionSize", large ? "16M" : "8M");
+        set("G1ReservePercent", large ? "15" : "20");
+        set("G1HeapWastePercent", "5");
+        set("G1MixedGCCountTarget", "4");
+        set("InitiatingHeapOccupancyPercent", large ? "20" : "15");
+        set("G1MixedGCLiveThresholdPercent", "90");
+        if (runtime.getFeature() < 20) {
+            // Obsolete since Java 20, where remembered sets are no longer updated in the pause
+            set("G1RSetUpdatingPauseTimePercent", "5");
+        }
+        set("SurvivorRatio", "32");
+        set("PerfDisableSharedMem", "true");
+        set("MaxTenuringThreshold", "1");
+    }
+
+    private static long nonHeap(long available, boolean zgc) {
+        return Math.max(MIN_NON_HEAP, (long) (available * (zgc ? 0.20 : 0.15)));
+    }
+
+    /**
+     * AnyJar shares the container with the child, so its own resident memory plus some slack comes off the top.
+     */
+    private static long wrapperFootprint() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024 + WRAPPER_MARGIN;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not on Linux
+        }
+        return Runtime.getRuntime().totalMemory() + WRAPPER_MARGIN;
+    }
+
+    private void applyOverrides(Map<String, Object> overrides) {
+        for (Map.Entry<String, Object> override : overrides.entrySet()) {
+            String name = override.getKey().replaceFirst("^-XX:[+-]?", "").replaceFirst("^-", "");
+            if (override.getValue() == null) {
+                flags.remove(name);
+                reasons.add(name + " removed by server.yml");
+            } else {
+                set(name, String.valueOf(override.getValue()));
+                reasons.add(name + " set to " + override.getValue() + " by server.yml");
+            }
+        }
+    }
+
+    private void set(String name, String value) {
+        flags.put(name, value);
+    }
+
+    private List<String> render() {
+        List<String> rendered = new ArrayList<>();
+        for (Map.Entry<String, String> flag : flags.entrySet()) {
+            String name = flag.getKey();
+            String value = flag.getValue();
+            if (name.equals("Xmx") || name.equals("Xms") || name.equals("Xss") || name.equals("Xmn")) {
+                rendered.add("-" + name + value);
+            } else if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                rendered.add("-XX:" + (Boolean.parseBoolean(value) ? "+" : "-") + name);
+            } else {
+                rendered.add("-XX:" + name + "=" + value);
+            }
+        }
+        return rendered;
+    }
+}
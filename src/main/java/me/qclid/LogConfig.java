@@ -0,0 +1,106 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * The "logging" section of server.yml: rotation, compression and retention of AnyJar's log files.
+ */
+public class LogConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Where AnyJar's own log lives. It is opened before server.yml is read, so this is fixed. */
+    public static final File DIRECTORY = new File("Anyjar/logs");
+    /** The name AnyJar's own log segments start with. */
+    public static final String BASE_NAME = "Anyjar-log";
+
+    private String maxFileSize = "100M";
+    private boolean rotateDaily = true;
+    private boolean compress = true;
+    private int maxFiles = 30;
+    private String maxTotalSize = "2G";
+    private String indexInterval = "64K";
+
+    public String getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(String maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public boolean isRotateDaily() {
+        return rotateDaily;
+    }
+
+    public void setRotateDaily(boolean rotateDaily) {
+        this.rotateDaily = rotateDaily;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+
+    public void setCompress(boolean compress) {
+        this.compress = compress;
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public void setMaxFiles(int maxFiles) {
+        this.maxFiles = maxFiles;
+    }
+
+    public String getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    public void setMaxTotalSize(String maxTotalSize) {
+        this.maxTotalSize = maxTotalSize;
+    }
+
+    /**
+     * @return How often a timestamp is added to the log index, e.g. "64K" for every 64 KiB written, or "0" for no index
+     */
+    public String getIndexInterval() {
+        return indexInterval;
+    }
+
+    public void setIndexInterval(String indexInterval) {
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * @param name A service name
+     * @return The folder that service's log is kept in; its segments are named after the service
+     */
+    public static File serviceDirectory(String name) {
+        return new File(new File(DIRECTORY, "services"), name);
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "LogConfig{" +
+            "maxFileSize='" +
+            maxFileSize +
+            '\'' +
+            ", rotateDaily=" +
+            rotateDaily +
+            ", compress=" +
+            compress +
+            ", maxFiles=" +
+            maxFiles +
+            ", maxTotalSize='" +
+            maxTotalSize +
+            '\'' +
+            ", indexInterval='" +
+            indexInterval +
+            '\'' +
+            '}'
+        );
+    }
+}
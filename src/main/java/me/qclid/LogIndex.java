@@ -0,0 +1,157 @@
+package me.qclid;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * The sparse index kept next to every log segment, in "segment.idx": a list of (epoch second, byte offset)
+ * pairs, one every few KB, each pointing at the start of a line written at that second.
+ * A reader looking for a time range seeks to the last entry before it instead of reading the whole segment.
+ * For a compressed segment the offsets point into the .gz file, where each entry starts a new gzip member.
+ */
+public final class LogIndex {
+
+    /** Bytes per entry: two big-endian longs. */
+    static final int ENTRY = 16;
+    static final String SUFFIX = ".idx";
+
+    private LogIndex() {}
+
+    /**
+     * @param segment A log segment, plain or compressed
+     * @return Its index file
+     */
+    public static File of(File segment) {
+        return new File(segment.getPath() + SUFFIX);
+    }
+
+    /**
+     * Reads the timestamp at the start of a log line ("yyyy-MM-dd HH:mm:ss").
+     * @return The epoch second, or -1 if the line does not start with a timestamp
+     */
+    public static long parseSecond(byte[] line, int offset, int length) {
+        if (length < 19 || line[offset + 4] != '-' || line[offset + 7] != '-' || line[offset + 10] != ' ') {
+            return -1;
+        }
+        int year = digits(line, offset, 4);
+        int month = digits(line, offset + 5, 2);
+        int day = digits(line, offset + 8, 2);
+        int hour = digits(line, offset + 11, 2);
+        int minute = digits(line, offset + 14, 2);
+        int second = digits(line, offset + 17, 2);
+        if ((year | month | day | hour | minute | second) < 0) {
+            return -1;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second).atZone(ZoneId.systemDefault()).toEpochSecond();
+        } catch (DateTimeException e) {
+            return -1;
+        }
+    }
+
+    private static int digits(byte[] b, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * Reads a whole index.
+     * @param index The index file
+     * @return Entries as second, offset, second, offset...; empty if there is no usable index
+     */
+    public static long[] read(File index) {
+        long length = index.length();
+        long[] entries = new long[(int) Math.min(Integer.MAX_VALUE - 8, length / ENTRY * 2)];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = in.readLong();
+            }
+        } catch (IOException e) {
+            return new long[0];
+        }
+        return entries;
+    }
+
+    /**
+     * Reads only the first entry of an index.
+     * @param index The index file
+     * @return The epoch second of the first indexed line, or -1 if there is no usable index
+     */
+    public static long firstSecond(File index) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(index))) {
+            long second = in.readLong();
+            in.readLong();
+            return second;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Finds where to start reading for lines at or after a time.
+     * @param entries The index, as returned by {@link #read(File)}
+     * @param second The epoch second of the earliest line wanted
+     * @return The offset of the last entry before that second, or 0
+     */
+    public static long seek(long[] entries, long second) {
+        int low = 0;
+        int high = entries.length / 2 - 1;
+        long offset = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid * 2] < second) {
+                offset = entries[mid * 2 + 1];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Appends entries to an index as a segment is written.
+     */
+    static class Writer implements AutoCloseable {
+
+        private final OutputStream out;
+        private final byte[] entry = new byte[ENTRY];
+
+        Writer(File index, boolean append) throws IOException {
+            this.out = new FileOutputStream(index, append);
+        }
+
+        void add(long second, long offset) throws IOException {
+            putLong(entry, 0, second);
+            putLong(entry, 8, offset);
+            out.write(entry);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private static void putLong(byte[] b, int at, long value) {
+            for (int i = 7; i >= 0; i--) {
+                b[at + i] = (byte) value;
+                value >>>= 8;
+            }
+        }
+    }
+}
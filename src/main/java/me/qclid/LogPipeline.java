@@ -0,0 +1,499 @@
+package me.qclid;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Asynchronous, batched log writer.
+ * Producers push records into a bounded ring buffer and return immediately; a single
+ * background thread drains the buffer in batches and flushes by size or by time.
+ * The buffer blocks producers when full, so the log file stays lossless.
+ */
+public class LogPipeline implements Closeable, Metrics.Collector {
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int BATCH_SIZE = 512;
+    private static final int FLUSH_BYTES = 64 * 1024;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final OutputStream out;
+    private final String name;
+
+    // Ring buffer, guarded by lock
+    private final long[] times;
+    private final Level[] levels;
+    private final String[] messages;
+    private final byte[][] raw;
+    private final int[] rawLengths;
+    private int head;
+    private int count;
+    private boolean closed;
+    // Set by the writer as it exits; from then on publishers write themselves, still under lock
+    private boolean writerDone;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Writer state, owned by the writer thread until writerDone, then guarded by lock
+    private final byte[] buffer = new byte[FLUSH_BYTES * 2];
+    private int buffered;
+    private final TimestampCache timestamps = new TimestampCache();
+    private final Map<Level, byte[]> levelPrefixes = new IdentityHashMap<>();
+    private final Thread writer;
+
+    // Counters
+    private final AtomicLong linesWritten = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushNanosTotal = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+    private volatile double linesPerSecond;
+    private volatile int maxQueueDepth;
+
+    public LogPipeline(String name, OutputStream out) {
+        this(name, out, DEFAULT_CAPACITY);
+    }
+
+    public LogPipeline(String name, OutputStream out, int capacity) {
+        this.name = name;
+        this.out = out;
+        this.times = new long[capacity];
+        this.levels = new Level[capacity];
+        this.messages = new String[capacity];
+        this.raw = new byte[capacity][];
+        this.rawLengths = new int[capacity];
+        this.writer = new Thread(this::drainLoop, "AnyJar-" + name + "-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a line for the log file. Blocks only while the ring buffer is full.
+     * Once the pipeline is closed and drained, records are written synchronously instead of being dropped.
+     * @param level The level printed in front of the line
+     * @param message The line to log
+     */
+    public void publish(Level level, String message) {
+        long now = System.currentTimeMillis();
+        // A null message would look like a raw record to the writer
+        String text = String.valueOf(message);
+        lock.lock();
+        try {
+            int slot = claimSlot();
+            if (slot < 0) {
+                writeLate(now, level, text);
+                return;
+            }
+            times[slot] = now;
+            levels[slot] = level;
+            messages[slot] = text;
+            commitSlot();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a raw line for the log file. The bytes are copied into a buffer owned by the
+     * ring slot, which is reused by later records, so steady-state logging does not allocate.
+     * @param level The level printed in front of the line
+     * @param line Buffer holding the line, without its line terminator
+     * @param offset Start of the line in the buffer
+     * @param length Length of the line in bytes
+     */
+    public void publish(Level level, byte[] line, int offset, int length) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            int slot = claimSlot();
+            if (slot < 0) {
+                append(now, level, line, offset, length);
+                flush();
+                return;
+            }
+            byte[] target = raw[slot];
+            if (target == null || target.length < length) {
+                target = new byte[Math.max(length, 128)];
+                raw[slot] = target;
+            }
+            System.arraycopy(line, offset, target, 0, length);
+            times[slot] = now;
+            levels[slot] = level;
+            rawLengths[slot] = length;
+            commitSlot();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates a line listener that logs every line of a child stream at the given level.
+     * @param level The level printed in front of each line
+     * @return A listener for {@link StreamGobbler}
+     */
+    public StreamGobbler.LineListener listener(Level level) {
+        return (line, offset, length) -> publish(level, line, offset, length);
+    }
+
+    // Must hold lock. Returns -1 once the writer has exited; until then records queue behind the
+    // ones already waiting, even after close, so they are written in order.
+    private int claimSlot() {
+        while (!writerDone && count == times.length) {
+            notFull.awaitUninterruptibly();
+        }
+        if (writerDone) {
+            return -1;
+        }
+        return (head + count) % times.length;
+    }
+
+    // Must hold lock
+    private void commitSlot() {
+        count++;
+        if (count > maxQueueDepth) {
+            maxQueueDepth = count;
+        }
+        if (count == 1) {
+            notEmpty.signal();
+        }
+    }
+
+    /**
+     * Creates a JUL handler that feeds this pipeline, so AnyJar's own log messages share the file.
+     * @return A handler publishing into this pipeline
+     */
+    public Handler handler() {
+        return new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if (isLoggable(record)) {
+                    LogPipeline.this.publish(record.getLevel(), record.getMessage());
+                }
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {
+                LogPipeline.this.close();
+            }
+        };
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public int getCapacity() {
+        return times.length;
+    }
+
+    public long getLinesWritten() {
+        return linesWritten.get();
+    }
+
+    public double getLinesPerSecond() {
+        return linesPerSecond;
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    public long getLastFlushNanos() {
+        return lastFlushNanos;
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos;
+    }
+
+    public long getAverageFlushNanos() {
+        long count = flushes.get();
+        return count == 0 ? 0 : flushNanosTotal.get() / count;
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        String[] labels = { "pipeline", name };
+        out.counter("anyjar_log_lines_total", "Lines written to the log file");
+        out.sample("anyjar_log_lines_total", labels, linesWritten.get());
+        out.gauge("anyjar_log_lines_per_second", "Lines written per second over the last second");
+        out.sample("anyjar_log_lines_per_second", labels, linesPerSecond);
+        out.gauge("anyjar_log_queue_depth", "Records waiting in the ring buffer");
+        out.sample("anyjar_log_queue_depth", labels, getQueueDepth());
+        out.gauge("anyjar_log_queue_depth_max", "Highest ring buffer occupancy seen");
+        out.sample("anyjar_log_queue_depth_max", labels, maxQueueDepth);
+        out.counter("anyjar_log_flushes_total", "Batches flushed to the log file");
+        out.sample("anyjar_log_flushes_total", labels, flushes.get());
+        out.gauge("anyjar_log_flush_seconds", "Flush latency");
+        out.sample("anyjar_log_flush_seconds", new String[] { "pipeline", name, "stat", "last" }, lastFlushNanos / 1e9);
+        out.sample("anyjar_log_flush_seconds", new String[] { "pipeline", name, "stat", "avg" }, getAverageFlushNanos() / 1e9);
+        out.sample("anyjar_log_flush_seconds", new String[] { "pipeline", name, "stat", "max" }, maxFlushNanos / 1e9);
+    }
+
+    /**
+     * Drains everything still queued and flushes the underlying stream. Safe to call more than once.
+     * The stream stays open so records published during shutdown can still be written synchronously.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String summary = String.format(
+            "Log pipeline '%s' closed: %d lines, %d flushes, avg flush %.2f ms, max flush %.2f ms, max queue depth %d/%d",
+            name,
+            linesWritten.get(),
+            flushes.get(),
+            getAverageFlushNanos() / 1_000_000.0,
+            maxFlushNanos / 1_000_000.0,
+            maxQueueDepth,
+            times.length
+        );
+        lock.lock();
+        try {
+            if (writerDone) {
+                writeLate(System.currentTimeMillis(), Level.INFO, summary);
+            } else if (count < times.length) {
+                // The writer is stuck on a slow disk; queue the summary rather than wait for a slot
+                int slot = (head + count) % times.length;
+                times[slot] = System.currentTimeMillis();
+                levels[slot] = Level.INFO;
+                messages[slot] = summary;
+                commitSlot();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drainLoop() {
+        try {
+            drainBatches();
+        } finally {
+            finish();
+        }
+    }
+
+    private void drainBatches() {
+        long lastFlush = System.nanoTime();
+        long rateWindowStart = lastFlush;
+        long rateWindowLines = 0;
+
+        while (true) {
+            int first;
+            int taken;
+            boolean stop = false;
+            lock.lock();
+            try {
+                long wait = FLUSH_INTERVAL_NANOS - (System.nanoTime() - lastFlush);
+                // Also wake up when the rate window ends, so a quiet child brings the rate down to 0
+                while (
+                    count == 0 &&
+                    !closed &&
+                    (buffered == 0 || wait > 0) &&
+                    System.nanoTime() - rateWindowStart < RATE_WINDOW_NANOS
+                ) {
+                    wait = notEmpty.awaitNanos(buffered == 0 ? FLUSH_INTERVAL_NANOS : wait);
+                }
+                first = head;
+                taken = Math.min(count, BATCH_SIZE);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            // Producers only ever fill free slots, so the taken ones can be read without the lock
+            for (int i = 0; i < taken; i++) {
+                int slot = (first + i) % times.length;
+                if (messages[slot] != null) {
+                    append(times[slot], levels[slot], messages[slot]);
+                    messages[slot] = null;
+                } else {
+                    append(times[slot], levels[slot], raw[slot], 0, rawLengths[slot]);
+                }
+                levels[slot] = null;
+            }
+            rateWindowLines += taken;
+
+            lock.lock();
+            try {
+                head = (head + taken) % times.length;
+                count -= taken;
+                if (taken > 0) {
+                    notFull.signalAll();
+                }
+                stop = closed && count == 0;
+            } finally {
+                lock.unlock();
+            }
+            if (stop) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            if (buffered >= FLUSH_BYTES || now - lastFlush >= FLUSH_INTERVAL_NANOS) {
+                if (buffered > 0) {
+                    flush();
+                }
+                lastFlush = now;
+            }
+            if (now - rateWindowStart >= RATE_WINDOW_NANOS) {
+                linesPerSecond = rateWindowLines * 1_000_000_000.0 / (now - rateWindowStart);
+                rateWindowStart = now;
+                rateWindowLines = 0;
+            }
+        }
+    }
+
+    /**
+     * Writes whatever is still queued and hands the buffer over to publishers, in one step under
+     * the lock so no record can slip in between. Also runs if the writer dies early.
+     */
+    private void finish() {
+        lock.lock();
+        try {
+            while (count > 0) {
+                int slot = head;
+                if (messages[slot] != null) {
+                    append(times[slot], levels[slot], messages[slot]);
+                    messages[slot] = null;
+                } else {
+                    append(times[slot], levels[slot], raw[slot], 0, rawLengths[slot]);
+                }
+                levels[slot] = null;
+                head = (head + 1) % times.length;
+                count--;
+            }
+            flush();
+            writerDone = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeLate(long time, Level level, String message) {
+        append(time, level, message);
+        flush();
+    }
+
+    private void append(long time, Level level, String message) {
+        byte[] text = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+        append(time, level, text, 0, text.length);
+    }
+
+    private void append(long time, Level level, byte[] text, int offset, int length) {
+        byte[] stamp = timestamps.format(time);
+        byte[] prefix = levelPrefixes.computeIfAbsent(level, l ->
+            (" " + l.getName() + ": ").getBytes(StandardCharsets.UTF_8)
+        );
+        // Keep flushes on record boundaries so the output can be rotated between lines
+        if (buffered + stamp.length + prefix.length + length + 1 > buffer.length) {
+            flush();
+        }
+        put(stamp, 0, stamp.length);
+        put(prefix, 0, prefix.length);
+        put(text, offset, length);
+        put(NEWLINE, 0, 1);
+        linesWritten.incrementAndGet();
+    }
+
+    private static final byte[] NEWLINE = { '\n' };
+
+    private void put(byte[] src, int offset, int length) {
+        while (length > 0) {
+            if (buffered == buffer.length) {
+                flush();
+            }
+            int chunk = Math.min(length, buffer.length - buffered);
+            System.arraycopy(src, offset, buffer, buffered, chunk);
+            buffered += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private void flush() {
+        if (buffered == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            out.write(buffer, 0, buffered);
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("[AnyJar] Failed to write log file: " + e.getMessage());
+        }
+        buffered = 0;
+        long elapsed = System.nanoTime() - start;
+        lastFlushNanos = elapsed;
+        if (elapsed > maxFlushNanos) {
+            maxFlushNanos = elapsed;
+        }
+        flushes.incrementAndGet();
+        flushNanosTotal.addAndGet(elapsed);
+    }
+
+    /**
+     * Formats "yyyy-MM-dd HH:mm:ss" once per second instead of once per record.
+     */
+    static class TimestampCache {
+
+        private static final DateTimeFormatter FORMAT = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+        private long cachedSecond = Long.MIN_VALUE;
+        private byte[] cached;
+
+        byte[] format(long millis) {
+            long second = Math.floorDiv(millis, 1000);
+            if (second != cachedSecond) {
+                cached = FORMAT.format(Instant.ofEpochMilli(millis)).getBytes(StandardCharsets.UTF_8);
+                cachedSecond = second;
+            }
+            return cached;
+        }
+    }
+}
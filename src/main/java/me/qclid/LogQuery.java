@@ -0,0 +1,355 @@
+package me.qclid;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The "logs" command: prints the lines of AnyJar's logs within a time range, optionally only those
+ * matching a pattern, across rotated and compressed segments. Segments outside the range are skipped
+ * by the time in their names, and within a segment the sparse {@link LogIndex} gives the offset to
+ * start at. Plain segments are read through memory maps; compressed ones are inflated starting at
+ * the gzip member the index points at.
+ */
+public final class LogQuery {
+
+    private static final DateTimeFormatter LINE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter NAME_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+    private static final Pattern RELATIVE = Pattern.compile("\\d+(\\.\\d+)?(ms|s|m|h|d)");
+    private static final long WINDOW = 256L * 1024 * 1024;
+
+    private final byte[] since;
+    private final byte[] until;
+    private final long sinceSecond;
+    private final Pattern grep;
+    private final OutputStream out;
+    private boolean inRange;
+    private boolean done;
+
+    private LogQuery(String since, String until, Pattern grep, OutputStream out) {
+        this.since = since == null ? null : since.getBytes(StandardCharsets.US_ASCII);
+        this.until = until == null ? null : until.getBytes(StandardCharsets.US_ASCII);
+        this.sinceSecond = since == null ? Long.MIN_VALUE : epochSecond(since);
+        this.grep = grep;
+        this.out = out;
+    }
+
+    /**
+     * Runs "logs [--since time] [--until time] [--grep regex] [--service name]".
+     * @param args The command line, starting with "logs"
+     * @return The exit code
+     */
+    public static int run(String[] args) {
+        String since = null;
+        String until = null;
+        String grep = null;
+        String service = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String option = args[i];
+                if (i + 1 >= args.length) {
+                    return usage("Missing value for " + option);
+                }
+                String value = args[++i];
+                switch (option) {
+                    case "--since":
+                        since = parseTime(value, false);
+                        break;
+                    case "--until":
+                        until = parseTime(value, true);
+                        break;
+                    case "--grep":
+                        grep = value;
+                        break;
+                    case "--service":
+                        service = value;
+                        break;
+                    default:
+                        return usage("Unknown option " + option);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return usage(e.getMessage());
+        }
+
+        Pattern pattern;
+        try {
+            pattern = grep == null ? null : Pattern.compile(grep);
+        } catch (PatternSyntaxException e) {
+            return usage("Invalid --grep pattern: " + e.getDescription());
+        }
+        File dir = service == null ? LogConfig.DIRECTORY : LogConfig.serviceDirectory(service);
+        String baseName = service == null ? LogConfig.BASE_NAME : service;
+        List<Segment> segments = listSegments(dir, baseName);
+        if (segments.isEmpty()) {
+            System.err.println("No logs found in " + dir);
+            return 1;
+        }
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024);
+        LogQuery query = new LogQuery(since, until, pattern, out);
+        long untilSecond = until == null ? Long.MAX_VALUE : epochSecond(until);
+        try {
+            for (int i = 0; i < segments.size() && !query.done; i++) {
+                Segment segment = segments.get(i);
+                // A segment only holds lines from before the next one was opened
+                boolean endsBefore = i + 1 < segments.size() && segments.get(i + 1).start < query.sinceSecond;
+                if (endsBefore || segment.start > untilSecond) {
+                    continue;
+                }
+                query.scan(segment.file);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // Most likely the reader went away, e.g. "| head"
+            return 0;
+        }
+        return 0;
+    }
+
+    private static int usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: java -jar AnyJar.jar logs [--since time] [--until time] [--grep regex] [--service name]");
+        System.err.println("A time is e.g. 14:02, 2024-05-01, \"2024-05-01 14:02:30\", or 30m, 2h or 1d ago.");
+        return 2;
+    }
+
+    /**
+     * Turns a time from the command line into the "yyyy-MM-dd HH:mm:ss" form log lines start with.
+     * @param value The time as typed
+     * @param end Whether it ends a range, so a minute or day means its last second
+     */
+    static String parseTime(String value, boolean end) {
+        String s = value.trim().replace('T', ' ');
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        if (RELATIVE.matcher(s).matches()) {
+            return LINE_TIME.format(now.minusNanos(Units.parseMillis(s) * 1_000_000));
+        }
+        if ("now".equals(s)) {
+            return LINE_TIME.format(now);
+        }
+        if (s.matches("\\d{1,2}:\\d{2}(:\\d{2})?")) {
+            s = LocalDate.now() + " " + (s.indexOf(':') == 1 ? "0" : "") + s;
+        }
+        if (s.matches("\\d{4}-\\d{2}-\\d{2}")) {
+            s += end ? " 23:59:59" : " 00:00:00";
+        } else if (s.matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}")) {
+            s += end ? ":59" : ":00";
+        }
+        try {
+            return LINE_TIME.format(LocalDateTime.parse(s, LINE_TIME));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time: " + value);
+        }
+    }
+
+    private static long epochSecond(String lineTime) {
+        return LocalDateTime.parse(lineTime, LINE_TIME).atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static class Segment {
+
+        final File file;
+        final String opened;
+        final int sequence;
+        final long start;
+
+        Segment(File file, String opened, int sequence, long start) {
+            this.file = file;
+            this.opened = opened;
+            this.sequence = sequence;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Lists the segments of a log, oldest first, by the time and sequence number in their names
+     * ("base-yyyy-MM-dd_HH-mm-ss[-n].txt[.gz]"), each with the time of its first line.
+     */
+    private static List<Segment> listSegments(File dir, String baseName) {
+        List<Segment> segments = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) ->
+            name.startsWith(baseName + "-") && (name.endsWith(".txt") || name.endsWith(".txt.gz"))
+        );
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            String rest = name.substring(baseName.length() + 1, name.indexOf(".txt"));
+            if (rest.length() < 19) {
+                continue;
+            }
+            try {
+                // The first indexed line if there is one, else when the segment was opened
+                String opened = rest.substring(0, 19);
+                long start = LogIndex.firstSecond(LogIndex.of(file));
+                if (start < 0) {
+                    start = LocalDateTime.parse(opened, NAME_TIME).atZone(ZoneId.systemDefault()).toEpochSecond();
+                }
+                int sequence = rest.length() > 20 ? Integer.parseInt(rest.substring(20)) : 0;
+                segments.add(new Segment(file, opened, sequence, start));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                // Not one of ours
+            }
+        }
+        segments.sort(Comparator.<Segment, String>comparing(s -> s.opened).thenComparingInt(s -> s.sequence));
+        return segments;
+    }
+
+    private void scan(File segment) throws IOException {
+        long offset = since == null ? 0 : LogIndex.seek(LogIndex.read(LogIndex.of(segment)), sinceSecond);
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (offset >= size) {
+                offset = 0;
+            }
+            InputStream in = new MappedInputStream(channel, offset, size);
+            if (segment.getName().endsWith(".gz")) {
+                in = new GZIPInputStream(in, 64 * 1024);
+            }
+            inRange = since == null;
+            scan(in);
+        }
+    }
+
+    private void scan(InputStream in) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int filled = 0;
+        while (!done) {
+            if (filled == buffer.length) {
+                // A line longer than the buffer
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                if (filled > 0) {
+                    line(buffer, 0, filled);
+                }
+                return;
+            }
+            filled += read;
+            int start = 0;
+            for (int i = filled - read; i < filled && !done; i++) {
+                if (buffer[i] == '\n') {
+                    line(buffer, start, i - start);
+                    start = i + 1;
+                }
+            }
+            System.arraycopy(buffer, start, buffer, 0, filled - start);
+            filled -= start;
+        }
+    }
+
+    private void line(byte[] b, int offset, int length) throws IOException {
+        if (isTimestamped(b, offset, length)) {
+            if (until != null && compare(b, offset, until) > 0) {
+                done = true;
+                return;
+            }
+            inRange = since == null || compare(b, offset, since) >= 0;
+        }
+        // Lines without a timestamp (stack traces) go with the line before them
+        if (!inRange) {
+            return;
+        }
+        if (grep != null && !grep.matcher(new String(b, offset, length, StandardCharsets.UTF_8)).find()) {
+            return;
+        }
+        out.write(b, offset, length);
+        out.write('\n');
+    }
+
+    private static boolean isTimestamped(byte[] b, int offset, int length) {
+        return (
+            length >= 19 &&
+            b[offset + 4] == '-' &&
+            b[offset + 7] == '-' &&
+            b[offset + 10] == ' ' &&
+            b[offset + 13] == ':' &&
+            b[offset + 16] == ':'
+        );
+    }
+
+    // The timestamp is fixed width, so comparing bytes compares times
+    private static int compare(byte[] b, int offset, byte[] time) {
+        for (int i = 0; i < time.length; i++) {
+            int diff = b[offset + i] - time[i];
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reads part of a file through memory maps of up to {@value #WINDOW} bytes at a time.
+     */
+    private static class MappedInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+        private MappedByteBuffer map;
+
+        MappedInputStream(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.position = from;
+            this.end = to;
+        }
+
+        private boolean ensure() throws IOException {
+            if (map != null && map.hasRemaining()) {
+                return true;
+            }
+            if (position >= end) {
+                return false;
+            }
+            long length = Math.min(WINDOW, end - position);
+            map = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return ensure() ? map.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!ensure()) {
+                return -1;
+            }
+            int count = Math.min(len, map.remaining());
+            map.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            long left = (map == null ? 0 : map.remaining()) + (end - position);
+            return (int) Math.min(Integer.MAX_VALUE, left);
+        }
+    }
+}
@@ -1,38 +1,59 @@
 package me.qclid;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
-import java.util.function.Consumer;
-import java.util.logging.FileHandler;
-import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
-import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 public class Main {
 
+    static {
+        // Must be set before the first logger is created
+        System.setProperty("java.util.logging.manager", AnyJarLogManager.class.getName());
+    }
+
     private static final Logger logger = Logger.getLogger(Main.class.getName());
+    private static LogPipeline logPipeline;
+    private static RollingLogFile logFile;
+    private static final Metrics metrics = new Metrics();
+    private static final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AnyJar-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
 
     public static void main(String[] args) {
+        StartupTimer.start();
+        if (args.length > 0 && "attach".equals(args[0])) {
+            System.exit(attach(args));
+        }
+        if (args.length > 0 && "logs".equals(args[0])) {
+            System.exit(LogQuery.run(args));
+        }
+
         setupLogger();
         logger.info("AnyJar started.");
+        StartupTimer.mark("logging");
 
         File configFile = new File("server.yml");
         if (!configFile.exists()) {
@@ -64,86 +85,322 @@ public class Main {
 
         try {
             logger.info("Loading config from server.yml.");
-            ServerConfig config = ConfigManager.loadConfig(configFile);
+            ServerConfig config = ConfigSnapshot.read(configFile);
+            boolean fromSnapshot = config != null;
+            if (fromSnapshot) {
+                logger.info("server.yml is unchanged, using its snapshot.");
+                StartupTimer.mark("config (snapshot)");
+            } else {
+                config = ConfigManager.loadConfig(configFile);
+                StartupTimer.mark("config (server.yml)");
+            }
+            StartupTimer.setEnabled(config.isStartupTiming());
 
             // Validate configuration
-            if (!validateConfiguration(config)) {
+            List<ServiceConfig> serviceConfigs = config.getServices();
+            boolean multi = !serviceConfigs.isEmpty();
+            if (
+                !(multi
+                        ? validateServices(config)
+                        : validateConfiguration(config))
+            ) {
                 System.out.println("\nPress Enter to exit...");
                 new Scanner(System.in).nextLine();
                 return;
             }
+            if (logFile != null) {
+                logFile.applyPolicy(config.getLogging());
+            }
 
-            // Build the command based on configuration
-            List<String> command = buildCommand(config);
-            ProcessBuilder processBuilder = new ProcessBuilder(command);
-
-            logger.info(
-                "Starting server with command: " +
-                    Arrays.toString(processBuilder.command().toArray())
-            );
+            // Console filters and routing rules
+            OutputFilter filter = null;
+            if (!config.getFilters().isEmpty()) {
+                try {
+                    filter = new OutputFilter(
+                        config.getFilters(),
+                        config.getLogging()
+                    );
+                } catch (IllegalArgumentException e) {
+                    logger.severe("Invalid output filter: " + e.getMessage());
+                    System.out.println(
+                        "Error: There's a problem with the filters in your server.yml: " +
+                            e.getMessage()
+                    );
+                    System.out.println("\nPress Enter to exit...");
+                    new Scanner(System.in).nextLine();
+                    return;
+                }
+                metrics.register(filter);
+                scheduler.scheduleAtFixedRate(
+                    filter::flushSummaries,
+                    1,
+                    1,
+                    TimeUnit.SECONDS
+                );
+            }
+            CommandScheduler commandScheduler;
+            try {
+                commandScheduler = new CommandScheduler(
+                    config.getCommands().getSchedule()
+                );
+            } catch (IllegalArgumentException e) {
+                logger.severe("Invalid command schedule: " + e.getMessage());
+                System.out.println(
+                    "Error: There's a problem with the schedule in your server.yml: " +
+                        e.getMessage()
+                );
+                System.out.println("\nPress Enter to exit...");
+                new Scanner(System.in).nextLine();
+                return;
+            }
+            if (!config.isConfigSnapshot()) {
+                ConfigSnapshot.delete();
+            } else if (!fromSnapshot) {
+                // Serialized before any service can touch the configuration; only the write is left to the scheduler
+                byte[] snapshot = ConfigSnapshot.serialize(configFile, config);
+                if (snapshot != null) {
+                    scheduler.execute(() -> ConfigSnapshot.write(snapshot));
+                }
+            }
+            StartupTimer.mark("validation");
 
-            processBuilder.directory(new File("."));
-            Process process = processBuilder.start();
+            // The services, each with its own command, restarts and shutdown
+            boolean sampled = config.getMetrics().isEnabled();
+            List<Service> services = new ArrayList<>();
+            if (multi) {
+                // Services sized by the auto JVM profile split the memory, rather than each taking all of it
+                int autoSized = 0;
+                for (ServiceConfig serviceConfig : serviceConfigs) {
+                    if (Service.isAutoSized(config.forService(serviceConfig))) {
+                        autoSized++;
+                    }
+                }
+                for (ServiceConfig serviceConfig : serviceConfigs) {
+                    services.add(
+                        new Service(
+                            serviceConfig.getName(),
+                            config.forService(serviceConfig),
+                            new File(serviceConfig.getDirectory()),
+                            sampled,
+                            autoSized
+                        )
+                    );
+                }
+            } else {
+                services.add(new Service(null, config, new File("."), sampled, 1));
+            }
+            StartupTimer.mark("services");
 
-            // Only add shutdown hook for Java processes (likely Minecraft servers)
-            if (config.isUseOptions() && config.getServerJar().toLowerCase().endsWith(".jar")) {
-                Runtime.getRuntime().addShutdownHook(
-                    new Thread(() -> {
-                        logger.info(
-                            "AnyJar is shutting down, sending 'stop' command to server."
-                        );
-                        try (
-                            PrintWriter writer = new PrintWriter(
-                                process.getOutputStream()
-                            )
-                        ) {
-                            writer.println("stop");
-                        }
-                    })
+            // Commands from this console, attached clients and the schedule, all through one queue
+            CommandRouter router = new CommandRouter();
+            for (Service service : services) {
+                router.add(
+                    multi ? service.getName() : "server",
+                    service.getStdin()
                 );
-            } else {
-                Runtime.getRuntime().addShutdownHook(
-                    new Thread(() -> {
-                        logger.info("AnyJar is shutting down.");
-                        // For non-Java processes, we'll just let them handle their own shutdown
-                    })
+            }
+            CommandQueue commandQueue = new CommandQueue(
+                config.getCommands(),
+                router
+            );
+            metrics.register(commandQueue);
+            ConsoleServer consoleServer = null;
+            if (config.getConsole().isSocket()) {
+                consoleServer = new ConsoleServer(
+                    config.getConsole(),
+                    commandQueue,
+                    Charset.defaultCharset()
                 );
+                try {
+                    consoleServer.start();
+                    metrics.register(consoleServer);
+                } catch (IOException | UnsupportedOperationException e) {
+                    logger.warning(
+                        "Could not open the console socket " +
+                            config.getConsole().getSocketPath() +
+                            ": " +
+                            e.getMessage()
+                    );
+                    consoleServer = null;
+                }
             }
 
-            StreamGobbler outputGobbler = new StreamGobbler(
-                process.getInputStream(),
-                logger::info,
-                line -> System.out.println("[AnyJar] " + line)
+            // Metrics endpoint, child process samplers, GC log tailers and flight recorder triggers
+            metrics.register(logPipeline);
+            long sampleInterval = Units.parseMillis(
+                config.getMetrics().getSampleInterval()
             );
-            StreamGobbler errorGobbler = new StreamGobbler(
-                process.getErrorStream(),
-                logger::severe,
-                line -> System.err.println("[AnyJar] " + line)
+            long gcLogInterval = Math.max(
+                100,
+                Units.parseMillis(config.getGcLog().getPollInterval())
             );
+            for (Service service : services) {
+                metrics.register(
+                    multi
+                        ? Metrics.labelled(service, "service", service.getName())
+                        : service
+                );
+                if (service.getSampler() != null) {
+                    scheduler.scheduleAtFixedRate(
+                        service.getSampler(),
+                        sampleInterval,
+                        sampleInterval,
+                        TimeUnit.MILLISECONDS
+                    );
+                }
+                if (service.getJfr() != null) {
+                    scheduler.scheduleWithFixedDelay(
+                        service.getJfr(),
+                        sampleInterval,
+                        sampleInterval,
+                        TimeUnit.MILLISECONDS
+                    );
+                }
+                if (service.getMemory() != null) {
+                    scheduler.scheduleWithFixedDelay(
+                        service.getMemory(),
+                        sampleInterval,
+                        sampleInterval,
+                        TimeUnit.MILLISECONDS
+                    );
+                }
+                if (service.getGcLog() != null) {
+                    scheduler.scheduleWithFixedDelay(
+                        service.getGcLog(),
+                        gcLogInterval,
+                        gcLogInterval,
+                        TimeUnit.MILLISECONDS
+                    );
+                }
+            }
+            MetricsExporter exporter = null;
+            if (config.getMetrics().isEnabled()) {
+                exporter = new MetricsExporter(metrics);
+                exporter.start(config.getMetrics(), scheduler);
+            }
+
+            // Stop every process tree, within the configured deadlines, when AnyJar exits
+            Runtime.getRuntime().addShutdownHook(
+                new Thread(() -> {
+                    logger.info("AnyJar is shutting down.");
+                    List<Thread> stopping = new ArrayList<>();
+                    for (Service service : services) {
+                        Thread thread = new Thread(service::stop, "AnyJar-stop");
+                        thread.start();
+                        stopping.add(thread);
+                    }
+                    for (Thread thread : stopping) {
+                        try {
+                            thread.join();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                })
+            );
+
+            // Consoles are written on their own thread, so a slow console can't stall the child
+            ConsoleSink consoleSink = new ConsoleSink(config.getConsole());
+            metrics.register(consoleSink);
+            StreamGobbler.LineListener outputConsole = consoleSink.target(
+                config.isConsolePassthrough()
+                    ? PassthroughConsole.stdout()
+                    : decodingConsole(System.out)
+            );
+            StreamGobbler.LineListener errorConsole = consoleSink.target(
+                config.isConsolePassthrough()
+                    ? PassthroughConsole.stderr()
+                    : decodingConsole(System.err)
+            );
+
+            // Listeners shared by every run of each service. With several services, each one
+            // gets its own log folder and a "[name] " prefix on the console.
+            List<LogPipeline> serviceLogs = new ArrayList<>();
+            for (Service service : services) {
+                LogPipeline log = multi
+                    ? serviceLog(service.getName(), config.getLogging())
+                    : logPipeline;
+                if (log != logPipeline) {
+                    serviceLogs.add(log);
+                    metrics.register(log);
+                }
+                StreamGobbler.LineListener out = multi
+                    ? Service.prefixed(service.getName(), outputConsole)
+                    : outputConsole;
+                StreamGobbler.LineListener err = multi
+                    ? Service.prefixed(service.getName(), errorConsole)
+                    : errorConsole;
+
+                List<StreamGobbler.LineListener> outputListeners = new ArrayList<>();
+                outputListeners.add(log.listener(Level.INFO));
+                outputListeners.add(
+                    filter != null ? filter.wrap(Level.INFO, out) : out
+                );
+                List<StreamGobbler.LineListener> errorListeners = new ArrayList<>();
+                errorListeners.add(log.listener(Level.SEVERE));
+                errorListeners.add(
+                    filter != null ? filter.wrap(Level.SEVERE, err) : err
+                );
+                if (consoleServer != null) {
+                    StreamGobbler.LineListener socket = multi
+                        ? Service.prefixed(service.getName(), consoleServer)
+                        : consoleServer;
+                    outputListeners.add(socket);
+                    errorListeners.add(socket);
+                }
+                StreamGobbler.LineListener watcher = commandScheduler.watcher(
+                    multi ? service.getName() : null,
+                    service == services.get(0)
+                );
+                if (watcher != null) {
+                    outputListeners.add(watcher);
+                }
+                service.listen(outputListeners, errorListeners);
+            }
+            commandScheduler.start(commandQueue);
 
-            ExecutorService executorService = Executors.newFixedThreadPool(3);
-            executorService.submit(outputGobbler);
-            executorService.submit(errorGobbler);
+            ExecutorService executorService = ioExecutor();
+            boolean keepStdinOpen =
+                consoleServer != null || !commandScheduler.isEmpty();
             executorService.submit(() -> {
-                try (
-                    Scanner scanner = new Scanner(System.in);
-                    PrintWriter writer = new PrintWriter(
-                        process.getOutputStream()
-                    )
-                ) {
+                try (Scanner scanner = new Scanner(System.in)) {
                     while (scanner.hasNextLine()) {
-                        String line = scanner.nextLine();
-                        writer.println(line);
-                        writer.flush();
+                        commandQueue.submit(scanner.nextLine(), "console");
                     }
                 }
+                // Attached clients and the schedule may still have commands to send
+                if (!keepStdinOpen) {
+                    commandQueue.close(10_000);
+                }
             });
 
-            logger.info("Server process started successfully.");
-
+            StartupTimer.mark("setup");
             try {
-                int exitCode = process.waitFor();
-                logger.info("Server process exited with code: " + exitCode);
+                List<Future<?>> running = new ArrayList<>();
+                for (Service service : services) {
+                    running.add(
+                        executorService.submit(() -> {
+                            service.run(executorService);
+                            return null;
+                        })
+                    );
+                }
+                for (int i = 0; i < running.size(); i++) {
+                    try {
+                        running.get(i).get();
+                    } catch (ExecutionException e) {
+                        logger.log(
+                            Level.SEVERE,
+                            "An error occurred while starting the " +
+                                (multi
+                                    ? "service '" + services.get(i).getName() + "'"
+                                    : "server") +
+                                ": " +
+                                e.getCause().getMessage(),
+                            e.getCause()
+                        );
+                    }
+                }
             } catch (InterruptedException e) {
                 logger.log(
                     Level.SEVERE,
@@ -151,16 +408,29 @@ public class Main {
                     e
                 );
             } finally {
-                executorService.shutdown();
-                try {
-                    if (
-                        !executorService.awaitTermination(5, TimeUnit.SECONDS)
-                    ) {
-                        executorService.shutdownNow();
-                    }
-                } catch (InterruptedException e) {
-                    executorService.shutdownNow();
+                if (exporter != null) {
+                    exporter.stop();
+                }
+                if (filter != null) {
+                    filter.close();
+                }
+                if (consoleServer != null) {
+                    consoleServer.close();
                 }
+                consoleSink.close();
+                if (consoleSink.getDroppedLines() > 0) {
+                    logger.info(
+                        "The console skipped " +
+                            consoleSink.getDroppedLines() +
+                            " lines to keep up with the server; the longest an output reader waited was " +
+                            consoleSink.getMaxStallNanos() / 1000 +
+                            " us."
+                    );
+                }
+                for (LogPipeline log : serviceLogs) {
+                    log.close();
+                }
+                executorService.shutdownNow();
             }
         } catch (IOException e) {
             logger.log(
@@ -171,103 +441,77 @@ public class Main {
             );
         }
         logger.info("AnyJar finished.");
+        logPipeline.close();
     }
 
     /**
-     * Parses a command string into a list of arguments, handling quoted strings properly.
-     * @param command The command string to parse
-     * @return List of command arguments
+     * Runs the "attach" subcommand against the socket given on the command line,
+     * or the one configured in server.yml.
+     * @param args The command line, starting with "attach"
+     * @return The exit code
      */
-    private static List<String> parseCommand(String command) {
-        List<String> args = new ArrayList<>();
-        StringBuilder currentArg = new StringBuilder();
-        boolean inQuotes = false;
-        char quoteChar = '"';
-        
-        for (int i = 0; i < command.length(); i++) {
-            char c = command.charAt(i);
-            
-            if ((c == '"' || c == '\'') && (i == 0 || command.charAt(i-1) != '\\')) {
-                if (!inQuotes) {
-                    // Start of quoted string
-                    inQuotes = true;
-                    quoteChar = c;
-                } else if (c == quoteChar) {
-                    // End of quoted string
-                    inQuotes = false;
-                } else {
-                    // Different quote inside quoted string
-                    currentArg.append(c);
-                }
-            } else if (c == ' ' && !inQuotes) {
-                // End of argument
-                if (currentArg.length() > 0) {
-                    args.add(currentArg.toString());
-                    currentArg = new StringBuilder();
+    private static int attach(String[] args) {
+        String socketPath = new ConsoleConfig().getSocketPath();
+        if (args.length > 1) {
+            socketPath = args[1];
+        } else {
+            File configFile = new File("server.yml");
+            if (configFile.exists()) {
+                // Keep the config loader's log line off the attached terminal
+                LogManager.getLogManager().reset();
+                try {
+                    socketPath = ConfigManager.loadConfig(configFile)
+                        .getConsole()
+                        .getSocketPath();
+                } catch (IOException | RuntimeException e) {
+                    System.err.println(
+                        "Could not read server.yml, trying " +
+                            socketPath +
+                            ": " +
+                            e.getMessage()
+                    );
                 }
-            } else {
-                currentArg.append(c);
             }
         }
-        
-        // Add the last argument
-        if (currentArg.length() > 0) {
-            args.add(currentArg.toString());
-        }
-        
-        return args;
+        return ConsoleClient.attach(Path.of(socketPath));
     }
 
     /**
-     * Determines the appropriate command to run based on file type and configuration.
+     * Validates the list of services: unique names, and a valid target for each.
      * @param config The server configuration
-     * @return List of command arguments
+     * @return true if every service is valid, false otherwise
      */
-    private static List<String> buildCommand(ServerConfig config) {
-        List<String> command = new ArrayList<>();
-        
-        if (config.isUseOptions()) {
-            // Use the configured options
-            File targetFile = new File(config.getServerJar());
-            String fileName = targetFile.getName().toLowerCase();
-            
-            if (fileName.endsWith(".jar")) {
-                // Java JAR file
-                command.add("java");
-                command.add("-Xmx" + config.getRamMax());
-                command.add("-Xms" + config.getRamMin());
-                command.add("-jar");
-                command.add(config.getServerJar());
-                command.add("nogui");
-            } else if (fileName.endsWith(".sh")) {
-                // Shell script
-                if (System.getProperty("os.name").toLowerCase().contains("win")) {
-                    // Windows - use bash if available, otherwise try to run directly
-                    command.add("bash");
-                    command.add(config.getServerJar());
-                } else {
-                    // Unix-like system
-                    command.add("bash");
-                    command.add(config.getServerJar());
-                }
-            } else if (fileName.endsWith(".bat") || fileName.endsWith(".cmd")) {
-                // Windows batch file
-                command.add("cmd");
-                command.add("/c");
-                command.add(config.getServerJar());
-            } else if (fileName.endsWith(".exe")) {
-                // Windows executable
-                command.add(config.getServerJar());
-            } else {
-                // Unknown file type - try to run directly
-                command.add(config.getServerJar());
+    private static boolean validateServices(ServerConfig config) {
+        Set<String> names = new HashSet<>();
+        for (ServiceConfig service : config.getServices()) {
+            String name = service.getName();
+            if (name == null || !name.matches("[A-Za-z0-9._-]+") || "all".equals(name)) {
+                logger.severe("Invalid service name: " + name);
+                System.out.println(
+                    "Error: Every service needs a name made of letters, digits, '.', '_' or '-' (and not 'all'), found: " +
+                        name
+                );
+                return false;
+            }
+            if (!names.add(name)) {
+                logger.severe("Duplicate service name: " + name);
+                System.out.println("Error: There are two services called '" + name + "'. Names must be unique.");
+                return false;
+            }
+            ServerConfig serviceConfig = config.forService(service);
+            if (serviceConfig.isUseOptions() && serviceConfig.getServerJar() == null) {
+                logger.severe("Service '" + name + "' has no server-jar");
+                System.out.println(
+                    "Error: Service '" + name + "' needs a server-jar or a manual-startup-command."
+                );
+                return false;
+            }
+            if (!validateConfiguration(serviceConfig)) {
+                System.out.println("(That's for the service '" + name + "'.)");
+                return false;
             }
-        } else {
-            // Use manual startup command
-            command = parseCommand(config.getManualStartupCommand());
         }
-        
-        return command;
+        return true;
     }
 
     /**
@@ -276,6 +520,9 @@ public class Main {
      * @return true if configuration is valid, false otherwise
      */
     private static boolean validateConfiguration(ServerConfig config) {
+        if (!validateUnits(config)) {
+            return false;
+        }
         if (config.isUseOptions()) {
             // Validate that the target file exists
             File targetFile = new File(config.getServerJar());
@@ -307,74 +554,181 @@ public class Main {
         return true;
     }
 
-    private static void setupLogger() {
-        LogManager.getLogManager().reset();
-        logger.setLevel(Level.ALL);
+    /**
+     * Checks every size and duration in the configuration up front. They are otherwise only parsed
+     * as the log and the services start, where a typo would end AnyJar with a stack trace.
+     * @param config The server configuration
+     * @return true if they all parse, false otherwise
+     */
+    private static boolean validateUnits(ServerConfig config) {
+        Map<String, String> sizes = new LinkedHashMap<>();
+        sizes.put("logging.max-file-size", config.getLogging().getMaxFileSize());
+        sizes.put("logging.max-total-size", config.getLogging().getMaxTotalSize());
+        sizes.put("logging.index-interval", config.getLogging().getIndexInterval());
+        sizes.put("metrics.file-max-size", config.getMetrics().getFileMaxSize());
+        sizes.put("console.scrollback", config.getConsole().getScrollback());
+        sizes.put("console.client-buffer", config.getConsole().getClientBuffer());
+        sizes.put("prewarm.max-bytes", config.getPrewarm().getMaxBytes());
+        sizes.put("gc-log.file-size", config.getGcLog().getFileSize());
+        sizes.put("jfr.max-bytes", config.getJfr().getMaxBytes());
+        sizes.put("memory.max-dump-bytes", config.getMemory().getMaxDumpBytes());
+        // Optional ones
+        String growth = config.getJfr().getRssGrowth();
+        if (growth != null && !growth.trim().isEmpty()) {
+            sizes.put("jfr.rss-growth", growth);
+        }
+        String memoryHigh = config.getPlacement().getMemoryHigh();
+        if (memoryHigh != null && !memoryHigh.trim().isEmpty() && !"max".equals(memoryHigh)) {
+            sizes.put("placement.memory-high", memoryHigh);
+        }
+
+        Map<String, String> durations = new LinkedHashMap<>();
+        durations.put("metrics.sample-interval", config.getMetrics().getSampleInterval());
+        durations.put("metrics.file-interval", config.getMetrics().getFileInterval());
+        durations.put("restart.initial-backoff", config.getRestart().getInitialBackoff());
+        durations.put("restart.max-backoff", config.getRestart().getMaxBackoff());
+        durations.put("restart.stable-after", config.getRestart().getStableAfter());
+        durations.put("restart.crash-loop-window", config.getRestart().getCrashLoopWindow());
+        durations.put("shutdown.stop-timeout", config.getShutdown().getStopTimeout());
+        durations.put("shutdown.term-timeout", config.getShutdown().getTermTimeout());
+        durations.put("prewarm.timeout", config.getPrewarm().getTimeout());
+        durations.put("gc-log.pause-warning", config.getGcLog().getPauseWarning());
+        durations.put("gc-log.window", config.getGcLog().getWindow());
+        durations.put("gc-log.poll-interval", config.getGcLog().getPollInterval());
+        durations.put("jfr.max-age", config.getJfr().getMaxAge());
+        durations.put("jfr.record-for", config.getJfr().getRecordFor());
+        durations.put("jfr.lag-window", config.getJfr().getLagWindow());
+        durations.put("jfr.cpu-duration", config.getJfr().getCpuDuration());
+        durations.put("jfr.rss-window", config.getJfr().getRssWindow());
+        durations.put("jfr.cooldown", config.getJfr().getCooldown());
+
+        String problem = null;
+        for (Map.Entry<String, String> size : sizes.entrySet()) {
+            problem = problem != null ? problem : unitProblem(size.getKey(), size.getValue(), true);
+        }
+        for (Map.Entry<String, String> duration : durations.entrySet()) {
+            problem = problem != null ? problem : unitProblem(duration.getKey(), duration.getValue(), false);
+        }
+        String cpuMax = config.getPlacement().getCpuMax();
+        if (problem == null && cpuMax != null && !cpuMax.trim().isEmpty() && !"max".equals(cpuMax)) {
+            try {
+                Double.parseDouble(cpuMax);
+            } catch (NumberFormatException e) {
+                problem = "placement.cpu-max should be a number of cores or 'max', found '" + cpuMax + "'";
+            }
+        }
+        if (problem != null) {
+            logger.severe("Invalid setting: " + problem);
+            System.out.println("Error: There's a problem with a setting in your server.yml: " + problem + ".");
+            return false;
+        }
+        return true;
+    }
 
+    // null if the value parses, else what is wrong with it
+    private static String unitProblem(String key, String value, boolean size) {
+        if (value == null) {
+            return key + " needs a value";
+        }
         try {
-            File logDir = new File("Anyjar/logs");
-            if (!logDir.exists()) {
-                logDir.mkdirs();
+            if (size) {
+                Units.parseBytes(value);
+            } else {
+                Units.parseMillis(value);
             }
+            return null;
+        } catch (IllegalArgumentException e) {
+            return key + " should be " + (size ? "a size like 512M or 2G" : "a duration like 30s or 5m") + ", found '" + value + "'";
+        }
+    }
 
-            SimpleDateFormat dateFormat = new SimpleDateFormat(
-                "yyyy-MM-dd_HH-mm-ss"
-            );
-            String logFileName =
-                "Anyjar-log-" + dateFormat.format(new Date()) + ".txt";
-            FileHandler fileHandler = new FileHandler(
-                logDir.getPath() + "/" + logFileName,
-                true
-            );
+    /**
+     * Creates the legacy console listener that decodes each line and prints it through a PrintStream.
+     * @param out The stream to print to
+     * @return A line listener for the stream gobbler
+     */
+    private static StreamGobbler.LineListener decodingConsole(PrintStream out) {
+        return (line, offset, length) ->
+            out.println("[AnyJar] " + new String(line, offset, length, Charset.defaultCharset()));
+    }
 
-            fileHandler.setFormatter(
-                new Formatter() {
-                    @Override
-                    public String format(LogRecord record) {
-                        return (
-                            new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(
-                                new Date(record.getMillis())
-                            ) +
-                            " " +
-                            record.getLevel() +
-                            ": " +
-                            record.getMessage() +
-                            "\n"
-                        );
-                    }
-                }
-            );
+    /**
+     * Creates the executor for blocking stream reads and process waits. On Java 21+ every task
+     * gets its own virtual thread, so each extra service costs a few kilobytes instead of a few
+     * platform threads; older runtimes fall back to a cached pool of platform threads.
+     * @return The executor
+     */
+    private static ExecutorService ioExecutor() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType
+                .getMethod("name", String.class, long.class)
+                .invoke(builder, "AnyJar-io-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType
+                .getMethod("factory")
+                .invoke(builder);
+            return (ExecutorService) Executors.class
+                .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "AnyJar-io");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
 
-            logger.addHandler(fileHandler);
+    /**
+     * Opens the log of one service in Anyjar/logs/services/name.
+     * @param name The service name
+     * @param logging The logging section of the configuration
+     * @return The service's log pipeline, or the main one if the folder can't be used
+     */
+    private static LogPipeline serviceLog(String name, LogConfig logging) {
+        try {
+            RollingLogFile file = new RollingLogFile(
+                LogConfig.serviceDirectory(name),
+                name
+            );
+            file.applyPolicy(logging);
+            return new LogPipeline(name, file);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.warning(
+                "Could not open the log of service '" +
+                    name +
+                    "', using the main log: " +
+                    e.getMessage()
+            );
+            return logPipeline;
         }
     }
 
-    private static class StreamGobbler implements Runnable {
+    private static void setupLogger() {
+        LogManager.getLogManager().reset();
+        logger.setLevel(Level.ALL);
 
-        private InputStream inputStream;
-        private Consumer<String> logConsumer;
-        private Consumer<String> consoleConsumer;
+        try {
+            File logDir = LogConfig.DIRECTORY;
+            if (!logDir.exists()) {
+                logDir.mkdirs();
+            }
 
-        public StreamGobbler(
-            InputStream inputStream,
-            Consumer<String> logConsumer,
-            Consumer<String> consoleConsumer
-        ) {
-            this.inputStream = inputStream;
-            this.logConsumer = logConsumer;
-            this.consoleConsumer = consoleConsumer;
+            logFile = new RollingLogFile(logDir, LogConfig.BASE_NAME);
+            logPipeline = new LogPipeline("log", logFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            logPipeline = new LogPipeline("log", OutputStream.nullOutputStream());
         }
 
-        @Override
-        public void run() {
-            new BufferedReader(new InputStreamReader(inputStream))
-                .lines()
-                .forEach(line -> {
-                    logConsumer.accept(line);
-                    consoleConsumer.accept(line);
-                });
-        }
+        // Attach to the root logger so every AnyJar class ends up in the file
+        Logger.getLogger("").addHandler(logPipeline.handler());
+        AnyJarLogManager.keepHandlers();
+
+        // Drain whatever is still queued if AnyJar is killed
+        Runtime.getRuntime().addShutdownHook(
+            new Thread(() -> logPipeline.close())
+        );
     }
 }
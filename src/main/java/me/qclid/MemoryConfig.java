@@ -0,0 +1,111 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * The "memory" section of server.yml: the memory watchdog, heap dumps on OutOfMemoryError and
+ * heap resizing after an out-of-memory restart.
+ */
+public class MemoryConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private boolean enabled = false;
+    private int rssWarning = 90;
+    private boolean heapDumps = true;
+    private String dumpDirectory = "Anyjar/dumps";
+    private int maxDumps = 2;
+    private String maxDumpBytes = "8G";
+    private boolean exitOnOom = true;
+    private boolean adjustHeap = false;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getRssWarning() {
+        return rssWarning;
+    }
+
+    public void setRssWarning(int rssWarning) {
+        this.rssWarning = rssWarning;
+    }
+
+    public boolean isHeapDumps() {
+        return heapDumps;
+    }
+
+    public void setHeapDumps(boolean heapDumps) {
+        this.heapDumps = heapDumps;
+    }
+
+    public String getDumpDirectory() {
+        return dumpDirectory;
+    }
+
+    public void setDumpDirectory(String dumpDirectory) {
+        this.dumpDirectory = dumpDirectory;
+    }
+
+    public int getMaxDumps() {
+        return maxDumps;
+    }
+
+    public void setMaxDumps(int maxDumps) {
+        this.maxDumps = maxDumps;
+    }
+
+    public String getMaxDumpBytes() {
+        return maxDumpBytes;
+    }
+
+    public void setMaxDumpBytes(String maxDumpBytes) {
+        this.maxDumpBytes = maxDumpBytes;
+    }
+
+    public boolean isExitOnOom() {
+        return exitOnOom;
+    }
+
+    public void setExitOnOom(boolean exitOnOom) {
+        this.exitOnOom = exitOnOom;
+    }
+
+    public boolean isAdjustHeap() {
+        return adjustHeap;
+    }
+
+    public void setAdjustHeap(boolean adjustHeap) {
+        this.adjustHeap = adjustHeap;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "MemoryConfig{" +
+            "enabled=" +
+            enabled +
+            ", rssWarning=" +
+            rssWarning +
+            ", heapDumps=" +
+            heapDumps +
+            ", dumpDirectory='" +
+            dumpDirectory +
+            '\'' +
+            ", maxDumps=" +
+            maxDumps +
+            ", maxDumpBytes='" +
+            maxDumpBytes +
+            '\'' +
+            ", exitOnOom=" +
+            exitOnOom +
+            ", adjustHeap=" +
+            adjustHeap +
+            '}'
+        );
+    }
+}
@@ -0,0 +1,492 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps an eye on the server's memory: resident memory of the process tree against the memory limit,
+ * and, when the server dies, whether it ran out of memory inside the JVM (the JVM's "Terminating due to"
+ * line, or an uncaught OutOfMemoryError on stderr) or was killed by the kernel's OOM killer (exit code 137
+ * with an "oom_kill" recorded by its cgroup), instead of just logging an exit code. For .jar servers it adds
+ * -XX:+HeapDumpOnOutOfMemoryError, with each service's dumps named after it in the dump directory and kept
+ * within max-dumps and max-dump-bytes per service, and -XX:+ExitOnOutOfMemoryError, so a
+ * JVM that ran out of heap exits and gets restarted instead of limping on. With adjust-heap, the heap
+ * of the next launch is grown after a heap OutOfMemoryError when the run left memory unused, and shrunk
+ * after an OOM kill, since then the process as a whole did not fit.
+ */
+public class MemoryWatchdog implements Runnable, StreamGobbler.LineListener, Metrics.Collector {
+
+    private static final Logger logger = Logger.getLogger(MemoryWatchdog.class.getName());
+    private static final Path CGROUP_ROOT = Paths.get("/sys/fs/cgroup");
+    private static final byte[] OOM = "java.lang.OutOfMemoryError".getBytes(StandardCharsets.US_ASCII);
+    // Printed by the JVM itself with ExitOnOutOfMemoryError, and by the default handler for an uncaught error
+    private static final byte[] TERMINATING = "Terminating due to java.lang.OutOfMemoryError".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] UNCAUGHT = "Exception in thread ".getBytes(StandardCharsets.US_ASCII);
+    private static final long MB = 1024L * 1024;
+    private static final long STEP = 16 * MB;
+    private static final int SIGKILL_EXIT = 128 + 9;
+
+    private final MemoryConfig config;
+    private final String prefix;
+    private final String label;
+    private final ProcessSampler sampler;
+    private final boolean java;
+    private final ContainerLimits limits;
+    private final Path directory;
+    private final Path pendingDump;
+    private final Pattern keptDump;
+    private final long maxDumpBytes;
+
+    private final AtomicLong jvmOoms = new AtomicLong();
+    private final AtomicLong kernelOoms = new AtomicLong();
+    private final AtomicLong dumps = new AtomicLong();
+
+    // Set by the launch loop, read by the scheduler and the metrics
+    private volatile Path oomEvents;
+    private volatile long limit;
+    private volatile long peakRss;
+    private volatile long heap = -1;
+    private volatile String oomMessage;
+    private long configuredHeap = -1;
+    private long launchOomKills;
+    private long seenOomKills;
+    private long pendingOomKills;
+    private boolean rssWarned;
+    private boolean dumpWarned;
+
+    /**
+     * @param config The memory section of the configuration
+     * @param name The service name, or null for the only server
+     * @param label What to call the process in log messages, e.g. "server"
+     * @param sampler The sampler of the server's process tree
+     * @param java Whether the server is a .jar started by AnyJar, so JVM flags can be added
+     */
+    public MemoryWatchdog(MemoryConfig config, String name, String label, ProcessSampler sampler, boolean java) {
+        this.config = config;
+        this.prefix = name == null ? "server" : name;
+        this.label = label;
+        this.sampler = sampler;
+        this.java = java;
+        this.limits = ContainerLimits.detect();
+        this.limit = limits.getEffectiveMemory();
+        this.directory = new File(config.getDumpDirectory()).toPath().toAbsolutePath().normalize();
+        // The JVM writes to this exact file, so services sharing the directory never see each other's dumps
+        this.pendingDump = directory.resolve(prefix + "-pending.hprof");
+        this.keptDump = Pattern.compile(Pattern.quote(prefix) + "-\\d{4}-\\d{2}-\\d{2}_\\d{2}-\\d{2}-\\d{2}\\.hprof");
+        this.maxDumpBytes = Units.parseBytes(config.getMaxDumpBytes());
+        if (java && config.isHeapDumps()) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                logger.warning("Could not create the heap dump directory " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Adds the out-of-memory flags to the JVM flags of the next launch and applies any heap adjustment.
+     * Flags already set through jvm.flags in server.yml are left alone.
+     * @param flags The resolved JVM flags
+     * @return The flags to launch with
+     */
+    public synchronized List<String> jvmFlags(List<String> flags) {
+        if (!java) {
+            return flags;
+        }
+        if (configuredHeap < 0) {
+            configuredHeap = heapFlag(flags, "-Xmx");
+            heap = configuredHeap;
+        }
+        List<String> result = new ArrayList<>(flags.size() + 3);
+        for (String flag : flags) {
+            if (heap > 0 && flag.startsWith("-Xmx")) {
+                result.add("-Xmx" + heap / MB + "M");
+            } else if (heap > 0 && flag.startsWith("-Xms") && heapFlag(List.of(flag), "-Xms") > heap) {
+                result.add("-Xms" + heap / MB + "M");
+            } else {
+                result.add(flag);
+            }
+        }
+        String all = String.join(" ", flags);
+        if (config.isHeapDumps() && !all.contains("HeapDumpOnOutOfMemoryError") && roomForDump()) {
+            result.add("-XX:+HeapDumpOnOutOfMemoryError");
+            result.add("-XX:HeapDumpPath=" + pendingDump);
+        }
+        if (config.isExitOnOom() && !all.contains("ExitOnOutOfMemoryError") && !all.contains("CrashOnOutOfMemoryError")) {
+            result.add("-XX:+ExitOnOutOfMemoryError");
+        }
+        return result;
+    }
+
+    private static long heapFlag(List<String> flags, String name) {
+        for (String flag : flags) {
+            if (flag.startsWith(name)) {
+                try {
+                    return Units.parseBytes(flag.substring(name.length()));
+                } catch (IllegalArgumentException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes room for one more dump of the current heap size, or explains why there is none.
+     */
+    private boolean roomForDump() {
+        long expected = Math.max(0, heap);
+        String problem = null;
+        if (config.getMaxDumps() < 1) {
+            problem = "max-dumps is " + config.getMaxDumps();
+        } else if (expected > maxDumpBytes) {
+            problem = "a dump of the " + Units.formatBytes(expected) + " heap would not fit in max-dump-bytes (" + config.getMaxDumpBytes() + ")";
+        } else {
+            // A dump left over from a run whose OutOfMemoryError went unnoticed would stop the JVM writing the next one
+            keepDumps();
+            prune(config.getMaxDumps() - 1, maxDumpBytes - expected);
+            long usable = directory.toFile().getUsableSpace();
+            if (usable < expected) {
+                problem = "only " + Units.formatBytes(usable) + " is free in " + directory;
+            }
+        }
+        if (problem == null) {
+            dumpWarned = false;
+            return true;
+        }
+        if (!dumpWarned) {
+            logger.warning("Not asking the " + label + " for a heap dump on OutOfMemoryError: " + problem + ".");
+            dumpWarned = true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts watching a new launch.
+     * @param process The child, already placed in its cgroup
+     */
+    public synchronized void onLaunch(Process process) {
+        oomEvents = oomEventsFile(process.pid());
+        launchOomKills = oomKills();
+        seenOomKills = launchOomKills;
+        pendingOomKills = launchOomKills;
+        peakRss = 0;
+        oomMessage = null;
+        rssWarned = false;
+    }
+
+    /**
+     * Finds where the OOM kills of the child's cgroup are counted, and its memory limit.
+     */
+    private Path oomEventsFile(long pid) {
+        Path dir = limits.getCgroupDir();
+        if ("cgroup v2".equals(limits.getSource())) {
+            // The child may have been placed in a cgroup of its own
+            String self = ContainerLimits.read(Paths.get("/proc/" + pid + "/cgroup"));
+            if (self != null) {
+                for (String line : self.split("\n")) {
+                    if (line.startsWith("0::")) {
+                        Path candidate = CGROUP_ROOT.resolve(line.substring(3).trim().replaceFirst("^/", ""));
+                        if (Files.exists(candidate.resolve("memory.events"))) {
+                            dir = candidate;
+                        }
+                    }
+                }
+            }
+            long lowest = -1;
+            for (Path d = dir; d != null && d.startsWith(CGROUP_ROOT); d = d.getParent()) {
+                long value = number(ContainerLimits.read(d.resolve("memory.max")));
+                if (value > 0) {
+                    lowest = lowest < 0 ? value : Math.min(lowest, value);
+                }
+            }
+            limit = lowest > 0 ? Math.min(lowest, limits.getEffectiveMemory()) : limits.getEffectiveMemory();
+            return dir.resolve("memory.events");
+        }
+        if ("cgroup v1".equals(limits.getSource())) {
+            return dir.resolve("memory.oom_control");
+        }
+        return null;
+    }
+
+    /**
+     * @return The "oom_kill" count of memory.events (v2) or memory.oom_control (v1), or 0
+     */
+    private long oomKills() {
+        Path events = oomEvents;
+        String text = events == null ? null : ContainerLimits.read(events);
+        if (text != null) {
+            for (String line : text.split("\n")) {
+                if (line.startsWith("oom_kill ")) {
+                    return Math.max(0, number(line.substring(9)));
+                }
+            }
+        }
+        return 0;
+    }
+
+    // -1 for "max", missing or garbled values
+    private static long number(String value) {
+        try {
+            return value == null ? -1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Compares the latest sample with the limit. Runs on the scheduler after the sampler.
+     */
+    @Override
+    public synchronized void run() {
+        ProcessHandle root = sampler.getRoot();
+        if (root == null || !root.isAlive()) {
+            return;
+        }
+        long rss = sampler.getTreeRssBytes();
+        peakRss = Math.max(peakRss, rss);
+        int percent = limit > 0 ? (int) (rss * 100 / limit) : 0;
+        if (config.getRssWarning() > 0 && percent >= config.getRssWarning()) {
+            if (!rssWarned) {
+                logger.warning(
+                    "The " + label + " uses " + Units.formatBytes(rss) + " of its " + Units.formatBytes(limit) +
+                    " memory limit (" + percent + "%)" + (java && heap > 0 ? ", with a " + Units.formatBytes(heap) + " heap" : "") +
+                    "; it may be killed for running out of memory."
+                );
+                rssWarned = true;
+            }
+        } else if (percent < config.getRssWarning() - 5) {
+            rssWarned = false;
+        }
+
+        // A process killed in the tree while the server itself lives on, e.g. a plugin's helper.
+        // The count goes up before the server's own exit is noticed, so wait one check to tell.
+        long kills = oomKills();
+        if (kills > pendingOomKills) {
+            pendingOomKills = kills;
+        } else if (kills > seenOomKills && root.isAlive()) {
+            logger.warning(
+                "The kernel's OOM killer killed " + (kills - seenOomKills) + " process(es) in the " + label +
+                "'s cgroup; the " + label + " itself is still running."
+            );
+            seenOomKills = kills;
+        }
+    }
+
+    /**
+     * Watches stdout for the JVM's own "Terminating due to java.lang.OutOfMemoryError" line. A server's
+     * log may mention an OutOfMemoryError it caught and survived, so nothing else counts here.
+     */
+    @Override
+    public void onLine(byte[] line, int offset, int length) {
+        if (oomMessage == null && Bytes.contains(line, offset, length, TERMINATING)) {
+            oomMessage = new String(line, offset, length, StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    /**
+     * @return A listener for stderr, which also takes an uncaught OutOfMemoryError ("Exception in thread ...")
+     */
+    public StreamGobbler.LineListener errorListener() {
+        return (line, offset, length) -> {
+            if (oomMessage == null && (Bytes.contains(line, offset, length, TERMINATING) || isUncaughtOom(line, offset, length))) {
+                oomMessage = new String(line, offset, length, StandardCharsets.UTF_8).trim();
+            }
+        };
+    }
+
+    static boolean isUncaughtOom(byte[] line, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end && (line[start] == ' ' || line[start] == '\t')) {
+            start++;
+        }
+        return (
+            end - start >= UNCAUGHT.length &&
+            Bytes.indexOf(line, start, UNCAUGHT.length, UNCAUGHT) == start &&
+            Bytes.contains(line, start, end - start, OOM)
+        );
+    }
+
+    /**
+     * Works out whether the exit was about memory, keeps the heap dump and adjusts the heap for the next launch.
+     * Call it once the output has been read to the end.
+     * @param exitCode The child's exit code
+     */
+    public synchronized void onExit(int exitCode) {
+        long kills = oomKills() - launchOomKills;
+        String peak = peakRss > 0 ? " at a peak of " + Units.formatBytes(peakRss) + " of " + Units.formatBytes(limit) : "";
+        if (oomMessage != null) {
+            jvmOoms.incrementAndGet();
+            logger.severe("The " + label + " ran out of memory inside the JVM" + peak + ": " + oomMessage);
+            keepDumps();
+            boolean heapProblem = oomMessage.contains("Java heap space") || oomMessage.contains("GC overhead limit exceeded");
+            if (heapProblem) {
+                adjustHeap(true);
+            } else if (config.isAdjustHeap() && java) {
+                logger.info("That is not about the heap, so the heap size stays as it is.");
+            }
+        } else if (kills > 0 && exitCode != 0) {
+            kernelOoms.incrementAndGet();
+            logger.severe(
+                "The " + label + " was killed by the kernel's OOM killer (exit code " + exitCode + ", " + kills +
+                " OOM kill(s) recorded by its cgroup)" + peak + "."
+            );
+            adjustHeap(false);
+        } else if (exitCode == SIGKILL_EXIT) {
+            logger.warning(
+                "The " + label + " was killed with SIGKILL (exit code 137)" + peak + ", but its cgroup recorded no OOM kill. " +
+                "Something else killed it, or the host's OOM killer did, which AnyJar can't see from here."
+            );
+        }
+        seenOomKills = oomKills();
+        pendingOomKills = seenOomKills;
+    }
+
+    /**
+     * Grows the heap after it ran out while memory was left over, or shrinks it after the whole process did not fit.
+     */
+    private void adjustHeap(boolean grow) {
+        if (!config.isAdjustHeap() || !java || heap <= 0) {
+            return;
+        }
+        long next;
+        if (grow) {
+            next = grownHeap(heap, configuredHeap, limit, peakRss);
+            if (next < 0) {
+                logger.warning(
+                    "Not growing the " + label + "'s heap: the last run left only " + Units.formatBytes(Math.max(0, limit - peakRss)) +
+                    " of " + Units.formatBytes(limit) + " unused" + (heap >= configuredHeap * 2 ? " or it is already twice ram-max" : "") +
+                    ". It needs more memory, or less to hold."
+                );
+                return;
+            }
+        } else {
+            next = shrunkHeap(heap, configuredHeap, limit, peakRss);
+            if (next < 0) {
+                logger.warning(
+                    "Not shrinking the " + label + "'s heap any further: it is " + Units.formatBytes(heap) +
+                    ", and at least " + Units.formatBytes(shrinkFloor(configuredHeap, limit)) + " is kept. " +
+                    "It needs more memory, or less to hold."
+                );
+                return;
+            }
+        }
+        logger.warning(
+            (grow ? "Growing" : "Shrinking") + " the " + label + "'s heap from " + Units.formatBytes(heap) + " to " +
+            Units.formatBytes(next) + " for the next launch (peak resident memory " + Units.formatBytes(peakRss) + " of " +
+            Units.formatBytes(limit) + "). Set ram-max to " + next / MB + "M in server.yml to keep it."
+        );
+        heap = next;
+    }
+
+    /**
+     * Works out the heap after a heap OutOfMemoryError: up by a quarter at most, leaving a tenth of the
+     * limit for everything that is not heap, and never beyond twice the configured heap.
+     * @return The new heap, or -1 if it can't grow by at least a step
+     */
+    static long grownHeap(long heap, long configuredHeap, long limit, long peakRss) {
+        long headroom = limit - peakRss - limit / 10;
+        long next = Math.min(heap + Math.min(headroom, heap / 4), configuredHeap * 2) / STEP * STEP;
+        return next - heap < STEP ? -1 : next;
+    }
+
+    /**
+     * Works out the heap after an OOM kill. The peak sample may miss the spike, so it shrinks by at least
+     * a tenth, and to three quarters of the limit straight away if the heap alone could not fit.
+     * @return The new heap, or -1 if it can't shrink by at least a step
+     */
+    static long shrunkHeap(long heap, long configuredHeap, long limit, long peakRss) {
+        long overshoot = peakRss - limit * 9 / 10;
+        long fits = limit * 3 / 4;
+        long next = heap - Math.max(heap / 10, overshoot);
+        if (heap > fits) {
+            next = Math.min(next, fits);
+        }
+        next = Math.max(next / STEP * STEP, shrinkFloor(configuredHeap, limit));
+        return heap - next < STEP ? -1 : next;
+    }
+
+    // Half the configured heap, or three quarters of the limit if that is less, in whole steps
+    private static long shrinkFloor(long configuredHeap, long limit) {
+        long floor = Math.min(configuredHeap / 2, limit * 3 / 4);
+        return (floor + STEP - 1) / STEP * STEP;
+    }
+
+    /**
+     * Renames the dump the JVM wrote for this service to "<name>-<time>.hprof". Room for it was
+     * made before the launch.
+     */
+    private void keepDumps() {
+        if (!java || !config.isHeapDumps() || !Files.isRegularFile(pendingDump)) {
+            return;
+        }
+        String stamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date(pendingDump.toFile().lastModified()));
+        Path target = directory.resolve(prefix + "-" + stamp + ".hprof");
+        try {
+            Files.move(pendingDump, target);
+            dumps.incrementAndGet();
+            logger.info("Saved a heap dump of the " + label + " to " + target + " (" + Units.formatBytes(target.toFile().length()) + ").");
+        } catch (IOException e) {
+            logger.warning("Could not move the heap dump " + pendingDump + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes this service's oldest dumps beyond a count or total size.
+     * @param keep How many dumps may stay
+     * @param budget How many bytes they may take together
+     */
+    private void prune(int keep, long budget) {
+        List<Path> found = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> keptDump.matcher(p.getFileName().toString()).matches()).forEach(found::add);
+        } catch (IOException e) {
+            return;
+        }
+        found.sort(Comparator.comparingLong((Path p) -> p.toFile().lastModified()).reversed());
+        long total = 0;
+        for (int i = 0; i < found.size(); i++) {
+            Path dump = found.get(i);
+            total += dump.toFile().length();
+            if (i >= keep || total > budget) {
+                try {
+                    Files.deleteIfExists(dump);
+                    logger.info("Deleted old heap dump " + dump);
+                } catch (IOException e) {
+                    logger.warning("Could not delete old heap dump " + dump + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.gauge("anyjar_memory_limit_bytes", "Memory the server may use: its cgroup limit, or the host's memory");
+        out.sample("anyjar_memory_limit_bytes", limit);
+        out.gauge("anyjar_memory_peak_rss_bytes", "Highest resident memory of the server's process tree in this run");
+        out.sample("anyjar_memory_peak_rss_bytes", peakRss);
+        out.counter("anyjar_oom_total", "Times the server died from running out of memory, inside the JVM or by the OOM killer");
+        out.sample("anyjar_oom_total", new String[] { "kind", "jvm" }, jvmOoms.get());
+        out.sample("anyjar_oom_total", new String[] { "kind", "kernel" }, kernelOoms.get());
+        out.counter("anyjar_heap_dumps_total", "Heap dumps saved after an OutOfMemoryError");
+        out.sample("anyjar_heap_dumps_total", dumps.get());
+        if (heap > 0) {
+            out.gauge("anyjar_heap_max_bytes", "Maximum heap of the next launch, after any adjustment");
+            out.sample("anyjar_heap_max_bytes", heap);
+        }
+    }
+}
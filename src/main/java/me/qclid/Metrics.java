@@ -0,0 +1,168 @@
+package me.qclid;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of metric collectors, rendered in the Prometheus text exposition format.
+ * Collectors are asked for their current values on every scrape, so nothing is stored twice.
+ */
+public class Metrics {
+
+    /**
+     * Something that can report its metrics on demand.
+     */
+    public interface Collector {
+        void collect(Writer out);
+    }
+
+    private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+
+    public void register(Collector collector) {
+        collectors.add(collector);
+    }
+
+    public void unregister(Collector collector) {
+        collectors.remove(collector);
+    }
+
+    /**
+     * Adds labels to every sample of a collector, so several instances can share metric names.
+     * @param collector The collector to wrap
+     * @param labels Label pairs as name, value, name, value...
+     * @return The labelled collector
+     */
+    public static Collector labelled(Collector collector, String... labels) {
+        return out -> {
+            String[] previous = out.extraLabels;
+            out.extraLabels = labels;
+            try {
+                collector.collect(out);
+            } finally {
+                out.extraLabels = previous;
+            }
+        };
+    }
+
+    /**
+     * Renders every registered collector.
+     * @param timestampMillis Timestamp to append to each sample, or -1 for none (as served over HTTP)
+     * @return The metrics in Prometheus text format
+     */
+    public String scrape(long timestampMillis) {
+        Writer writer = new Writer(timestampMillis);
+        for (Collector collector : collectors) {
+            collector.collect(writer);
+        }
+        return writer.render();
+    }
+
+    /**
+     * Builds the exposition text. Every metric family needs a header before its samples.
+     * Families written by several collectors get one header and keep their samples together.
+     */
+    public static class Writer {
+
+        private final Map<String, StringBuilder> families = new LinkedHashMap<>();
+        private StringBuilder out = new StringBuilder();
+        private String[] extraLabels;
+        private final long timestamp;
+
+        Writer(long timestamp) {
+            this.timestamp = timestamp;
+            families.put("", out);
+        }
+
+        public Writer gauge(String name, String help) {
+            return header(name, help, "gauge");
+        }
+
+        public Writer counter(String name, String help) {
+            return header(name, help, "counter");
+        }
+
+        public Writer histogram(String name, String help) {
+            return header(name, help, "histogram");
+        }
+
+        private Writer header(String name, String help, String type) {
+            out = families.get(name);
+            if (out != null) {
+                return this;
+            }
+            out = new StringBuilder(256);
+            families.put(name, out);
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            return this;
+        }
+
+        public Writer sample(String name, double value) {
+            return sample(name, null, value);
+        }
+
+        /**
+         * @param labels Label pairs as name, value, name, value...; may be null
+         */
+        public Writer sample(String name, String[] labels, double value) {
+            out.append(name);
+            if (extraLabels != null || (labels != null && labels.length > 0)) {
+                out.append('{');
+                boolean first = appendLabels(extraLabels, true);
+                appendLabels(labels, first);
+                out.append('}');
+            }
+            out.append(' ');
+            if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+                out.append((long) value);
+            } else {
+                out.append(String.format(Locale.ROOT, "%.6g", value));
+            }
+            if (timestamp >= 0) {
+                out.append(' ').append(timestamp);
+            }
+            out.append('\n');
+            return this;
+        }
+
+        private boolean appendLabels(String[] labels, boolean first) {
+            if (labels == null) {
+                return first;
+            }
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                out.append(labels[i]).append("=\"");
+                escape(labels[i + 1]);
+                out.append('"');
+            }
+            return first;
+        }
+
+        private String render() {
+            StringBuilder all = new StringBuilder(4096);
+            for (StringBuilder family : families.values()) {
+                all.append(family);
+            }
+            return all.toString();
+        }
+
+        private void escape(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '\\' || c == '"') {
+                    out.append('\\').append(c);
+                } else if (c == '\n') {
+                    out.append("\\n");
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * The "metrics" section of server.yml: the child process sampler, the HTTP endpoint and the metrics file.
+ */
+public class MetricsConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private boolean enabled = false;
+    private String bind = "127.0.0.1";
+    private int port = 9225;
+    private String sampleInterval = "5s";
+    private boolean file = false;
+    private String fileInterval = "1m";
+    private String fileMaxSize = "50M";
+    private int fileMaxFiles = 10;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getBind() {
+        return bind;
+    }
+
+    public void setBind(String bind) {
+        this.bind = bind;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public void setSampleInterval(String sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    public boolean isFile() {
+        return file;
+    }
+
+    public void setFile(boolean file) {
+        this.file = file;
+    }
+
+    public String getFileInterval() {
+        return fileInterval;
+    }
+
+    public void setFileInterval(String fileInterval) {
+        this.fileInterval = fileInterval;
+    }
+
+    public String getFileMaxSize() {
+        return fileMaxSize;
+    }
+
+    public void setFileMaxSize(String fileMaxSize) {
+        this.fileMaxSize = fileMaxSize;
+    }
+
+    public int getFileMaxFiles() {
+        return fileMaxFiles;
+    }
+
+    public void setFileMaxFiles(int fileMaxFiles) {
+        this.fileMaxFiles = fileMaxFiles;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "MetricsConfig{" +
+            "enabled=" +
+            enabled +
+            ", bind='" +
+            bind +
+            '\'' +
+            ", port=" +
+            port +
+            ", sampleInterval='" +
+            sampleInterval +
+            '\'' +
+            ", file=" +
+            file +
+            ", fileInterval='" +
+            fileInterval +
+            '\'' +
+            ", fileMaxSize='" +
+            fileMaxSize +
+            '\'' +
+            ", fileMaxFiles=" +
+            fileMaxFiles +
+            '}'
+        );
+    }
+}
@@ -0,0 +1,107 @@
+package me.qclid;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the metrics registry on a local HTTP endpoint in Prometheus text format and,
+ * optionally, appends timestamped snapshots to a rolling file in Anyjar/metrics.
+ */
+public class MetricsExporter {
+
+    private static final Logger logger = Logger.getLogger(MetricsExporter.class.getName());
+
+    private final Metrics metrics;
+    private HttpServer server;
+    private RollingLogFile file;
+    private ScheduledFuture<?> snapshots;
+
+    public MetricsExporter(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts the endpoint and the file writer as configured.
+     * @param config The metrics section of the configuration
+     * @param scheduler Scheduler for the periodic file snapshots
+     */
+    public void start(MetricsConfig config, ScheduledExecutorService scheduler) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(config.getBind(), config.getPort()), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = metrics.scrape(-1).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "AnyJar-metrics-http");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.start();
+            logger.info("Serving metrics on http://" + config.getBind() + ":" + config.getPort() + "/metrics");
+        } catch (IOException e) {
+            logger.warning("Could not start the metrics endpoint on port " + config.getPort() + ": " + e.getMessage());
+        }
+
+        if (config.isFile()) {
+            try {
+                LogConfig rotation = new LogConfig();
+                rotation.setMaxFileSize(config.getFileMaxSize());
+                rotation.setMaxFiles(config.getFileMaxFiles());
+                rotation.setMaxTotalSize(Long.toString(Units.parseBytes(config.getFileMaxSize()) * config.getFileMaxFiles()));
+                file = new RollingLogFile(new File("Anyjar/metrics"), "Anyjar-metrics");
+                file.applyPolicy(rotation);
+                long interval = Units.parseMillis(config.getFileInterval());
+                snapshots = scheduler.scheduleAtFixedRate(this::writeSnapshot, interval, interval, TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                logger.warning("Could not open the metrics file: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void writeSnapshot() {
+        if (file == null) {
+            return;
+        }
+        try {
+            file.write(metrics.scrape(System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8));
+            file.flush();
+        } catch (IOException e) {
+            logger.warning("Could not write the metrics file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the endpoint, and writes a last snapshot and closes the file.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (snapshots != null) {
+            snapshots.cancel(false);
+        }
+        if (file != null) {
+            writeSnapshot();
+            try {
+                file.close();
+            } catch (IOException e) {
+                logger.warning("Could not close the metrics file: " + e.getMessage());
+            }
+            file = null;
+        }
+    }
+}
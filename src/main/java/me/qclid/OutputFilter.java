@@ -0,0 +1,284 @@
+package me.qclid;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Rule engine that sits between a child stream and the console.
+ * All literal rules are compiled into one {@link AhoCorasick} automaton, so each line is matched
+ * against every rule in a single pass; regular expressions are only used for rules that need them.
+ * Rules can suppress lines from the console, copy them to a separate log file, or rate-limit them
+ * and print a summary of what was held back. The main log file always receives every line.
+ */
+public class OutputFilter implements Metrics.Collector, Closeable {
+
+    private static final Logger logger = Logger.getLogger(OutputFilter.class.getName());
+
+    private enum Action {
+        SUPPRESS,
+        ROUTE,
+        RATE_LIMIT,
+    }
+
+    private final Rule[] rules;
+    private final boolean hasRegex;
+    private final AhoCorasick automaton;
+    private final Map<String, LogPipeline> sinks = new LinkedHashMap<>();
+
+    // Guarded by this: literal matches of the current line, stamped with the line's generation
+    private final long[] literalHits;
+    private long generation;
+    private final AhoCorasick.MatchHandler marker;
+
+    /**
+     * Compiles the rules and opens a log file for every route sink.
+     * @param configs The "filters" list from server.yml
+     * @param logging Rotation settings applied to the sink files
+     */
+    public OutputFilter(List<FilterRule> configs, LogConfig logging) throws IOException {
+        rules = new Rule[configs.size()];
+        List<byte[]> literals = new ArrayList<>();
+        boolean regex = false;
+        for (int i = 0; i < configs.size(); i++) {
+            FilterRule config = configs.get(i);
+            Rule rule = new Rule(config, i);
+            if (config.getMatch() != null && !config.getMatch().isEmpty()) {
+                rule.literalId = literals.size();
+                literals.add(config.getMatch().getBytes(StandardCharsets.UTF_8));
+            }
+            if (config.getRegex() != null && !config.getRegex().isEmpty()) {
+                rule.regex = Pattern.compile(config.getRegex());
+                regex |= rule.literalId < 0;
+            }
+            if (rule.literalId < 0 && rule.regex == null) {
+                throw new IllegalArgumentException("Filter rule '" + rule.name + "' needs 'match' or 'regex'");
+            }
+            if (rule.action == Action.ROUTE) {
+                if (config.getSink() == null || config.getSink().isEmpty()) {
+                    throw new IllegalArgumentException("Filter rule '" + rule.name + "' routes lines but has no 'sink'");
+                }
+                rule.sink = sink(config.getSink(), logging);
+            }
+            rules[i] = rule;
+        }
+        hasRegex = regex;
+        literalHits = new long[literals.size()];
+        marker = (id, end) -> literalHits[id] = generation;
+        automaton = new AhoCorasick(literals);
+        logger.info(
+            "Compiled " + rules.length + " output filter rules (" + literals.size() + " literal, " +
+            automaton.getStateCount() + " automaton states)."
+        );
+    }
+
+    private LogPipeline sink(String name, LogConfig logging) throws IOException {
+        String safe = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        LogPipeline pipeline = sinks.get(safe);
+        if (pipeline == null) {
+            RollingLogFile file = new RollingLogFile(new File(LogConfig.DIRECTORY, safe), safe);
+            file.applyPolicy(logging);
+            pipeline = new LogPipeline(safe, file);
+            sinks.put(safe, pipeline);
+        }
+        return pipeline;
+    }
+
+    /**
+     * Puts the filter in front of a console listener.
+     * @param level Level used when copying lines of this stream to sink files
+     * @param console The console listener that receives the lines that are let through
+     * @return The listener to hand to the stream gobbler instead of the console
+     */
+    public StreamGobbler.LineListener wrap(Level level, StreamGobbler.LineListener console) {
+        return new Stream(level, console);
+    }
+
+    /**
+     * Prints summaries for rate-limit windows that have ended without another matching line.
+     * Meant to be called periodically.
+     */
+    public synchronized void flushSummaries() {
+        long now = System.currentTimeMillis();
+        for (Rule rule : rules) {
+            if (rule.action == Action.RATE_LIMIT && now - rule.windowStart >= rule.perMillis) {
+                closeWindow(rule, now);
+            }
+        }
+    }
+
+    // Must hold this. Returns true if the line should be kept off the console.
+    private boolean apply(Stream stream, byte[] line, int offset, int length) {
+        generation++;
+        if (literalHits.length > 0) {
+            automaton.scan(line, offset, length, marker);
+        }
+        String decoded = null;
+        boolean suppress = false;
+        long now = 0;
+        for (Rule rule : rules) {
+            boolean matched;
+            if (rule.literalId >= 0) {
+                matched = literalHits[rule.literalId] == generation;
+                if (matched && rule.regex != null) {
+                    decoded = decoded != null ? decoded : new String(line, offset, length, StandardCharsets.UTF_8);
+                    matched = rule.regex.matcher(decoded).find();
+                }
+            } else if (hasRegex) {
+                decoded = decoded != null ? decoded : new String(line, offset, length, StandardCharsets.UTF_8);
+                matched = rule.regex.matcher(decoded).find();
+            } else {
+                matched = false;
+            }
+            if (!matched) {
+                continue;
+            }
+
+            rule.hits++;
+            switch (rule.action) {
+                case SUPPRESS:
+                    rule.suppressed++;
+                    suppress = true;
+                    break;
+                case ROUTE:
+                    rule.sink.publish(stream.level, line, offset, length);
+                    break;
+                case RATE_LIMIT:
+                    now = now != 0 ? now : System.currentTimeMillis();
+                    if (now - rule.windowStart >= rule.perMillis) {
+                        closeWindow(rule, now);
+                    }
+                    if (++rule.windowCount > rule.limit) {
+                        rule.windowSuppressed++;
+                        rule.suppressed++;
+                        rule.summaryTarget = stream;
+                        suppress = true;
+                    }
+                    break;
+            }
+        }
+        return suppress;
+    }
+
+    // Must hold this
+    private void closeWindow(Rule rule, long now) {
+        if (rule.windowSuppressed > 0 && rule.summaryTarget != null) {
+            String summary = String.format(
+                Locale.ROOT,
+                "Suppressed %d more lines matching filter '%s' in the last %ds.",
+                rule.windowSuppressed,
+                rule.name,
+                Math.max(1, (now - rule.windowStart) / 1000)
+            );
+            rule.summaryTarget.emitSummary(summary.getBytes(StandardCharsets.UTF_8));
+        }
+        rule.windowStart = now;
+        rule.windowCount = 0;
+        rule.windowSuppressed = 0;
+    }
+
+    @Override
+    public synchronized void collect(Metrics.Writer out) {
+        out.counter("anyjar_filter_hits_total", "Lines matched by each output filter rule");
+        for (Rule rule : rules) {
+            out.sample("anyjar_filter_hits_total", rule.labels, rule.hits);
+        }
+        out.counter("anyjar_filter_suppressed_total", "Lines kept off the console by each output filter rule");
+        for (Rule rule : rules) {
+            out.sample("anyjar_filter_suppressed_total", rule.labels, rule.suppressed);
+        }
+    }
+
+    /**
+     * Flushes and closes the sink log files.
+     */
+    @Override
+    public void close() {
+        for (LogPipeline sink : sinks.values()) {
+            sink.close();
+        }
+    }
+
+    private class Stream implements StreamGobbler.LineListener {
+
+        final Level level;
+        final StreamGobbler.LineListener console;
+
+        Stream(Level level, StreamGobbler.LineListener console) {
+            this.level = level;
+            this.console = console;
+        }
+
+        @Override
+        public void onLine(byte[] line, int offset, int length) {
+            boolean suppress;
+            synchronized (OutputFilter.this) {
+                suppress = apply(this, line, offset, length);
+            }
+            if (!suppress) {
+                synchronized (this) {
+                    console.onLine(line, offset, length);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void flush() {
+            console.flush();
+        }
+
+        synchronized void emitSummary(byte[] summary) {
+            console.onLine(summary, 0, summary.length);
+            console.flush();
+        }
+    }
+
+    private static class Rule {
+
+        final String name;
+        final String[] labels;
+        final Action action;
+        final int limit;
+        final long perMillis;
+        int literalId = -1;
+        Pattern regex;
+        LogPipeline sink;
+
+        long hits;
+        long suppressed;
+        long windowStart;
+        int windowCount;
+        int windowSuppressed;
+        Stream summaryTarget;
+
+        Rule(FilterRule config, int index) {
+            this.name = config.getName() != null ? config.getName() : "rule-" + (index + 1);
+            this.labels = new String[] { "rule", name };
+            this.action = parseAction(config.getAction(), name);
+            this.limit = Math.max(0, config.getLimit());
+            this.perMillis = Math.max(1, Units.parseMillis(config.getPer()));
+        }
+
+        private static Action parseAction(String action, String name) {
+            switch (action == null ? "suppress" : action.toLowerCase(Locale.ROOT)) {
+                case "suppress":
+                    return Action.SUPPRESS;
+                case "route":
+                    return Action.ROUTE;
+                case "rate-limit":
+                    return Action.RATE_LIMIT;
+                default:
+                    throw new IllegalArgumentException("Unknown action '" + action + "' in filter rule '" + name + "'");
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Reads the server's files once before (or while) it starts, so that after a reboot the first
+ * chunk loads and class loads come from the page cache instead of a cold disk.
+ * Files are read in 1 MiB chunks by a few threads, each with one reusable direct buffer,
+ * and the kernel's readahead does the rest. Warming stops at the byte budget (never more than
+ * half of the memory available to the container, since more would only evict itself) or the time budget.
+ */
+public class PageCacheWarmer implements Metrics.Collector {
+
+    private static final Logger logger = Logger.getLogger(PageCacheWarmer.class.getName());
+    private static final int CHUNK = 1024 * 1024;
+    private static final String[] AUTO_FOLDERS = { "libraries", "plugins", "mods", "versions", "bundler" };
+
+    private final PrewarmConfig config;
+    private final Path directory;
+    private final String serverJar;
+    private final long maxBytes;
+    private final long timeout;
+
+    private final AtomicLong bytesWarmed = new AtomicLong();
+    private final AtomicLong filesWarmed = new AtomicLong();
+    private volatile long elapsedNanos;
+    private volatile boolean done;
+
+    /**
+     * @param config The prewarm section of the configuration
+     * @param directory The server's working directory
+     * @param serverJar The server jar, or null if there is none
+     */
+    public PageCacheWarmer(PrewarmConfig config, File directory, String serverJar) {
+        this.config = config;
+        this.directory = directory.toPath();
+        this.serverJar = serverJar;
+        long budget = Units.parseBytes(config.getMaxBytes());
+        long memory = ContainerLimits.detect().getEffectiveMemory();
+        this.maxBytes = memory > 0 ? Math.min(budget, memory / 2) : budget;
+        this.timeout = Math.max(0, Units.parseMillis(config.getTimeout()));
+    }
+
+    /**
+     * Starts warming on daemon threads at idle I/O priority and returns right away.
+     */
+    public void warmInBackground() {
+        Thread thread = new Thread(() -> warm(true), "AnyJar-prewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Warms the configured files and returns once done or out of budget.
+     */
+    public void warm() {
+        warm(false);
+    }
+
+    private void warm(boolean background) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+        List<Path> files = collect(deadline);
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong reserved = new AtomicLong();
+        int threads = Math.max(1, Math.min(config.getThreads(), files.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "AnyJar-prewarm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threads; i++) {
+            pool.execute(() -> {
+                if (background) {
+                    lowerIoPriority();
+                }
+                ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK);
+                int index;
+                while ((index = next.getAndIncrement()) < files.size()) {
+                    if (!read(files.get(index), buffer, reserved, deadline)) {
+                        return;
+                    }
+                    filesWarmed.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(timeout + 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdownNow();
+
+        elapsedNanos = System.nanoTime() - start;
+        done = true;
+        String stop =
+            reserved.get() >= maxBytes ? " (stopped at the byte budget of " + Units.formatBytes(maxBytes) + ")"
+                : System.nanoTime() >= deadline ? " (stopped at the time budget of " + timeout + " ms)"
+                : "";
+        logger.info(
+            String.format(
+                Locale.ROOT,
+                "Pre-warmed %s in %d of %d files in %.1f s%s%s.",
+                Units.formatBytes(bytesWarmed.get()),
+                filesWarmed.get(),
+                files.size(),
+                elapsedNanos / 1e9,
+                background ? " in the background" : "",
+                stop
+            )
+        );
+    }
+
+    // Reads one file chunk by chunk; false once a budget is used up
+    private boolean read(Path file, ByteBuffer buffer, AtomicLong reserved, long deadline) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                long chunk = Math.min(CHUNK, size - position);
+                if (System.nanoTime() >= deadline || reserved.getAndAdd(chunk) >= maxBytes) {
+                    return false;
+                }
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                position += read;
+                bytesWarmed.addAndGet(read);
+            }
+            return true;
+        } catch (IOException e) {
+            // Gone or unreadable; nothing to warm
+            return true;
+        }
+    }
+
+    /**
+     * Lists the files to warm: the server jar and shared folders first, then the worlds,
+     * each world's most recently written files (the areas players were in) first.
+     */
+    private List<Path> collect(long deadline) {
+        List<Path> roots = new ArrayList<>();
+        if (config.getPaths().isEmpty()) {
+            if (serverJar != null) {
+                roots.add(directory.resolve(serverJar));
+            }
+            for (String folder : AUTO_FOLDERS) {
+                roots.add(directory.resolve(folder));
+            }
+            try (Stream<Path> entries = Files.list(directory)) {
+                entries.filter(p -> Files.isRegularFile(p.resolve("level.dat"))).sorted().forEach(roots::add);
+            } catch (IOException e) {
+                // No worlds to add
+            }
+        } else {
+            for (String path : config.getPaths()) {
+                roots.add(directory.resolve(path));
+            }
+        }
+
+        List<Path> files = new ArrayList<>();
+        for (Path root : roots) {
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+            if (Files.isRegularFile(root)) {
+                files.add(root);
+            } else if (Files.isDirectory(root)) {
+                List<Found> found = new ArrayList<>();
+                try {
+                    // The walk reads each file's attributes anyway; keep the time so sorting needs no more stat calls
+                    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                            if (attributes.isRegularFile()) {
+                                found.add(new Found(file, attributes.lastModifiedTime().toMillis()));
+                            }
+                            return System.nanoTime() < deadline ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException e) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+                } catch (IOException | RuntimeException e) {
+                    logger.fine("Could not list " + root + " for pre-warming: " + e.getMessage());
+                }
+                found.sort(Comparator.comparingLong((Found f) -> f.modified).reversed());
+                for (Found file : found) {
+                    files.add(file.path);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static final class Found {
+
+        final Path path;
+        final long modified;
+
+        Found(Path path, long modified) {
+            this.path = path;
+            this.modified = modified;
+        }
+    }
+
+    // I/O priority is per thread on Linux, so this only affects the calling thread
+    private static void lowerIoPriority() {
+        try {
+            String self = Files.readSymbolicLink(Path.of("/proc/thread-self")).toString();
+            String tid = self.substring(self.lastIndexOf('/') + 1);
+            new ProcessBuilder("ionice", "-c", "3", "-p", tid)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start()
+                .waitFor(2, TimeUnit.SECONDS);
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // Not Linux, or no ionice: warm at normal priority
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.gauge("anyjar_prewarm_bytes", "Bytes read into the page cache before or while the server started");
+        out.sample("anyjar_prewarm_bytes", bytesWarmed.get());
+        out.gauge("anyjar_prewarm_files", "Files read into the page cache");
+        out.sample("anyjar_prewarm_files", filesWarmed.get());
+        out.gauge("anyjar_prewarm_seconds", "How long pre-warming took, 0 while it is still running");
+        out.sample("anyjar_prewarm_seconds", done ? elapsedNanos / 1e9 : 0);
+    }
+}
@@ -0,0 +1,72 @@
+package me.qclid;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Copies child output lines straight to a file descriptor, adding the "[AnyJar] " prefix
+ * at the byte level. Nothing is decoded or re-encoded on the way through.
+ */
+public class PassthroughConsole implements StreamGobbler.LineListener {
+
+    private static final byte[] PREFIX = "[AnyJar] ".getBytes(StandardCharsets.UTF_8);
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int buffered;
+
+    public PassthroughConsole(OutputStream out) {
+        this.out = out;
+    }
+
+    public static PassthroughConsole stdout() {
+        return new PassthroughConsole(new FileOutputStream(FileDescriptor.out));
+    }
+
+    public static PassthroughConsole stderr() {
+        return new PassthroughConsole(new FileOutputStream(FileDescriptor.err));
+    }
+
+    @Override
+    public void onLine(byte[] line, int offset, int length) {
+        put(PREFIX, 0, PREFIX.length);
+        put(line, offset, length);
+        if (buffered == buffer.length) {
+            flush();
+        }
+        buffer[buffered++] = '\n';
+    }
+
+    @Override
+    public void flush() {
+        if (buffered == 0) {
+            return;
+        }
+        try {
+            out.write(buffer, 0, buffered);
+            out.flush();
+        } catch (IOException e) {
+            // The console went away; there is nobody left to tell
+        }
+        buffered = 0;
+    }
+
+    private void put(byte[] src, int offset, int length) {
+        if (length > buffer.length - buffered) {
+            flush();
+            if (length > buffer.length) {
+                try {
+                    out.write(src, offset, length);
+                } catch (IOException e) {
+                    // The console went away; there is nobody left to tell
+                }
+                return;
+            }
+        }
+        System.arraycopy(src, offset, buffer, buffered, length);
+        buffered += length;
+    }
+}
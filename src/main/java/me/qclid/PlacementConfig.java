@@ -0,0 +1,124 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * The "placement" section of server.yml: which CPUs the server runs on, at what CPU and disk
+ * priority, and in which cgroup. Everything is off by default and Linux only.
+ */
+public class PlacementConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String cpus;
+    private Integer nice;
+    private String ioClass;
+    private Integer ioPriority;
+    private String cgroup;
+    private String cpuMax;
+    private String memoryHigh;
+
+    /**
+     * @return A CPU list as taskset understands it, e.g. "2-5" or "0,2,4", or null for any CPU
+     */
+    public String getCpus() {
+        return cpus;
+    }
+
+    public void setCpus(String cpus) {
+        this.cpus = cpus;
+    }
+
+    /**
+     * @return The nice value from -20 (highest priority) to 19 (lowest), or null to inherit AnyJar's
+     */
+    public Integer getNice() {
+        return nice;
+    }
+
+    public void setNice(Integer nice) {
+        this.nice = nice;
+    }
+
+    /**
+     * @return "realtime", "best-effort" or "idle", or null to inherit AnyJar's
+     */
+    public String getIoClass() {
+        return ioClass;
+    }
+
+    public void setIoClass(String ioClass) {
+        this.ioClass = ioClass;
+    }
+
+    /**
+     * @return The priority within the realtime and best-effort I/O classes, 0 (highest) to 7
+     */
+    public Integer getIoPriority() {
+        return ioPriority;
+    }
+
+    public void setIoPriority(Integer ioPriority) {
+        this.ioPriority = ioPriority;
+    }
+
+    /**
+     * @return A cgroup v2 group to move the server into, relative to /sys/fs/cgroup, or null to stay put
+     */
+    public String getCgroup() {
+        return cgroup;
+    }
+
+    public void setCgroup(String cgroup) {
+        this.cgroup = cgroup;
+    }
+
+    /**
+     * @return The cgroup's CPU limit in cores, e.g. "2.5", or null for no limit
+     */
+    public String getCpuMax() {
+        return cpuMax;
+    }
+
+    public void setCpuMax(String cpuMax) {
+        this.cpuMax = cpuMax;
+    }
+
+    /**
+     * @return The cgroup's memory.high, e.g. "6G", above which the kernel reclaims hard, or null for none
+     */
+    public String getMemoryHigh() {
+        return memoryHigh;
+    }
+
+    public void setMemoryHigh(String memoryHigh) {
+        this.memoryHigh = memoryHigh;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "PlacementConfig{" +
+            "cpus='" +
+            cpus +
+            '\'' +
+            ", nice=" +
+            nice +
+            ", ioClass='" +
+            ioClass +
+            '\'' +
+            ", ioPriority=" +
+            ioPriority +
+            ", cgroup='" +
+            cgroup +
+            '\'' +
+            ", cpuMax='" +
+            cpuMax +
+            '\'' +
+            ", memoryHigh='" +
+            memoryHigh +
+            '\'' +
+            '}'
+        );
+    }
+}
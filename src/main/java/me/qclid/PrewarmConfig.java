@@ -0,0 +1,97 @@
+package me.qclid;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The "prewarm" section of server.yml: reading the server's files into the page cache before it starts.
+ */
+public class PrewarmConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private boolean enabled = false;
+    private List<String> paths = new ArrayList<>();
+    private String maxBytes = "2G";
+    private String timeout = "30s";
+    private int threads = 4;
+    private boolean background = false;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return Files and folders to warm, relative to the server's directory; empty means the server jar,
+     *         libraries, plugins, mods and every world folder
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    public void setPaths(List<String> paths) {
+        this.paths = paths == null ? new ArrayList<>() : paths;
+    }
+
+    public String getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(String maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public String getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(String timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return Whether to start the server right away and warm at idle I/O priority alongside it
+     */
+    public boolean isBackground() {
+        return background;
+    }
+
+    public void setBackground(boolean background) {
+        this.background = background;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "PrewarmConfig{" +
+            "enabled=" +
+            enabled +
+            ", paths=" +
+            paths +
+            ", maxBytes='" +
+            maxBytes +
+            '\'' +
+            ", timeout='" +
+            timeout +
+            '\'' +
+            ", threads=" +
+            threads +
+            ", background=" +
+            background +
+            '}'
+        );
+    }
+}
@@ -0,0 +1,305 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples CPU, memory, threads, file descriptors, context switches and I/O of the child
+ * and all its descendants from /proc. Files are read into one reused buffer and parsed
+ * as bytes, and per-process records are kept between samples, so a steady process tree
+ * costs no garbage beyond what opening the files needs.
+ */
+public class ProcessSampler implements Runnable, Metrics.Collector {
+
+    private static final long CLOCK_TICKS = clockTicks();
+
+    private static final byte[] VOLUNTARY = Bytes.ascii("voluntary_ctxt_switches:");
+    private static final byte[] NONVOLUNTARY = Bytes.ascii("nonvoluntary_ctxt_switches:");
+    private static final byte[] VM_RSS = Bytes.ascii("VmRSS:");
+    private static final byte[] READ_BYTES = Bytes.ascii("read_bytes:");
+    private static final byte[] WRITE_BYTES = Bytes.ascii("write_bytes:");
+
+    private final byte[] buffer = new byte[8192];
+    private final Map<Long, Sample> samples = new HashMap<>();
+    private final List<ProcessHandle> handles = new ArrayList<>();
+    private volatile ProcessHandle root;
+    private long generation;
+    private long lastSampleNanos;
+    private double cpuUsage;
+
+    /**
+     * Points the sampler at a new child, e.g. after a restart.
+     * @param process The child process, or null to stop sampling
+     */
+    public synchronized void track(ProcessHandle process) {
+        root = process;
+        samples.clear();
+        cpuUsage = 0;
+        lastSampleNanos = 0;
+    }
+
+    public ProcessHandle getRoot() {
+        return root;
+    }
+
+    @Override
+    public void run() {
+        ProcessHandle current = root;
+        if (current == null || !current.isAlive()) {
+            return;
+        }
+        synchronized (this) {
+            sample(current);
+        }
+    }
+
+    private void sample(ProcessHandle current) {
+        long now = System.nanoTime();
+        generation++;
+        handles.clear();
+        handles.add(current);
+        current.descendants().forEach(handles::add);
+
+        long cpuTicksDelta = 0;
+        for (ProcessHandle handle : handles) {
+            long pid = handle.pid();
+            Sample s = samples.get(pid);
+            if (s == null) {
+                s = new Sample(pid);
+                samples.put(pid, s);
+            }
+            long previousTicks = s.cpuTicks;
+            boolean known = s.generation > 0;
+            if (!readStat(s)) {
+                continue;
+            }
+            readStatus(s);
+            readIo(s);
+            s.openFds = countFds(s.fdDir);
+            s.generation = generation;
+            if (known) {
+                cpuTicksDelta += Math.max(0, s.cpuTicks - previousTicks);
+            }
+        }
+
+        // Forget processes that have exited
+        Iterator<Sample> it = samples.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().generation != generation) {
+                it.remove();
+            }
+        }
+
+        if (lastSampleNanos > 0) {
+            double elapsed = (now - lastSampleNanos) / 1e9;
+            cpuUsage = elapsed > 0 ? cpuTicksDelta / (double) CLOCK_TICKS / elapsed : 0;
+        }
+        lastSampleNanos = now;
+    }
+
+    private boolean readStat(Sample s) {
+        int length = read(s.statPath);
+        if (length <= 0) {
+            return false;
+        }
+        // The command name may contain spaces and parentheses, so fields are counted from the last ')'
+        int pos = length - 1;
+        while (pos >= 0 && buffer[pos] != ')') {
+            pos--;
+        }
+        if (s.name == null) {
+            int open = 0;
+            while (open < pos && buffer[open] != '(') {
+                open++;
+            }
+            s.name = new String(buffer, open + 1, Math.max(0, pos - open - 1));
+        }
+        // Field 3 (state) starts two bytes after ')'
+        int field = 3;
+        pos += 2;
+        while (pos < length && field < 24) {
+            if (field == 14) {
+                s.cpuTicks = Bytes.parseLong(buffer, pos, length);
+            } else if (field == 15) {
+                s.cpuTicks += Bytes.parseLong(buffer, pos, length);
+            } else if (field == 20) {
+                s.threads = Bytes.parseLong(buffer, pos, length);
+            }
+            while (pos < length && buffer[pos] != ' ') {
+                pos++;
+            }
+            pos++;
+            field++;
+        }
+        return true;
+    }
+
+    private void readStatus(Sample s) {
+        int length = read(s.statusPath);
+        if (length <= 0) {
+            return;
+        }
+        s.rssBytes = valueAfter(length, VM_RSS) * 1024;
+        s.voluntarySwitches = valueAfter(length, VOLUNTARY);
+        s.involuntarySwitches = valueAfter(length, NONVOLUNTARY);
+    }
+
+    private void readIo(Sample s) {
+        int length = read(s.ioPath);
+        if (length <= 0) {
+            return;
+        }
+        s.readBytes = valueAfter(length, READ_BYTES);
+        s.writeBytes = valueAfter(length, WRITE_BYTES);
+    }
+
+    private long valueAfter(int length, byte[] key) {
+        int at = Bytes.indexOf(buffer, 0, length, key);
+        // "nonvoluntary_ctxt_switches:" also contains "voluntary_ctxt_switches:"; require a line start
+        while (at > 0 && buffer[at - 1] != '\n') {
+            at = Bytes.indexOf(buffer, at + 1, length - at - 1, key);
+        }
+        if (at < 0) {
+            return 0;
+        }
+        int pos = at + key.length;
+        while (pos < length && (buffer[pos] == ' ' || buffer[pos] == '\t')) {
+            pos++;
+        }
+        return Math.max(0, Bytes.parseLong(buffer, pos, length));
+    }
+
+    private int read(String path) {
+        try (InputStream in = new FileInputStream(path)) {
+            int total = 0;
+            int n;
+            while (total < buffer.length && (n = in.read(buffer, total, buffer.length - total)) > 0) {
+                total += n;
+            }
+            return total;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static int countFds(File fdDir) {
+        String[] fds = fdDir.list();
+        return fds == null ? 0 : fds.length;
+    }
+
+    private static long clockTicks() {
+        try {
+            Process process = new ProcessBuilder("getconf", "CLK_TCK").start();
+            String out = new String(process.getInputStream().readAllBytes()).trim();
+            process.waitFor(2, TimeUnit.SECONDS);
+            return Long.parseLong(out);
+        } catch (IOException | NumberFormatException e) {
+            return 100;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 100;
+        }
+    }
+
+    /**
+     * @return CPU cores used by the whole tree during the last interval, e.g. 1.5 for 150%
+     */
+    public synchronized double getCpuUsage() {
+        return cpuUsage;
+    }
+
+    /**
+     * @return Resident memory of the whole tree in bytes as of the last sample
+     */
+    public synchronized long getTreeRssBytes() {
+        long rss = 0;
+        for (Sample s : samples.values()) {
+            rss += s.rssBytes;
+        }
+        return rss;
+    }
+
+    @Override
+    public synchronized void collect(Metrics.Writer out) {
+        out.gauge("anyjar_child_processes", "Processes in the child's tree");
+        out.sample("anyjar_child_processes", samples.size());
+        out.gauge("anyjar_child_cpu_usage_cores", "CPU cores used by the child's tree over the last sample interval");
+        out.sample("anyjar_child_cpu_usage_cores", cpuUsage);
+
+        out.counter("anyjar_child_cpu_seconds_total", "CPU time (user + system) per process");
+        for (Sample s : samples.values()) {
+            out.sample("anyjar_child_cpu_seconds_total", s.labels(), s.cpuTicks / (double) CLOCK_TICKS);
+        }
+        out.gauge("anyjar_child_rss_bytes", "Resident set size per process");
+        for (Sample s : samples.values()) {
+            out.sample("anyjar_child_rss_bytes", s.labels(), s.rssBytes);
+        }
+        out.gauge("anyjar_child_threads", "Threads per process");
+        for (Sample s : samples.values()) {
+            out.sample("anyjar_child_threads", s.labels(), s.threads);
+        }
+        out.gauge("anyjar_child_open_fds", "Open file descriptors per process");
+        for (Sample s : samples.values()) {
+            out.sample("anyjar_child_open_fds", s.labels(), s.openFds);
+        }
+        out.counter("anyjar_child_context_switches_total", "Context switches per process");
+        for (Sample s : samples.values()) {
+            out.sample("anyjar_child_context_switches_total", s.labels("kind", "voluntary"), s.voluntarySwitches);
+            out.sample("anyjar_child_context_switches_total", s.labels("kind", "involuntary"), s.involuntarySwitches);
+        }
+        out.counter("anyjar_child_io_bytes_total", "Bytes read from and written to storage per process");
+        for (Sample s : samples.values()) {
+            out.sample("anyjar_child_io_bytes_total", s.labels("direction", "read"), s.readBytes);
+            out.sample("anyjar_child_io_bytes_total", s.labels("direction", "write"), s.writeBytes);
+        }
+    }
+
+    private static class Sample {
+
+        final long pid;
+        final String pidLabel;
+        final String statPath;
+        final String statusPath;
+        final String ioPath;
+        final File fdDir;
+        String name;
+        long generation;
+        long cpuTicks;
+        long threads;
+        long rssBytes;
+        long openFds;
+        long voluntarySwitches;
+        long involuntarySwitches;
+        long readBytes;
+        long writeBytes;
+        String[] labels;
+
+        Sample(long pid) {
+            this.pid = pid;
+            this.pidLabel = Long.toString(pid);
+            this.statPath = "/proc/" + pid + "/stat";
+            this.statusPath = "/proc/" + pid + "/status";
+            this.ioPath = "/proc/" + pid + "/io";
+            this.fdDir = new File("/proc/" + pid + "/fd");
+        }
+
+        String[] labels() {
+            if (labels == null) {
+                labels = new String[] { "pid", pidLabel, "name", name == null ? "" : name };
+            }
+            return labels;
+        }
+
+        String[] labels(String key, String value) {
+            return new String[] { "pid", pidLabel, "name", name == null ? "" : name, key, value };
+        }
+    }
+}
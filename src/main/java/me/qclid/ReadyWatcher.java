@@ -0,0 +1,35 @@
+package me.qclid;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Watches the child's output for the line that marks it as ready, e.g. Minecraft's "Done (12.3s)!".
+ * Fires once with the milliseconds elapsed since launch.
+ */
+public class ReadyWatcher implements StreamGobbler.LineListener {
+
+    public static final String MINECRAFT_DONE = "Done (";
+
+    private final byte[] marker;
+    private final long launchNanos;
+    private final LongConsumer onReady;
+    private volatile boolean fired;
+
+    public ReadyWatcher(String marker, long launchNanos, LongConsumer onReady) {
+        this.marker = Bytes.ascii(marker);
+        this.launchNanos = launchNanos;
+        this.onReady = onReady;
+    }
+
+    @Override
+    public void onLine(byte[] line, int offset, int length) {
+        if (!fired && Bytes.contains(line, offset, length, marker)) {
+            fired = true;
+            onReady.accept((System.nanoTime() - launchNanos) / 1_000_000);
+        }
+    }
+
+    public boolean hasFired() {
+        return fired;
+    }
+}
@@ -0,0 +1,111 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * The "restart" section of server.yml: when the supervisor relaunches the server and how fast.
+ */
+public class RestartConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String policy = "never";
+    private String initialBackoff = "1s";
+    private String maxBackoff = "1m";
+    private double jitter = 0.2;
+    private String stableAfter = "2m";
+    private int crashLoopLimit = 5;
+    private String crashLoopWindow = "10m";
+
+    /**
+     * @return "always", "on-failure" or "never"
+     */
+    public String getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(String policy) {
+        this.policy = policy;
+    }
+
+    public String getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(String initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public String getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(String maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * @return How much each delay is randomly stretched or shortened, as a fraction (0.2 = up to 20% either way)
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    public void setJitter(double jitter) {
+        this.jitter = jitter;
+    }
+
+    /**
+     * @return How long a run must last before the backoff starts over from initial-backoff
+     */
+    public String getStableAfter() {
+        return stableAfter;
+    }
+
+    public void setStableAfter(String stableAfter) {
+        this.stableAfter = stableAfter;
+    }
+
+    public int getCrashLoopLimit() {
+        return crashLoopLimit;
+    }
+
+    public void setCrashLoopLimit(int crashLoopLimit) {
+        this.crashLoopLimit = crashLoopLimit;
+    }
+
+    public String getCrashLoopWindow() {
+        return crashLoopWindow;
+    }
+
+    public void setCrashLoopWindow(String crashLoopWindow) {
+        this.crashLoopWindow = crashLoopWindow;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "RestartConfig{" +
+            "policy='" +
+            policy +
+            '\'' +
+            ", initialBackoff='" +
+            initialBackoff +
+            '\'' +
+            ", maxBackoff='" +
+            maxBackoff +
+            '\'' +
+            ", jitter=" +
+            jitter +
+            ", stableAfter='" +
+            stableAfter +
+            '\'' +
+            ", crashLoopLimit=" +
+            crashLoopLimit +
+            ", crashLoopWindow='" +
+            crashLoopWindow +
+            '\'' +
+            '}'
+        );
+    }
+}
@@ -0,0 +1,349 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Log file output that rolls over to a new segment by size and by day.
+ * Closed segments are gzip-compressed and pruned on a low-priority background thread,
+ * so the logging path only ever pays for closing one file and opening the next.
+ * Every segment gets a sparse {@link LogIndex} of line timestamps as it is written.
+ */
+public class RollingLogFile extends OutputStream {
+
+    private static final String SUFFIX = ".txt";
+    private static final String COMPRESSED_SUFFIX = ".txt.gz";
+
+    private final File dir;
+    private final String baseName;
+    private final ExecutorService housekeeper = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "AnyJar-log-housekeeper");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private volatile Policy policy = new Policy(new LogConfig());
+    private File current;
+    private FileOutputStream stream;
+    private long size;
+    private long nextDayMillis;
+    private String lastStamp;
+    private int sequence;
+    private LogIndex.Writer index;
+    private long indexedAt;
+
+    public RollingLogFile(File dir, String baseName) throws IOException {
+        this.dir = dir;
+        this.baseName = baseName;
+        open();
+    }
+
+    /**
+     * Applies rotation and retention settings from server.yml and tidies up segments left by earlier runs.
+     * @param config The logging section of the configuration
+     */
+    public void applyPolicy(LogConfig config) {
+        policy = new Policy(config);
+        File active = current;
+        housekeeper.submit(() -> {
+            // Compression that was cut short by an earlier exit starts over
+            File[] partial = dir.listFiles((d, name) ->
+                name.startsWith(baseName + "-") && (name.endsWith(".gz.tmp") || name.endsWith(".gz.idx.tmp"))
+            );
+            if (partial != null) {
+                for (File file : partial) {
+                    file.delete();
+                }
+            }
+            // Indexes whose segment was deleted by hand
+            File[] indexes = dir.listFiles((d, name) -> name.startsWith(baseName + "-") && name.endsWith(LogIndex.SUFFIX));
+            if (indexes != null) {
+                for (File file : indexes) {
+                    String path = file.getPath();
+                    if (!new File(path.substring(0, path.length() - LogIndex.SUFFIX.length())).exists()) {
+                        file.delete();
+                    }
+                }
+            }
+            if (policy.compress) {
+                for (File segment : listSegments()) {
+                    if (segment.getName().endsWith(SUFFIX) && !segment.equals(active)) {
+                        compress(segment);
+                    }
+                }
+            }
+            enforceRetention(active);
+        });
+    }
+
+    public File getCurrentFile() {
+        return current;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Policy p = policy;
+        if (size > 0 && (size + len > p.maxFileSize || (p.rotateDaily && System.currentTimeMillis() >= nextDayMillis))) {
+            rotate();
+        }
+        // The pipeline writes whole lines, so a write starts with a timestamp
+        if (p.indexInterval > 0 && (indexedAt < 0 || size - indexedAt >= p.indexInterval)) {
+            index(b, off, len);
+        }
+        stream.write(b, off, len);
+        size += len;
+    }
+
+    private void index(byte[] b, int off, int len) {
+        long second = LogIndex.parseSecond(b, off, len);
+        if (second < 0) {
+            return;
+        }
+        try {
+            if (index == null) {
+                index = new LogIndex.Writer(LogIndex.of(current), true);
+            }
+            index.add(second, size);
+        } catch (IOException e) {
+            System.err.println("[AnyJar] Failed to write log index: " + e.getMessage());
+        }
+        indexedAt = size;
+    }
+
+    private void closeIndex() {
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                // The entries written so far are still usable
+            }
+            index = null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        stream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+        closeIndex();
+        housekeeper.shutdown();
+        try {
+            housekeeper.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void rotate() throws IOException {
+        File closed = current;
+        stream.close();
+        closeIndex();
+        open();
+        File active = current;
+        housekeeper.submit(() -> {
+            if (policy.compress) {
+                compress(closed);
+            }
+            enforceRetention(active);
+        });
+    }
+
+    private void open() throws IOException {
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        String stamp = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date());
+        // Segments rotated within the same second get an increasing suffix, even if older ones were pruned
+        sequence = stamp.equals(lastStamp) ? sequence + 1 : 0;
+        lastStamp = stamp;
+        File file = segmentFile(stamp, sequence);
+        while (file.exists() || new File(file.getPath() + ".gz").exists()) {
+            file = segmentFile(stamp, ++sequence);
+        }
+        current = file;
+        stream = new FileOutputStream(file, true);
+        size = file.length();
+        indexedAt = -1;
+        ZoneId zone = ZoneId.systemDefault();
+        nextDayMillis = LocalDate.now(zone).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private File segmentFile(String stamp, int sequence) {
+        return new File(dir, baseName + "-" + stamp + (sequence == 0 ? "" : "-" + sequence) + SUFFIX);
+    }
+
+    /**
+     * Gzips a closed segment. With an index, every indexed stretch becomes its own gzip member
+     * and the index is rewritten to point at the members, so readers can still seek.
+     */
+    private void compress(File segment) {
+        File target = new File(segment.getPath() + ".gz");
+        File temp = new File(segment.getPath() + ".gz.tmp");
+        File index = LogIndex.of(segment);
+        File tempIndex = new File(LogIndex.of(target).getPath() + ".tmp");
+        long[] entries = index.isFile() ? LogIndex.read(index) : new long[0];
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (
+            InputStream in = new FileInputStream(segment);
+            FileOutputStream out = new FileOutputStream(temp);
+            LogIndex.Writer compressedIndex = entries.length > 0 ? new LogIndex.Writer(tempIndex, false) : null
+        ) {
+            GzipMembers members = new GzipMembers(deflater, out);
+            if (entries.length == 0) {
+                members.write(in, Long.MAX_VALUE);
+            }
+            long position = 0;
+            for (int i = 0; i < entries.length; i += 2) {
+                long end = i + 2 < entries.length ? entries[i + 3] : Long.MAX_VALUE;
+                compressedIndex.add(entries[i], out.getChannel().position());
+                members.write(in, end - position);
+                position = end;
+            }
+        } catch (IOException e) {
+            System.err.println("[AnyJar] Failed to compress " + segment + ": " + e.getMessage());
+            temp.delete();
+            tempIndex.delete();
+            return;
+        } finally {
+            deflater.end();
+        }
+        if (temp.renameTo(target)) {
+            target.setLastModified(segment.lastModified());
+            if (tempIndex.isFile()) {
+                tempIndex.renameTo(LogIndex.of(target));
+            }
+            index.delete();
+            segment.delete();
+        } else {
+            tempIndex.delete();
+        }
+    }
+
+    /**
+     * Writes gzip members one after another; together they read as one gzip file.
+     */
+    private static class GzipMembers {
+
+        private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+        private final Deflater deflater;
+        private final OutputStream out;
+        private final CRC32 crc = new CRC32();
+        private final byte[] input = new byte[64 * 1024];
+        private final byte[] output = new byte[64 * 1024];
+
+        GzipMembers(Deflater deflater, OutputStream out) {
+            this.deflater = deflater;
+            this.out = out;
+        }
+
+        /**
+         * Compresses up to length bytes of the input as one member.
+         */
+        void write(InputStream in, long length) throws IOException {
+            deflater.reset();
+            crc.reset();
+            out.write(HEADER);
+            long total = 0;
+            while (total < length) {
+                int read = in.read(input, 0, (int) Math.min(input.length, length - total));
+                if (read < 0) {
+                    break;
+                }
+                crc.update(input, 0, read);
+                deflater.setInput(input, 0, read);
+                while (!deflater.needsInput()) {
+                    out.write(output, 0, deflater.deflate(output));
+                }
+                total += read;
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(output, 0, deflater.deflate(output));
+            }
+            int size = (int) total;
+            long sum = crc.getValue();
+            out.write(new byte[] {
+                (byte) sum, (byte) (sum >>> 8), (byte) (sum >>> 16), (byte) (sum >>> 24),
+                (byte) size, (byte) (size >>> 8), (byte) (size >>> 16), (byte) (size >>> 24)
+            });
+        }
+    }
+
+    private void enforceRetention(File active) {
+        Policy p = policy;
+        List<File> segments = listSegments();
+        segments.remove(active);
+        segments.sort(Comparator.comparingLong(File::lastModified));
+
+        long total = active.length();
+        for (File segment : segments) {
+            total += segment.length();
+        }
+        int files = segments.size() + 1;
+        for (File oldest : segments) {
+            if (files <= p.maxFiles && total <= p.maxTotalSize) {
+                break;
+            }
+            long length = oldest.length();
+            if (oldest.delete()) {
+                LogIndex.of(oldest).delete();
+                files--;
+                total -= length;
+            }
+        }
+    }
+
+    private List<File> listSegments() {
+        File[] files = dir.listFiles((d, name) ->
+            name.startsWith(baseName + "-") && (name.endsWith(SUFFIX) || name.endsWith(COMPRESSED_SUFFIX))
+        );
+        return files == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(files));
+    }
+
+    private static class Policy {
+
+        final long maxFileSize;
+        final boolean rotateDaily;
+        final boolean compress;
+        final int maxFiles;
+        final long maxTotalSize;
+        final long indexInterval;
+
+        Policy(LogConfig config) {
+            this.maxFileSize = Units.parseBytes(config.getMaxFileSize());
+            this.rotateDaily = config.isRotateDaily();
+            this.compress = config.isCompress();
+            this.maxFiles = Math.max(1, config.getMaxFiles());
+            this.maxTotalSize = Units.parseBytes(config.getMaxTotalSize());
+            this.indexInterval = Units.parseBytes(config.getIndexInterval());
+        }
+    }
+}
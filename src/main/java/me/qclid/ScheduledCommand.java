@@ -0,0 +1,96 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * One entry of the "schedule" list in the commands section: a command and when to send it,
+ * either every so often, on a cron schedule, or after the server prints a certain line.
+ */
+public class ScheduledCommand implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String command;
+    private String every;
+    private String cron;
+    private String after;
+    private String delay = "0s";
+
+    /**
+     * @return The command, optionally starting with "@name " or "@all " like a console command
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    /**
+     * @return An interval such as "30m"
+     */
+    public String getEvery() {
+        return every;
+    }
+
+    public void setEvery(String every) {
+        this.every = every;
+    }
+
+    /**
+     * @return A cron expression with five fields: minute, hour, day of month, month and day of week
+     */
+    public String getCron() {
+        return cron;
+    }
+
+    public void setCron(String cron) {
+        this.cron = cron;
+    }
+
+    /**
+     * @return Text that, once it appears in the server's output, makes AnyJar send the command
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    public void setAfter(String after) {
+        this.after = after;
+    }
+
+    /**
+     * @return How long to wait after the "after" line before sending the command
+     */
+    public String getDelay() {
+        return delay;
+    }
+
+    public void setDelay(String delay) {
+        this.delay = delay;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "ScheduledCommand{" +
+            "command='" +
+            command +
+            '\'' +
+            ", every='" +
+            every +
+            '\'' +
+            ", cron='" +
+            cron +
+            '\'' +
+            ", after='" +
+            after +
+            '\'' +
+            ", delay='" +
+            delay +
+            '\'' +
+            '}'
+        );
+    }
+}
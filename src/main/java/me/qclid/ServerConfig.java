@@ -1,12 +1,36 @@
 package me.qclid;
 
-public class ServerConfig {
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ServerConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String ramMax;
     private String ramMin;
     private String serverJar;
     private boolean useOptions;
     private String manualStartupCommand;
+    private boolean consolePassthrough = true;
+    private boolean configSnapshot = true;
+    private boolean startupTiming = false;
+    private LogConfig logging = new LogConfig();
+    private JvmConfig jvm = new JvmConfig();
+    private MetricsConfig metrics = new MetricsConfig();
+    private List<FilterRule> filters = new ArrayList<>();
+    private ConsoleConfig console = new ConsoleConfig();
+    private RestartConfig restart = new RestartConfig();
+    private ShutdownConfig shutdown = new ShutdownConfig();
+    private PrewarmConfig prewarm = new PrewarmConfig();
+    private PlacementConfig placement = new PlacementConfig();
+    private GcLogConfig gcLog = new GcLogConfig();
+    private JfrConfig jfr = new JfrConfig();
+    private MemoryConfig memory = new MemoryConfig();
+    private CommandsConfig commands = new CommandsConfig();
+    private List<ServiceConfig> services = new ArrayList<>();
 
     public String getRamMax() {
         return ramMax;
@@ -48,6 +72,175 @@ public class ServerConfig {
         this.manualStartupCommand = manualStartupCommand;
     }
 
+    public boolean isConsolePassthrough() {
+        return consolePassthrough;
+    }
+
+    public void setConsolePassthrough(boolean consolePassthrough) {
+        this.consolePassthrough = consolePassthrough;
+    }
+
+    public boolean isConfigSnapshot() {
+        return configSnapshot;
+    }
+
+    public void setConfigSnapshot(boolean configSnapshot) {
+        this.configSnapshot = configSnapshot;
+    }
+
+    public boolean isStartupTiming() {
+        return startupTiming;
+    }
+
+    public void setStartupTiming(boolean startupTiming) {
+        this.startupTiming = startupTiming;
+    }
+
+    public LogConfig getLogging() {
+        return logging;
+    }
+
+    public void setLogging(LogConfig logging) {
+        this.logging = logging == null ? new LogConfig() : logging;
+    }
+
+    public JvmConfig getJvm() {
+        return jvm;
+    }
+
+    public void setJvm(JvmConfig jvm) {
+        this.jvm = jvm == null ? new JvmConfig() : jvm;
+    }
+
+    public MetricsConfig getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(MetricsConfig metrics) {
+        this.metrics = metrics == null ? new MetricsConfig() : metrics;
+    }
+
+    public List<FilterRule> getFilters() {
+        return filters;
+    }
+
+    public void setFilters(List<FilterRule> filters) {
+        this.filters = filters == null ? new ArrayList<>() : filters;
+    }
+
+    public ConsoleConfig getConsole() {
+        return console;
+    }
+
+    public void setConsole(ConsoleConfig console) {
+        this.console = console == null ? new ConsoleConfig() : console;
+    }
+
+    public RestartConfig getRestart() {
+        return restart;
+    }
+
+    public void setRestart(RestartConfig restart) {
+        this.restart = restart == null ? new RestartConfig() : restart;
+    }
+
+    public ShutdownConfig getShutdown() {
+        return shutdown;
+    }
+
+    public void setShutdown(ShutdownConfig shutdown) {
+        this.shutdown = shutdown == null ? new ShutdownConfig() : shutdown;
+    }
+
+    public PrewarmConfig getPrewarm() {
+        return prewarm;
+    }
+
+    public void setPrewarm(PrewarmConfig prewarm) {
+        this.prewarm = prewarm == null ? new PrewarmConfig() : prewarm;
+    }
+
+    public PlacementConfig getPlacement() {
+        return placement;
+    }
+
+    public void setPlacement(PlacementConfig placement) {
+        this.placement = placement == null ? new PlacementConfig() : placement;
+    }
+
+    public GcLogConfig getGcLog() {
+        return gcLog;
+    }
+
+    public void setGcLog(GcLogConfig gcLog) {
+        this.gcLog = gcLog == null ? new GcLogConfig() : gcLog;
+    }
+
+    public JfrConfig getJfr() {
+        return jfr;
+    }
+
+    public void setJfr(JfrConfig jfr) {
+        this.jfr = jfr == null ? new JfrConfig() : jfr;
+    }
+
+    public MemoryConfig getMemory() {
+        return memory;
+    }
+
+    public void setMemory(MemoryConfig memory) {
+        this.memory = memory == null ? new MemoryConfig() : memory;
+    }
+
+    public CommandsConfig getCommands() {
+        return commands;
+    }
+
+    public void setCommands(CommandsConfig commands) {
+        this.commands = commands == null ? new CommandsConfig() : commands;
+    }
+
+    public List<ServiceConfig> getServices() {
+        return services;
+    }
+
+    public void setServices(List<ServiceConfig> services) {
+        this.services = services == null ? new ArrayList<>() : services;
+    }
+
+    /**
+     * Builds the configuration of one service: its own settings, with the top level filling the gaps.
+     * A relative server-jar is resolved against the service's directory.
+     * @param service The service entry
+     * @return A configuration describing only that service
+     */
+    public ServerConfig forService(ServiceConfig service) {
+        ServerConfig copy = new ServerConfig();
+        copy.ramMax = service.getRamMax() != null ? service.getRamMax() : ramMax;
+        copy.ramMin = service.getRamMin() != null ? service.getRamMin() : ramMin;
+        copy.serverJar = service.getServerJar();
+        if (copy.serverJar != null && !new File(copy.serverJar).isAbsolute()) {
+            copy.serverJar = new File(service.getDirectory(), copy.serverJar).toPath().toAbsolutePath().normalize().toString();
+        }
+        copy.useOptions = service.getUseOptions() != null ? service.getUseOptions() : service.getServerJar() != null;
+        copy.manualStartupCommand = service.getManualStartupCommand();
+        copy.consolePassthrough = consolePassthrough;
+        copy.logging = logging;
+        copy.jvm = service.getJvm() != null ? service.getJvm() : jvm;
+        copy.metrics = metrics;
+        copy.filters = filters;
+        copy.console = console;
+        copy.restart = service.getRestart() != null ? service.getRestart() : restart;
+        copy.shutdown = service.getShutdown() != null ? service.getShutdown() : shutdown;
+        copy.prewarm = service.getPrewarm() != null ? service.getPrewarm() : prewarm;
+        copy.placement = service.getPlacement() != null ? service.getPlacement() : placement;
+        copy.gcLog = gcLog;
+        copy.jfr = service.getJfr() != null ? service.getJfr() : jfr;
+        copy.memory = service.getMemory() != null ? service.getMemory() : memory;
+        copy.commands = commands;
+        return copy;
+    }
+
     @Override
     public String toString() {
         return (
@@ -66,6 +259,40 @@ public class ServerConfig {
             ", manualStartupCommand='" +
             manualStartupCommand +
             '\'' +
+            ", consolePassthrough=" +
+            consolePassthrough +
+            ", configSnapshot=" +
+            configSnapshot +
+            ", startupTiming=" +
+            startupTiming +
+            ", logging=" +
+            logging +
+            ", jvm=" +
+            jvm +
+            ", metrics=" +
+            metrics +
+            ", filters=" +
+            filters +
+            ", console=" +
+            console +
+            ", restart=" +
+            restart +
+            ", shutdown=" +
+            shutdown +
+            ", prewarm=" +
+            prewarm +
+            ", placement=" +
+            placement +
+            ", gcLog=" +
+            gcLog +
+            ", jfr=" +
+            jfr +
+            ", memory=" +
+            memory +
+            ", commands=" +
+            commands +
+            ", services=" +
+            services +
             '}'
         );
     }
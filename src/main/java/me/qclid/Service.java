@@ -0,0 +1,473 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One supervised process: its command, stdin, restart policy and shutdown, and the launch loop
+ * that keeps it running. AnyJar runs a single service for a plain server.yml, or one per entry
+ * of the "services" list, all sharing the same console, log pipeline and I/O threads.
+ */
+public class Service implements Metrics.Collector {
+
+    private static final Logger logger = Logger.getLogger(Service.class.getName());
+
+    private final String name;
+    private final String label;
+    private final ServerConfig config;
+    private final ChildStdin stdin = new ChildStdin(Charset.defaultCharset());
+    private final Supervisor supervisor;
+    private final ShutdownCoordinator shutdown;
+    private final ChildPlacement placement;
+    private final TickHealthAnalyzer tickHealth = new TickHealthAnalyzer();
+    private final ProcessSampler sampler;
+    private final PageCacheWarmer warmer;
+    private final GcLogTailer gcLog;
+    private final JfrTrigger jfr;
+    private final MemoryWatchdog memory;
+    private final List<String> jvmFlags = new ArrayList<>();
+    private final CdsArchive cds;
+    private final ProcessBuilder processBuilder;
+    private List<StreamGobbler.LineListener> outputListeners = new ArrayList<>();
+    private List<StreamGobbler.LineListener> errorListeners = new ArrayList<>();
+
+    /**
+     * @param name The service name, or null for the only service of a plain server.yml
+     * @param config The configuration of this service
+     * @param directory The working directory of the process
+     * @param sampled Whether to sample the process tree for the metrics endpoint
+     * @param autoSized How many services, this one included, size their JVM with the auto profile
+     */
+    public Service(String name, ServerConfig config, File directory, boolean sampled, int autoSized) {
+        this.name = name;
+        this.label = name == null ? "server" : "service '" + name + "'";
+        this.config = config;
+        boolean jfrEnabled = config.getJfr().isEnabled() && isJavaTarget(config);
+        boolean memoryEnabled = config.getMemory().isEnabled();
+        // The flight recorder triggers and the memory watchdog watch the process tree through the sampler
+        this.sampler = sampled || jfrEnabled || memoryEnabled ? new ProcessSampler() : null;
+        this.warmer = config.getPrewarm().isEnabled()
+            ? new PageCacheWarmer(config.getPrewarm(), directory, config.isUseOptions() ? config.getServerJar() : null)
+            : null;
+
+        // JVM flags for .jar targets, resolved once and reused for every restart
+        CdsArchive archive = null;
+        if (isJavaTarget(config)) {
+            JvmConfig jvm = config.getJvm();
+            JavaRuntime runtime =
+                jvm.isAppCds() || "auto".equalsIgnoreCase(jvm.getProfile()) ? JavaRuntime.probe("java") : null;
+            jvmFlags.addAll(JvmTuner.tune(config, runtime, autoSized));
+            if (jvm.isAppCds()) {
+                archive = CdsArchive.prepare(new File(config.getServerJar()), name, runtime);
+            }
+        }
+        this.cds = archive;
+
+        if (config.getGcLog().isEnabled() && isJavaTarget(config)) {
+            this.gcLog = new GcLogTailer(config.getGcLog(), name, label);
+            jvmFlags.add(gcLog.jvmFlag());
+        } else {
+            if (config.getGcLog().isEnabled()) {
+                logger.warning("gc-log only works for .jar servers started with use-options; the " + label + " is not one.");
+            }
+            this.gcLog = null;
+        }
+
+        if (jfrEnabled) {
+            this.jfr = new JfrTrigger(config.getJfr(), name, label, tickHealth, sampler);
+            if (jfr.jvmFlag() != null) {
+                jvmFlags.add(jfr.jvmFlag());
+            }
+        } else {
+            if (config.getJfr().isEnabled()) {
+                logger.warning("jfr only works for .jar servers started with use-options; the " + label + " is not one.");
+            }
+            this.jfr = null;
+        }
+
+        this.memory = memoryEnabled
+            ? new MemoryWatchdog(config.getMemory(), name, label, sampler, isJavaTarget(config))
+            : null;
+
+        this.shutdown = new ShutdownCoordinator(config.getShutdown(), isJavaTarget(config), stdin, label);
+        this.placement = new ChildPlacement(config.getPlacement(), label);
+        this.processBuilder = new ProcessBuilder(command());
+        processBuilder.directory(directory);
+
+        this.supervisor = new Supervisor(config.getRestart(), label);
+        if (shutdown.getStopCommand() != null) {
+            // A stop command typed by an admin is not a crash
+            stdin.watchStopCommand(shutdown.getStopCommand(), supervisor::requestStop);
+        }
+    }
+
+    /**
+     * Sets where the process output goes, shared by every run.
+     * @param output Listeners for stdout
+     * @param error Listeners for stderr
+     */
+    public void listen(List<StreamGobbler.LineListener> output, List<StreamGobbler.LineListener> error) {
+        this.outputListeners = new ArrayList<>(output);
+        this.outputListeners.add(tickHealth);
+        this.errorListeners = new ArrayList<>(error);
+        // An uncaught OutOfMemoryError is printed to stderr
+        this.errorListeners.add(tickHealth);
+        if (memory != null) {
+            // The JVM's "Terminating due to" line may come on either stream, an uncaught error only on stderr
+            this.outputListeners.add(memory);
+            this.errorListeners.add(memory.errorListener());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ChildStdin getStdin() {
+        return stdin;
+    }
+
+    /**
+     * @return The process sampler, or null if metrics are off
+     */
+    public ProcessSampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * @return The GC log tailer to poll, or null if gc-log is off
+     */
+    public GcLogTailer getGcLog() {
+        return gcLog;
+    }
+
+    /**
+     * @return The flight recorder triggers to check, or null if jfr is off
+     */
+    public JfrTrigger getJfr() {
+        return jfr;
+    }
+
+    /**
+     * @return The memory watchdog to check, or null if memory is off
+     */
+    public MemoryWatchdog getMemory() {
+        return memory;
+    }
+
+    /**
+     * Launches the process and relaunches it as the restart policy says, until it stops for good.
+     * @param executor Runs the output readers
+     */
+    public void run(ExecutorService executor) throws IOException, InterruptedException {
+        if (warmer != null) {
+            if (config.getPrewarm().isBackground()) {
+                warmer.warmInBackground();
+            } else {
+                warmer.warm();
+            }
+        }
+        while (true) {
+            if (memory != null) {
+                // Room for a heap dump and the heap size are settled anew for every launch
+                processBuilder.command(command());
+            }
+            logger.info("Starting " + label + " with command: " + Arrays.toString(processBuilder.command().toArray()));
+            long launchNanos = System.nanoTime();
+            Process process = shutdown.launch(processBuilder);
+            if (process == null) {
+                logger.info("Not starting the " + label + ": AnyJar is shutting down.");
+                return;
+            }
+            StartupTimer.launched(label);
+            placement.apply(process);
+            if (memory != null) {
+                memory.onLaunch(process);
+            }
+            supervisor.onLaunch(launchNanos);
+            if (sampler != null) {
+                sampler.track(process.toHandle());
+            }
+
+            List<StreamGobbler.LineListener> runListeners = new ArrayList<>(outputListeners);
+            runListeners.add(
+                new ReadyWatcher(
+                    ReadyWatcher.MINECRAFT_DONE,
+                    launchNanos,
+                    millis -> {
+                        supervisor.onReady();
+                        if (cds != null) {
+                            cds.recordStartup(millis);
+                        }
+                    }
+                )
+            );
+            Future<?> outputDone = executor.submit(new StreamGobbler(process.getInputStream(), runListeners));
+            Future<?> errorDone = executor.submit(new StreamGobbler(process.getErrorStream(), errorListeners));
+
+            logger.info(capitalized(label) + " process started successfully.");
+            if (placement.isActive()) {
+                // Give the child a moment to get through taskset, nice and ionice first
+                executor.submit(() -> {
+                    Thread.sleep(1000);
+                    if (process.isAlive()) {
+                        placement.verify(process);
+                    }
+                    return null;
+                });
+            }
+
+            int exitCode = process.waitFor();
+            long exitNanos = System.nanoTime();
+            logger.info(capitalized(label) + " process exited with code: " + exitCode);
+            awaitDrained(outputDone);
+            awaitDrained(errorDone);
+            if (memory != null) {
+                memory.onExit(exitCode);
+            }
+            if (cds != null) {
+                boolean wasTraining = cds.isTraining();
+                cds.afterExit();
+                if (wasTraining && !cds.isTraining()) {
+                    processBuilder.command(command());
+                }
+            }
+
+            long delay = supervisor.onExit(exitCode, exitNanos);
+            if (delay < 0) {
+                return;
+            }
+            Thread.sleep(delay);
+            if (supervisor.isStopRequested()) {
+                return;
+            }
+        }
+    }
+
+    // Launched in its own session, placed as configured
+    private List<String> command() {
+        List<String> flags = memory != null ? memory.jvmFlags(jvmFlags) : jvmFlags;
+        return shutdown.wrapCommand(placement.wrapCommand(buildCommand(config, withCds(flags, cds))));
+    }
+
+    /**
+     * Stops the process tree for good, as part of AnyJar shutting down.
+     */
+    public void stop() {
+        supervisor.requestStop();
+        shutdown.shutdown();
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        supervisor.collect(out);
+        tickHealth.collect(out);
+        if (sampler != null) {
+            sampler.collect(out);
+        }
+        if (warmer != null) {
+            warmer.collect(out);
+        }
+        if (gcLog != null) {
+            gcLog.collect(out);
+        }
+        if (jfr != null) {
+            jfr.collect(out);
+        }
+        if (memory != null) {
+            memory.collect(out);
+        }
+    }
+
+    /**
+     * Puts "[name] " in front of every line, so services sharing a console can be told apart.
+     * @param name The service name
+     * @param target The listener that receives the prefixed lines
+     * @return The prefixing listener
+     */
+    public static StreamGobbler.LineListener prefixed(String name, StreamGobbler.LineListener target) {
+        byte[] prefix = ("[" + name + "] ").getBytes(StandardCharsets.UTF_8);
+        return new StreamGobbler.LineListener() {
+            private byte[] buffer = new byte[1024];
+
+            // A reader that outlived its run may still be draining while the next one starts
+            @Override
+            public synchronized void onLine(byte[] line, int offset, int length) {
+                int total = prefix.length + length;
+                if (buffer.length < total) {
+                    buffer = new byte[Math.max(total, buffer.length * 2)];
+                }
+                System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+                System.arraycopy(line, offset, buffer, prefix.length, length);
+                target.onLine(buffer, 0, total);
+            }
+
+            @Override
+            public void flush() {
+                target.flush();
+            }
+        };
+    }
+
+    private static String capitalized(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    /**
+     * Waits for a gobbler to reach the end of its stream after the child exited.
+     * A grandchild that inherited the pipe can keep it open, so this gives up after a while.
+     * @param gobbler The gobbler's future
+     */
+    private void awaitDrained(Future<?> gobbler) throws InterruptedException {
+        try {
+            gobbler.get(2, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            logger.warning(
+                "The " + label + "'s output is still open after it exited; another process may have inherited it."
+            );
+        } catch (ExecutionException e) {
+            logger.log(Level.WARNING, "Output reader failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Adds the AppCDS flags for the next launch, if AppCDS is on.
+     * @param jvmFlags The resolved JVM flags
+     * @param cds The AppCDS archive, or null
+     * @return The flags to launch with
+     */
+    private static List<String> withCds(List<String> jvmFlags, CdsArchive cds) {
+        if (cds == null) {
+            return jvmFlags;
+        }
+        List<String> flags = new ArrayList<>(jvmFlags);
+        flags.addAll(cds.jvmFlags());
+        return flags;
+    }
+
+    /**
+     * Checks whether the configured target is a .jar started with use-options.
+     * @param config The server configuration
+     * @return true if AnyJar builds the java command itself
+     */
+    /**
+     * @param config The configuration of a service
+     * @return Whether it is a .jar whose heap the auto JVM profile sizes from the machine's memory
+     */
+    public static boolean isAutoSized(ServerConfig config) {
+        return isJavaTarget(config) && "auto".equalsIgnoreCase(config.getJvm().getProfile());
+    }
+
+    private static boolean isJavaTarget(ServerConfig config) {
+        return config.isUseOptions() && config.getServerJar().toLowerCase().endsWith(".jar");
+    }
+
+    /**
+     * Parses a command string into a list of arguments, handling quoted strings properly.
+     * @param command The command string to parse
+     * @return List of command arguments
+     */
+    private static List<String> parseCommand(String command) {
+        List<String> args = new ArrayList<>();
+        StringBuilder currentArg = new StringBuilder();
+        boolean inQuotes = false;
+        char quoteChar = '"';
+
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+
+            if ((c == '"' || c == '\'') && (i == 0 || command.charAt(i-1) != '\\')) {
+                if (!inQuotes) {
+                    // Start of quoted string
+                    inQuotes = true;
+                    quoteChar = c;
+                } else if (c == quoteChar) {
+                    // End of quoted string
+                    inQuotes = false;
+                } else {
+                    // Different quote inside quoted string
+                    currentArg.append(c);
+                }
+            } else if (c == ' ' && !inQuotes) {
+                // End of argument
+                if (currentArg.length() > 0) {
+                    args.add(currentArg.toString());
+                    currentArg = new StringBuilder();
+                }
+            } else {
+                currentArg.append(c);
+            }
+        }
+
+        // Add the last argument
+        if (currentArg.length() > 0) {
+            args.add(currentArg.toString());
+        }
+
+        return args;
+    }
+
+    /**
+     * Determines the appropriate command to run based on file type and configuration.
+     * @param config The server configuration
+     * @param jvmFlags JVM flags for .jar targets, including the heap size, placed before -jar
+     * @return List of command arguments
+     */
+    private static List<String> buildCommand(ServerConfig config, List<String> jvmFlags) {
+        List<String> command = new ArrayList<>();
+
+        if (config.isUseOptions()) {
+            // Use the configured options
+            File targetFile = new File(config.getServerJar());
+            String fileName = targetFile.getName().toLowerCase();
+
+            if (fileName.endsWith(".jar")) {
+                // Java JAR file
+                command.add("java");
+                command.addAll(jvmFlags);
+                command.add("-jar");
+                command.add(config.getServerJar());
+                command.add("nogui");
+            } else if (fileName.endsWith(".sh")) {
+                // Shell script
+                if (System.getProperty("os.name").toLowerCase().contains("win")) {
+                    // Windows - use bash if available, otherwise try to run directly
+                    command.add("bash");
+                    command.add(config.getServerJar());
+                } else {
+                    // Unix-like system
+                    command.add("bash");
+                    command.add(config.getServerJar());
+                }
+            } else if (fileName.endsWith(".bat") || fileName.endsWith(".cmd")) {
+                // Windows batch file
+                command.add("cmd");
+                command.add("/c");
+                command.add(config.getServerJar());
+            } else if (fileName.endsWith(".exe")) {
+                // Windows executable
+                command.add(config.getServerJar());
+            } else {
+                // Unknown file type - try to run directly
+                command.add(config.getServerJar());
+            }
+        } else {
+            // Use manual startup command
+            command = parseCommand(config.getManualStartupCommand());
+        }
+
+        return command;
+    }
+}
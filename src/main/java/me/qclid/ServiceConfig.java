@@ -0,0 +1,190 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * One entry of the "services" list in server.yml: a named process that AnyJar runs next to the others.
+ * Anything left out is taken from the top level of server.yml.
+ */
+public class ServiceConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+    private String serverJar;
+    private Boolean useOptions;
+    private String manualStartupCommand;
+    private String directory = ".";
+    private String ramMax;
+    private String ramMin;
+    private JvmConfig jvm;
+    private RestartConfig restart;
+    private ShutdownConfig shutdown;
+    private PrewarmConfig prewarm;
+    private PlacementConfig placement;
+    private JfrConfig jfr;
+    private MemoryConfig memory;
+
+    /**
+     * @return The name used for the console prefix, the log folder and routing commands ("@name command")
+     */
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getServerJar() {
+        return serverJar;
+    }
+
+    public void setServerJar(String serverJar) {
+        this.serverJar = serverJar;
+    }
+
+    /**
+     * @return Whether server-jar is used, or null to decide by whether server-jar is set
+     */
+    public Boolean getUseOptions() {
+        return useOptions;
+    }
+
+    public void setUseOptions(Boolean useOptions) {
+        this.useOptions = useOptions;
+    }
+
+    public String getManualStartupCommand() {
+        return manualStartupCommand;
+    }
+
+    public void setManualStartupCommand(String manualStartupCommand) {
+        this.manualStartupCommand = manualStartupCommand;
+    }
+
+    /**
+     * @return The working directory of the service; server-jar is looked up in it
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory == null ? "." : directory;
+    }
+
+    public String getRamMax() {
+        return ramMax;
+    }
+
+    public void setRamMax(String ramMax) {
+        this.ramMax = ramMax;
+    }
+
+    public String getRamMin() {
+        return ramMin;
+    }
+
+    public void setRamMin(String ramMin) {
+        this.ramMin = ramMin;
+    }
+
+    public JvmConfig getJvm() {
+        return jvm;
+    }
+
+    public void setJvm(JvmConfig jvm) {
+        this.jvm = jvm;
+    }
+
+    public RestartConfig getRestart() {
+        return restart;
+    }
+
+    public void setRestart(RestartConfig restart) {
+        this.restart = restart;
+    }
+
+    public ShutdownConfig getShutdown() {
+        return shutdown;
+    }
+
+    public void setShutdown(ShutdownConfig shutdown) {
+        this.shutdown = shutdown;
+    }
+
+    public PrewarmConfig getPrewarm() {
+        return prewarm;
+    }
+
+    public void setPrewarm(PrewarmConfig prewarm) {
+        this.prewarm = prewarm;
+    }
+
+    public PlacementConfig getPlacement() {
+        return placement;
+    }
+
+    public void setPlacement(PlacementConfig placement) {
+        this.placement = placement;
+    }
+
+    public JfrConfig getJfr() {
+        return jfr;
+    }
+
+    public void setJfr(JfrConfig jfr) {
+        this.jfr = jfr;
+    }
+
+    public MemoryConfig getMemory() {
+        return memory;
+    }
+
+    public void setMemory(MemoryConfig memory) {
+        this.memory = memory;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "ServiceConfig{" +
+            "name='" +
+            name +
+            '\'' +
+            ", serverJar='" +
+            serverJar +
+            '\'' +
+            ", useOptions=" +
+            useOptions +
+            ", manualStartupCommand='" +
+            manualStartupCommand +
+            '\'' +
+            ", directory='" +
+            directory +
+            '\'' +
+            ", ramMax='" +
+            ramMax +
+            '\'' +
+            ", ramMin='" +
+            ramMin +
+            '\'' +
+            ", jvm=" +
+            jvm +
+            ", restart=" +
+            restart +
+            ", shutdown=" +
+            shutdown +
+            ", prewarm=" +
+            prewarm +
+            ", placement=" +
+            placement +
+            ", jfr=" +
+            jfr +
+            ", memory=" +
+            memory +
+            '}'
+        );
+    }
+}
@@ -0,0 +1,71 @@
+package me.qclid;
+
+import java.io.Serializable;
+
+/**
+ * The "shutdown" section of server.yml: how the server and everything it started are stopped.
+ */
+public class ShutdownConfig implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String stopCommand = "auto";
+    private String stopTimeout = "30s";
+    private String termTimeout = "10s";
+    private boolean parentDeathWatch = true;
+
+    /**
+     * @return The command that stops the server cleanly; "auto" means "stop" for .jar targets
+     *         and nothing for everything else, and an empty value means nothing
+     */
+    public String getStopCommand() {
+        return stopCommand;
+    }
+
+    public void setStopCommand(String stopCommand) {
+        this.stopCommand = stopCommand;
+    }
+
+    public String getStopTimeout() {
+        return stopTimeout;
+    }
+
+    public void setStopTimeout(String stopTimeout) {
+        this.stopTimeout = stopTimeout;
+    }
+
+    public String getTermTimeout() {
+        return termTimeout;
+    }
+
+    public void setTermTimeout(String termTimeout) {
+        this.termTimeout = termTimeout;
+    }
+
+    public boolean isParentDeathWatch() {
+        return parentDeathWatch;
+    }
+
+    public void setParentDeathWatch(boolean parentDeathWatch) {
+        this.parentDeathWatch = parentDeathWatch;
+    }
+
+    @Override
+    public String toString() {
+        return (
+            "ShutdownConfig{" +
+            "stopCommand='" +
+            stopCommand +
+            '\'' +
+            ", stopTimeout='" +
+            stopTimeout +
+            '\'' +
+            ", termTimeout='" +
+            termTimeout +
+            '\'' +
+            ", parentDeathWatch=" +
+            parentDeathWatch +
+            '}'
+        );
+    }
+}
@@ -0,0 +1,262 @@
+package me.qclid;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Stops the server and every process it started within a bounded time:
+ * first the stop command, then SIGTERM, then SIGKILL for the child and all of its descendants,
+ * each phase with its own deadline.
+ * On Linux the child also runs in its own session and is watched by a tiny shell loop that
+ * takes the whole process group down if AnyJar itself dies without running its shutdown hooks.
+ */
+public class ShutdownCoordinator {
+
+    private static final Logger logger = Logger.getLogger(ShutdownCoordinator.class.getName());
+    private static final long KILL_WAIT_MILLIS = 2000;
+
+    private final String label;
+    private final ChildStdin stdin;
+    private final String stopCommand;
+    private final long stopTimeout;
+    private final long termTimeout;
+    private final String setsid;
+    private final boolean deathWatch;
+    private volatile Process process;
+    // Set under the lock by shutdown(), so no launch can slip in after it has begun
+    private boolean shuttingDown;
+
+    /**
+     * @param config The shutdown section of the configuration
+     * @param javaTarget Whether the target is a .jar started by AnyJar, for the "auto" stop command
+     * @param stdin Where the stop command is sent
+     * @param label What to call the process in log messages, e.g. "server"
+     */
+    public ShutdownCoordinator(ShutdownConfig config, boolean javaTarget, ChildStdin stdin, String label) {
+        this.label = label;
+        this.stdin = stdin;
+        String command = config.getStopCommand();
+        if (command == null || "auto".equalsIgnoreCase(command.trim())) {
+            command = javaTarget ? "stop" : null;
+        }
+        this.stopCommand = command == null || command.trim().isEmpty() ? null : command.trim();
+        this.stopTimeout = Math.max(0, Units.parseMillis(config.getStopTimeout()));
+        this.termTimeout = Math.max(0, Units.parseMillis(config.getTermTimeout()));
+        this.deathWatch = config.isParentDeathWatch() && new File("/proc/self").isDirectory();
+        this.setsid = deathWatch ? findExecutable("setsid") : null;
+    }
+
+    /**
+     * @param name A program name
+     * @return Its path on the PATH, or null if it is not there
+     */
+    static String findExecutable(String name) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            File candidate = new File(dir, name);
+            if (candidate.canExecute()) {
+                return candidate.getPath();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The command that stops the server cleanly, or null if there is none
+     */
+    public String getStopCommand() {
+        return stopCommand;
+    }
+
+    /**
+     * Starts the child in its own session when the parent-death watch is on, so that the
+     * watch can signal its whole process group.
+     * @param command The command to launch
+     * @return The command to hand to the ProcessBuilder
+     */
+    public List<String> wrapCommand(List<String> command) {
+        if (setsid == null) {
+            return command;
+        }
+        List<String> wrapped = new ArrayList<>(command.size() + 1);
+        wrapped.add(setsid);
+        wrapped.addAll(command);
+        return wrapped;
+    }
+
+    /**
+     * Starts the child, connects its stdin and points the coordinator at it, unless shutdown has begun. Holding the same lock
+     * as {@link #shutdown()} means a launch either happens before it, and is stopped by it, or not at all.
+     * @param builder The child's process builder
+     * @return The child, or null if AnyJar is shutting down
+     * @throws IOException If the child can't be started
+     */
+    public synchronized Process launch(ProcessBuilder builder) throws IOException {
+        if (shuttingDown) {
+            return null;
+        }
+        Process child = builder.start();
+        stdin.connect(child.getOutputStream());
+        track(child);
+        return child;
+    }
+
+    // Starts the parent-death watch of a newly started child
+    private void track(Process child) {
+        process = child;
+        if (deathWatch) {
+            startDeathWatch(child);
+        }
+    }
+
+    // Polls AnyJar and the child once a second. If AnyJar is gone while the child (or anything
+    // left in its process group) is still running, it sends SIGTERM and, after term-timeout, SIGKILL.
+    private void startDeathWatch(Process child) {
+        long parent = ProcessHandle.current().pid();
+        String target = setsid != null ? "-" + child.pid() : Long.toString(child.pid());
+        long termSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(termTimeout));
+        String script =
+            "while kill -0 " + parent + " 2>/dev/null && kill -0 " + target + " 2>/dev/null; do sleep 1; done; " +
+            "kill -0 " + parent + " 2>/dev/null && exit 0; " +
+            "kill -TERM " + target + " 2>/dev/null || exit 0; " +
+            "i=0; while [ $i -lt " + termSeconds + " ] && kill -0 " + target + " 2>/dev/null; do sleep 1; i=$((i+1)); done; " +
+            "kill -KILL " + target + " 2>/dev/null";
+        List<String> command = new ArrayList<>();
+        if (setsid != null) {
+            // Keep the watch out of the terminal's process group, so Ctrl-C only reaches AnyJar
+            command.add(setsid);
+        }
+        command.add("sh");
+        command.add("-c");
+        command.add(script);
+        try {
+            new ProcessBuilder(command)
+                .redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")))
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        } catch (Exception e) {
+            logger.warning("Could not start the parent-death watch: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the current child and all of its descendants, escalating from the stop command
+     * to SIGTERM to SIGKILL. Blocks until everything is gone or the last deadline has passed.
+     */
+    public synchronized void shutdown() {
+        shuttingDown = true;
+        Process current = process;
+        if (current == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        Set<ProcessHandle> tree = new LinkedHashSet<>();
+        List<ProcessHandle> alive = alive(current, tree);
+        if (alive.isEmpty()) {
+            return;
+        }
+        logger.info(
+            "Stopping the " + label + " (pid " + current.pid() + (current.isAlive() ? "" : ", already exited") + ") and " +
+            (tree.size() - 1) + " processes it started."
+        );
+
+        if (stopCommand != null && stopTimeout > 0 && current.isAlive()) {
+            long phase = System.nanoTime();
+            stdin.send(stopCommand);
+            boolean exited = await(List.of(current.toHandle()), stopTimeout);
+            logger.info(
+                "Shutdown: '" + stopCommand + "' " + (exited ? "stopped the " : "did not stop the ") + label + " after " +
+                elapsedMillis(phase) + " ms."
+            );
+        }
+
+        alive = alive(current, tree);
+        if (!alive.isEmpty()) {
+            long phase = System.nanoTime();
+            alive.forEach(ProcessHandle::destroy);
+            boolean exited = await(alive, termTimeout);
+            logger.info(
+                "Shutdown: SIGTERM to " + alive.size() + " processes, " + (exited ? "all exited" : "some still running") +
+                " after " + elapsedMillis(phase) + " ms."
+            );
+        }
+
+        alive = alive(current, tree);
+        if (!alive.isEmpty()) {
+            long phase = System.nanoTime();
+            alive.forEach(ProcessHandle::destroyForcibly);
+            boolean exited = await(alive, KILL_WAIT_MILLIS);
+            logger.warning(
+                "Shutdown: SIGKILL to " + alive.size() + " processes, " + (exited ? "all exited" : "some still running") +
+                " after " + elapsedMillis(phase) + " ms."
+            );
+        }
+        logger.info("Shutdown of the " + label + " and its processes took " + elapsedMillis(start) + " ms.");
+    }
+
+    // Processes that leave the tree when their parent dies are remembered from earlier snapshots.
+    // With setsid, anything still in the child's session counts too, even after being reparented.
+    private void collect(Process root, Set<ProcessHandle> tree) {
+        tree.add(root.toHandle());
+        root.descendants().forEach(tree::add);
+        if (setsid != null) {
+            long session = root.pid();
+            ProcessHandle.allProcesses().filter(p -> sessionOf(p.pid()) == session).forEach(tree::add);
+        }
+    }
+
+    private static long sessionOf(long pid) {
+        try {
+            String stat = new String(Files.readAllBytes(Path.of("/proc/" + pid + "/stat")), StandardCharsets.US_ASCII);
+            // pid (comm) state ppid pgrp session ...
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Long.parseLong(fields[3]);
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private List<ProcessHandle> alive(Process root, Set<ProcessHandle> tree) {
+        collect(root, tree);
+        List<ProcessHandle> alive = new ArrayList<>();
+        for (ProcessHandle handle : tree) {
+            if (handle.isAlive()) {
+                alive.add(handle);
+            }
+        }
+        return alive;
+    }
+
+    private static boolean await(List<ProcessHandle> handles, long timeoutMillis) {
+        CompletableFuture<?>[] exits = handles.stream().map(ProcessHandle::onExit).toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(exits).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static long elapsedMillis(long sinceNanos) {
+        return (System.nanoTime() - sinceNanos) / 1_000_000;
+    }
+}
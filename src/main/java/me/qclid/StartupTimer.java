@@ -0,0 +1,83 @@
+package me.qclid;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Times AnyJar's own startup, from the JVM launching it to the first child process being started,
+ * split into the phases Main marks on the way. Marks are always taken (they cost a nanoTime each);
+ * the breakdown is only logged when startup-timing is on.
+ */
+public final class StartupTimer {
+
+    private static final Logger logger = Logger.getLogger(StartupTimer.class.getName());
+
+    // Guarded by the class
+    private static long startNanos;
+    private static long startMillis;
+    private static long lastNanos;
+    private static final List<String> phases = new ArrayList<>();
+    private static final List<Long> durations = new ArrayList<>();
+    private static boolean enabled;
+    private static boolean reported;
+
+    private StartupTimer() {}
+
+    /**
+     * Starts the clock; called first thing in main.
+     */
+    public static synchronized void start() {
+        startNanos = System.nanoTime();
+        startMillis = System.currentTimeMillis();
+        lastNanos = startNanos;
+    }
+
+    /**
+     * Ends a phase that began at the previous mark.
+     * @param phase What happened since then, e.g. "config"
+     */
+    public static synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        phases.add(phase);
+        durations.add(now - lastNanos);
+        lastNanos = now;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        StartupTimer.enabled = enabled;
+    }
+
+    /**
+     * Logs the breakdown once, right after the first child process has been started.
+     * @param label Which process it was
+     */
+    public static synchronized void launched(String label) {
+        if (reported || startNanos == 0) {
+            return;
+        }
+        reported = true;
+        mark("launch");
+        if (!enabled) {
+            return;
+        }
+        // The process start time only has clock-tick precision, hence the "about"
+        String jvm = ProcessHandle.current()
+            .info()
+            .startInstant()
+            .map(started -> "JVM to main about " + Math.max(0, startMillis - started.toEpochMilli()) + " ms, ")
+            .orElse("");
+        StringBuilder breakdown = new StringBuilder();
+        for (int i = 0; i < phases.size(); i++) {
+            breakdown.append(i == 0 ? "" : ", ").append(phases.get(i)).append(' ').append(formatMillis(durations.get(i)));
+        }
+        logger.info(
+            "Startup: " + jvm + "main to starting the " + label + " " + formatMillis(lastNanos - startNanos) +
+            " (" + breakdown + ")."
+        );
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.1f ms", nanos / 1e6);
+    }
+}
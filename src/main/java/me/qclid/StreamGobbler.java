@@ -0,0 +1,98 @@
+package me.qclid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Drains a child process stream at the byte level.
+ * Bytes are read into a reusable buffer and split on newlines in place, so listeners
+ * see each line as a slice of that buffer without any decoding or per-line allocation.
+ */
+public class StreamGobbler implements Runnable {
+
+    private static final int INITIAL_BUFFER = 64 * 1024;
+    private static final int MAX_LINE = 1024 * 1024;
+
+    /**
+     * Receives every line the child prints. The slice is only valid for the duration of the call.
+     */
+    public interface LineListener {
+        void onLine(byte[] buffer, int offset, int length);
+
+        /**
+         * Called after each read once all complete lines in it were delivered.
+         */
+        default void flush() {}
+    }
+
+    private final InputStream inputStream;
+    private final List<LineListener> listeners;
+
+    public StreamGobbler(InputStream inputStream, List<LineListener> listeners) {
+        this.inputStream = inputStream;
+        this.listeners = listeners;
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[INITIAL_BUFFER];
+        int filled = 0;
+        int scanned = 0;
+        try {
+            int read;
+            while ((read = inputStream.read(buffer, filled, buffer.length - filled)) != -1) {
+                filled += read;
+                int lineStart = 0;
+                for (int i = scanned; i < filled; i++) {
+                    if (buffer[i] == '\n') {
+                        emit(buffer, lineStart, i);
+                        lineStart = i + 1;
+                    }
+                }
+
+                // Keep the partial line at the front of the buffer for the next read
+                if (lineStart > 0) {
+                    System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+                    filled -= lineStart;
+                } else if (filled == buffer.length) {
+                    if (buffer.length < MAX_LINE) {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    } else {
+                        // Give up on finding a newline and split the line
+                        emit(buffer, 0, filled);
+                        filled = 0;
+                    }
+                }
+                scanned = filled;
+
+                if (inputStream.available() == 0) {
+                    flushListeners();
+                }
+            }
+            if (filled > 0) {
+                emit(buffer, 0, filled);
+            }
+        } catch (IOException e) {
+            // Stream closed underneath us, usually because the child exited
+        } finally {
+            flushListeners();
+        }
+    }
+
+    private void emit(byte[] buffer, int start, int end) {
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        for (LineListener listener : listeners) {
+            listener.onLine(buffer, start, end - start);
+        }
+    }
+
+    private void flushListeners() {
+        for (LineListener listener : listeners) {
+            listener.flush();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package me.qclid;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Decides whether and when the server is relaunched after it exits.
+ * Restarts back off exponentially with jitter, the backoff starts over once a run has been
+ * stable for a while, and restarting stops altogether when the server keeps exiting within
+ * the crash-loop window. Also tracks how long the server was down for each restart.
+ */
+public class Supervisor implements Metrics.Collector {
+
+    private static final Logger logger = Logger.getLogger(Supervisor.class.getName());
+
+    private enum Policy {
+        ALWAYS,
+        ON_FAILURE,
+        NEVER,
+    }
+
+    private final String label;
+    private final Policy policy;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double jitter;
+    private final long stableAfter;
+    private final int crashLoopLimit;
+    private final long crashLoopWindow;
+
+    // Guarded by this
+    private final ArrayDeque<Long> recentExits = new ArrayDeque<>();
+    private int consecutive;
+    private long exitNanos;
+    private long launchNanos;
+    private boolean waitingForReady;
+    private volatile boolean stopRequested;
+    private volatile boolean running;
+
+    private final AtomicLong launches = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong crashLoops = new AtomicLong();
+    private volatile long lastLaunchRecoveryNanos;
+    private volatile long maxLaunchRecoveryNanos;
+    private volatile long lastReadyRecoveryNanos;
+    private volatile long maxReadyRecoveryNanos;
+
+    /**
+     * @param config The restart section of the configuration
+     * @param label What to call the process in log messages, e.g. "server"
+     */
+    public Supervisor(RestartConfig config, String label) {
+        this.label = label;
+        this.policy = parsePolicy(config.getPolicy(), label);
+        this.initialBackoff = Math.max(0, Units.parseMillis(config.getInitialBackoff()));
+        this.maxBackoff = Math.max(initialBackoff, Units.parseMillis(config.getMaxBackoff()));
+        this.jitter = Math.min(1, Math.max(0, config.getJitter()));
+        this.stableAfter = Units.parseMillis(config.getStableAfter());
+        this.crashLoopLimit = config.getCrashLoopLimit();
+        this.crashLoopWindow = Units.parseMillis(config.getCrashLoopWindow());
+    }
+
+    private static Policy parsePolicy(String policy, String label) {
+        switch (policy == null ? "never" : policy.toLowerCase(Locale.ROOT)) {
+            case "always":
+                return Policy.ALWAYS;
+            case "on-failure":
+                return Policy.ON_FAILURE;
+            case "never":
+                return Policy.NEVER;
+            default:
+                logger.warning("Unknown restart policy '" + policy + "', the " + label + " will not be restarted.");
+                return Policy.NEVER;
+        }
+    }
+
+    /**
+     * Stops any further restarts, e.g. because AnyJar is shutting down or someone typed "stop".
+     */
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    public boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    /**
+     * Records that the child was started.
+     * @param nanos System.nanoTime() right after the launch
+     */
+    public synchronized void onLaunch(long nanos) {
+        launches.incrementAndGet();
+        running = true;
+        launchNanos = nanos;
+        if (exitNanos != 0) {
+            lastLaunchRecoveryNanos = nanos - exitNanos;
+            maxLaunchRecoveryNanos = Math.max(maxLaunchRecoveryNanos, lastLaunchRecoveryNanos);
+            waitingForReady = true;
+        }
+    }
+
+    /**
+     * Records that a relaunched server reported it is ready again, completing its recovery.
+     */
+    public synchronized void onReady() {
+        if (waitingForReady) {
+            waitingForReady = false;
+            lastReadyRecoveryNanos = System.nanoTime() - exitNanos;
+            maxReadyRecoveryNanos = Math.max(maxReadyRecoveryNanos, lastReadyRecoveryNanos);
+            logger.info(
+                String.format(Locale.ROOT, "The %s is ready again %.1f s after it went down.", label, lastReadyRecoveryNanos / 1e9)
+            );
+        }
+    }
+
+    /**
+     * Decides what happens after the child exited.
+     * @param exitCode The child's exit code
+     * @param nanos System.nanoTime() when the exit was noticed
+     * @return Milliseconds to wait before relaunching, or -1 to stop
+     */
+    public synchronized long onExit(int exitCode, long nanos) {
+        running = false;
+        exitNanos = nanos;
+        waitingForReady = false;
+        long uptime = (nanos - launchNanos) / 1_000_000;
+        if (exitCode != 0) {
+            failures.incrementAndGet();
+        }
+
+        if (stopRequested) {
+            return -1;
+        }
+        if (policy == Policy.NEVER || (policy == Policy.ON_FAILURE && exitCode == 0)) {
+            return -1;
+        }
+
+        // Crash-loop detection: too many unplanned exits within the window, on the monotonic clock
+        long now = nanos / 1_000_000;
+        recentExits.addLast(now);
+        while (!recentExits.isEmpty() && now - recentExits.peekFirst() > crashLoopWindow) {
+            recentExits.removeFirst();
+        }
+        if (crashLoopLimit > 0 && recentExits.size() >= crashLoopLimit) {
+            crashLoops.incrementAndGet();
+            logger.severe(
+                "The " + label + " exited " + recentExits.size() + " times within " + crashLoopWindow / 1000 +
+                " s; it looks like a crash loop, so it will not be restarted again."
+            );
+            return -1;
+        }
+
+        consecutive = uptime >= stableAfter ? 1 : consecutive + 1;
+        long delay = initialBackoff;
+        for (int i = 1; i < consecutive && delay < maxBackoff; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxBackoff);
+        if (jitter > 0 && delay > 0) {
+            delay = Math.round(delay * (1 - jitter + 2 * jitter * ThreadLocalRandom.current().nextDouble()));
+        }
+        restarts.incrementAndGet();
+        logger.warning(
+            "The " + label + " exited with code " + exitCode + " after " + uptime / 1000 + " s; restarting in " + delay +
+            " ms (restart " + restarts.get() + ", attempt " + consecutive + " in a row)."
+        );
+        return delay;
+    }
+
+    public long getRestarts() {
+        return restarts.get();
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.gauge("anyjar_child_up", "1 while the server process is running");
+        out.sample("anyjar_child_up", running ? 1 : 0);
+        out.counter("anyjar_child_launches_total", "Times the server process was started");
+        out.sample("anyjar_child_launches_total", launches.get());
+        out.counter("anyjar_child_failures_total", "Server exits with a non-zero exit code");
+        out.sample("anyjar_child_failures_total", failures.get());
+        out.counter("anyjar_restarts_total", "Automatic restarts");
+        out.sample("anyjar_restarts_total", restarts.get());
+        out.counter("anyjar_restart_crash_loops_total", "Times restarting was given up because of a crash loop");
+        out.sample("anyjar_restart_crash_loops_total", crashLoops.get());
+        out.gauge("anyjar_restart_recovery_seconds", "Time from an exit until the server was relaunched or ready again");
+        out.sample("anyjar_restart_recovery_seconds", new String[] { "stage", "launch", "stat", "last" }, lastLaunchRecoveryNanos / 1e9);
+        out.sample("anyjar_restart_recovery_seconds", new String[] { "stage", "launch", "stat", "max" }, maxLaunchRecoveryNanos / 1e9);
+        out.sample("anyjar_restart_recovery_seconds", new String[] { "stage", "ready", "stat", "last" }, lastReadyRecoveryNanos / 1e9);
+        out.sample("anyjar_restart_recovery_seconds", new String[] { "stage", "ready", "stat", "max" }, maxReadyRecoveryNanos / 1e9);
+    }
+}
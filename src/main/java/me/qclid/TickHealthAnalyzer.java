@@ -0,0 +1,223 @@
+package me.qclid;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks Minecraft server health from its console output: "Can't keep up!" lag warnings,
+ * watchdog dumps, GC/out-of-memory warnings and players joining and leaving.
+ * All markers are found in one pass over each line's bytes with an {@link AhoCorasick} automaton,
+ * so there is no regex backtracking and nothing is allocated per line.
+ */
+public class TickHealthAnalyzer implements StreamGobbler.LineListener, Metrics.Collector {
+
+    private static final byte[] CANT_KEEP_UP = Bytes.ascii("Can't keep up!");
+    private static final byte[] RUNNING = Bytes.ascii("Running ");
+    private static final byte[] MS_OR = Bytes.ascii("ms or ");
+    private static final byte[] WATCHDOG = Bytes.ascii("The server has stopped responding!");
+    private static final byte[] SINGLE_TICK = Bytes.ascii("A single server tick took");
+    private static final byte[] OOM = Bytes.ascii("java.lang.OutOfMemoryError");
+    private static final byte[] GC_OVERHEAD = Bytes.ascii("GC overhead limit exceeded");
+    private static final byte[] GC_WARNING = Bytes.ascii("][warning][gc");
+    private static final byte[] JOINED = Bytes.ascii(" joined the game");
+    private static final byte[] LEFT = Bytes.ascii(" left the game");
+    private static final byte[] PLAYERS_ONLINE = Bytes.ascii("There are ");
+
+    // Marker bits, in the order the patterns are compiled
+    private static final int LAG = 1;
+    private static final int JOIN = 1 << 1;
+    private static final int LEAVE = 1 << 2;
+    private static final int LIST = 1 << 3;
+    private static final int STALL = 1 << 4 | 1 << 5;
+    private static final int OUT_OF_MEMORY = 1 << 6;
+    private static final int GC = 1 << 7 | 1 << 8;
+    private static final AhoCorasick MARKERS = new AhoCorasick(
+        Arrays.asList(CANT_KEEP_UP, JOINED, LEFT, PLAYERS_ONLINE, WATCHDOG, SINGLE_TICK, OOM, GC_OVERHEAD, GC_WARNING)
+    );
+
+    /** Upper bounds of the ticks-behind histogram buckets; the last bucket is +Inf. */
+    private static final long[] TICK_BUCKETS = { 1, 2, 5, 10, 20, 50, 100, 200, 500 };
+    static final int RECENT_LAG_EVENTS = 64;
+
+    private final AtomicLong lagEvents = new AtomicLong();
+    private final AtomicLong msBehindTotal = new AtomicLong();
+    private final AtomicLong ticksBehindTotal = new AtomicLong();
+    private final AtomicLongArray tickBuckets = new AtomicLongArray(TICK_BUCKETS.length + 1);
+    private final AtomicLong watchdogEvents = new AtomicLong();
+    private final AtomicLong gcWarnings = new AtomicLong();
+    private final AtomicLong outOfMemoryErrors = new AtomicLong();
+    private final AtomicLong joins = new AtomicLong();
+    private final AtomicLong leaves = new AtomicLong();
+    private final AtomicLong online = new AtomicLong();
+    private final AtomicLong peakOnline = new AtomicLong();
+    private volatile long lastLagMillis;
+
+    // Timestamps of the most recent lag events, for "N events within a window" checks; guarded by lagLock
+    private final Object lagLock = new Object();
+    private long[] recentLag = new long[RECENT_LAG_EVENTS];
+    private int recentLagNext;
+
+    // The current line's markers and where the first of each ended. The stdout and stderr readers,
+    // and a previous run's reader still draining, may call onLine at once, so it holds the lock.
+    private int matched;
+    private final int[] markerEnds = new int[9];
+    private final AhoCorasick.MatchHandler marker = (id, end) -> {
+        if ((matched & 1 << id) == 0) {
+            matched |= 1 << id;
+            markerEnds[id] = end;
+        }
+    };
+
+    @Override
+    public synchronized void onLine(byte[] line, int offset, int length) {
+        matched = 0;
+        MARKERS.scan(line, offset, length, marker);
+        if (matched == 0) {
+            return;
+        }
+        if ((matched & LAG) != 0) {
+            onLag(line, markerEnds[0], offset + length);
+        } else if ((matched & JOIN) != 0) {
+            joins.incrementAndGet();
+            long now = online.incrementAndGet();
+            peakOnline.accumulateAndGet(now, Math::max);
+        } else if ((matched & LEAVE) != 0) {
+            leaves.incrementAndGet();
+            online.updateAndGet(n -> Math.max(0, n - 1));
+        } else if ((matched & LIST) != 0) {
+            // Output of "list": "There are 3 of a max of 20 players online"
+            long count = Bytes.parseLong(line, markerEnds[3], offset + length);
+            if (count >= 0) {
+                online.set(count);
+                peakOnline.accumulateAndGet(count, Math::max);
+            }
+        } else if ((matched & STALL) != 0) {
+            watchdogEvents.incrementAndGet();
+        } else if ((matched & OUT_OF_MEMORY) != 0) {
+            outOfMemoryErrors.incrementAndGet();
+        } else if ((matched & GC) != 0) {
+            gcWarnings.incrementAndGet();
+        }
+    }
+
+    private void onLag(byte[] line, int from, int end) {
+        long now = System.currentTimeMillis();
+        lagEvents.incrementAndGet();
+        lastLagMillis = now;
+        synchronized (lagLock) {
+            recentLag[recentLagNext] = now;
+            recentLagNext = (recentLagNext + 1) % recentLag.length;
+        }
+
+        // "Running 2034ms or 40 ticks behind"
+        int running = Bytes.indexOf(line, from, end - from, RUNNING);
+        if (running < 0) {
+            return;
+        }
+        int msStart = running + RUNNING.length;
+        long ms = Bytes.parseLong(line, msStart, end);
+        int or = Bytes.indexOf(line, msStart, end - msStart, MS_OR);
+        long ticks = or < 0 ? -1 : Bytes.parseLong(line, or + MS_OR.length, end);
+        if (ms >= 0) {
+            msBehindTotal.addAndGet(ms);
+        }
+        if (ticks >= 0) {
+            ticksBehindTotal.addAndGet(ticks);
+            int bucket = 0;
+            while (bucket < TICK_BUCKETS.length && ticks > TICK_BUCKETS[bucket]) {
+                bucket++;
+            }
+            tickBuckets.incrementAndGet(bucket);
+        }
+    }
+
+    /**
+     * Makes sure at least this many recent lag events are remembered, for a check that needs more
+     * than the default {@value #RECENT_LAG_EVENTS}.
+     * @param count The number of events
+     */
+    public void rememberLagEvents(int count) {
+        synchronized (lagLock) {
+            if (count <= recentLag.length) {
+                return;
+            }
+            // Oldest first, so the ring carries on overwriting in order
+            long[] grown = new long[count];
+            for (int i = 0; i < recentLag.length; i++) {
+                grown[i] = recentLag[(recentLagNext + i) % recentLag.length];
+            }
+            recentLagNext = recentLag.length;
+            recentLag = grown;
+        }
+    }
+
+    /**
+     * Counts "Can't keep up!" warnings seen since the given time.
+     * Only the most recent {@value #RECENT_LAG_EVENTS} events are remembered, unless more were asked for.
+     * @param sinceMillis Epoch milliseconds
+     * @return The number of lag events at or after that time
+     */
+    public int lagEventsSince(long sinceMillis) {
+        int count = 0;
+        synchronized (lagLock) {
+            for (long time : recentLag) {
+                if (time != 0 && time >= sinceMillis) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public long getLagEvents() {
+        return lagEvents.get();
+    }
+
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public long getOutOfMemoryErrors() {
+        return outOfMemoryErrors.get();
+    }
+
+    public long getOnlinePlayers() {
+        return online.get();
+    }
+
+    @Override
+    public void collect(Metrics.Writer out) {
+        out.counter("anyjar_server_lag_events_total", "\"Can't keep up!\" warnings");
+        out.sample("anyjar_server_lag_events_total", lagEvents.get());
+        out.counter("anyjar_server_lag_behind_ms_total", "Milliseconds behind reported by lag warnings");
+        out.sample("anyjar_server_lag_behind_ms_total", msBehindTotal.get());
+
+        out.histogram("anyjar_server_ticks_behind", "Ticks behind reported by each lag warning");
+        long cumulative = 0;
+        for (int i = 0; i < TICK_BUCKETS.length; i++) {
+            cumulative += tickBuckets.get(i);
+            out.sample("anyjar_server_ticks_behind_bucket", new String[] { "le", Long.toString(TICK_BUCKETS[i]) }, cumulative);
+        }
+        cumulative += tickBuckets.get(TICK_BUCKETS.length);
+        out.sample("anyjar_server_ticks_behind_bucket", new String[] { "le", "+Inf" }, cumulative);
+        out.sample("anyjar_server_ticks_behind_sum", ticksBehindTotal.get());
+        out.sample("anyjar_server_ticks_behind_count", cumulative);
+
+        out.counter("anyjar_server_watchdog_events_total", "Watchdog \"stopped responding\" and long tick reports");
+        out.sample("anyjar_server_watchdog_events_total", watchdogEvents.get());
+        out.counter("anyjar_server_gc_warnings_total", "GC warnings such as \"GC overhead limit exceeded\"");
+        out.sample("anyjar_server_gc_warnings_total", gcWarnings.get());
+        out.counter("anyjar_server_out_of_memory_errors_total", "OutOfMemoryError lines");
+        out.sample("anyjar_server_out_of_memory_errors_total", outOfMemoryErrors.get());
+
+        out.counter("anyjar_server_player_joins_total", "Players joining");
+        out.sample("anyjar_server_player_joins_total", joins.get());
+        out.counter("anyjar_server_player_leaves_total", "Players leaving");
+        out.sample("anyjar_server_player_leaves_total", leaves.get());
+        out.gauge("anyjar_server_players_online", "Players online, from joins/leaves and \"list\" output");
+        out.sample("anyjar_server_players_online", online.get());
+        out.gauge("anyjar_server_players_online_peak", "Most players online at once");
+        out.sample("anyjar_server_players_online_peak", peakOnline.get());
+    }
+}
@@ -0,0 +1,98 @@
+package me.qclid;
+
+import java.util.Locale;
+
+/**
+ * Parses the human-friendly sizes and durations used in server.yml.
+ */
+public final class Units {
+
+    private Units() {}
+
+    /**
+     * Parses a size such as "512K", "100M", "2G" or a plain number of bytes.
+     * @param value The size string
+     * @return The size in bytes
+     */
+    public static long parseBytes(String value) {
+        String s = value.trim().toUpperCase(Locale.ROOT);
+        if (s.endsWith("B")) {
+            s = s.substring(0, s.length() - 1);
+        }
+        long multiplier = 1;
+        char unit = s.isEmpty() ? ' ' : s.charAt(s.length() - 1);
+        switch (unit) {
+            case 'K':
+                multiplier = 1024L;
+                break;
+            case 'M':
+                multiplier = 1024L * 1024;
+                break;
+            case 'G':
+                multiplier = 1024L * 1024 * 1024;
+                break;
+            case 'T':
+                multiplier = 1024L * 1024 * 1024 * 1024;
+                break;
+            default:
+                break;
+        }
+        if (multiplier != 1) {
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return (long) (Double.parseDouble(s.trim()) * multiplier);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid size: " + value);
+        }
+    }
+
+    /**
+     * Parses a duration such as "250ms", "30s", "5m", "2h", "1d" or a plain number of seconds.
+     * @param value The duration string
+     * @return The duration in milliseconds
+     */
+    public static long parseMillis(String value) {
+        String s = value.trim().toLowerCase(Locale.ROOT);
+        long multiplier = 1000;
+        if (s.endsWith("ms")) {
+            multiplier = 1;
+            s = s.substring(0, s.length() - 2);
+        } else if (s.endsWith("s")) {
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("m")) {
+            multiplier = 60_000;
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("h")) {
+            multiplier = 3_600_000;
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("d")) {
+            multiplier = 86_400_000;
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return (long) (Double.parseDouble(s.trim()) * multiplier);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid duration: " + value);
+        }
+    }
+
+    /**
+     * Formats a byte count for log messages, e.g. "1.5 GiB".
+     * @param bytes The number of bytes
+     * @return A short human-readable size
+     */
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        String[] units = { "KiB", "MiB", "GiB", "TiB" };
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format(Locale.ROOT, "%.1f %s", value, units[unit]);
+    }
+}
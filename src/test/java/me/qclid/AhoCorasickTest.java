@@ -0,0 +1,83 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class AhoCorasickTest {
+
+    private static List<byte[]> patterns(String... patterns) {
+        List<byte[]> bytes = new ArrayList<>();
+        for (String pattern : patterns) {
+            bytes.add(Bytes.ascii(pattern));
+        }
+        return bytes;
+    }
+
+    private static List<String> matches(AhoCorasick automaton, String text) {
+        List<String> matches = new ArrayList<>();
+        byte[] bytes = Bytes.ascii(text);
+        automaton.scan(bytes, 0, bytes.length, (id, end) -> matches.add(id + "@" + end));
+        return matches;
+    }
+
+    @Test
+    void reportsOverlappingAndNestedMatchesWhereTheyEnd() {
+        AhoCorasick automaton = new AhoCorasick(patterns("he", "she", "his", "hers"));
+        // "ushers": she and he both end at 4 (the longer one first), hers at 6
+        assertEquals(Arrays.asList("1@4", "0@4", "3@6"), matches(automaton, "ushers"));
+    }
+
+    @Test
+    void followsFailureLinksAfterAPartialMatch() {
+        AhoCorasick automaton = new AhoCorasick(patterns("abcd", "bcx"));
+        assertEquals(Arrays.asList("1@5"), matches(automaton, "zabcx"));
+    }
+
+    @Test
+    void scansOnlyTheSlice() {
+        AhoCorasick automaton = new AhoCorasick(patterns("ERROR"));
+        byte[] line = Bytes.ascii("ERROR in ERROR");
+        List<Integer> ends = new ArrayList<>();
+        automaton.scan(line, 1, line.length - 1, (id, end) -> ends.add(end));
+        assertEquals(Arrays.asList(14), ends);
+    }
+
+    @Test
+    void skipsEmptyPatternsAndHandlesNonAsciiBytes() {
+        List<byte[]> patterns = patterns("", "caf");
+        patterns.add(new byte[] { (byte) 0xC3, (byte) 0xA9 });
+        AhoCorasick automaton = new AhoCorasick(patterns);
+        byte[] text = { 'c', 'a', 'f', (byte) 0xC3, (byte) 0xA9 };
+        List<Integer> ids = new ArrayList<>();
+        automaton.scan(text, 0, text.length, (id, end) -> ids.add(id));
+        assertEquals(Arrays.asList(1, 2), ids);
+    }
+
+    @Test
+    void findsTheSameMatchesAsBytesIndexOf() {
+        Random random = new Random(7);
+        String[] words = { "ab", "abab", "ba", "bab", "aa", "b" };
+        AhoCorasick automaton = new AhoCorasick(patterns(words));
+        for (int round = 0; round < 200; round++) {
+            byte[] text = new byte[random.nextInt(30)];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = (byte) (random.nextBoolean() ? 'a' : 'b');
+            }
+            int[] counts = new int[words.length];
+            automaton.scan(text, 0, text.length, (id, end) -> counts[id]++);
+            for (int id = 0; id < words.length; id++) {
+                byte[] word = Bytes.ascii(words[id]);
+                int expected = 0;
+                for (int from = 0; (from = Bytes.indexOf(text, from, text.length - from, word)) >= 0; from++) {
+                    expected++;
+                }
+                assertEquals(expected, counts[id], words[id] + " in " + new String(text));
+            }
+        }
+    }
+}
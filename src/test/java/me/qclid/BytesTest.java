@@ -0,0 +1,39 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class BytesTest {
+
+    private static final byte[] LINE = Bytes.ascii("[12:00:00 INFO]: Done (3.2s)!");
+
+    @Test
+    void findsPatternInsideTheSliceOnly() {
+        assertEquals(17, Bytes.indexOf(LINE, 0, LINE.length, Bytes.ascii("Done")));
+        assertEquals(-1, Bytes.indexOf(LINE, 0, 20, Bytes.ascii("Done")));
+        assertEquals(-1, Bytes.indexOf(LINE, 18, LINE.length - 18, Bytes.ascii("Done")));
+        assertEquals(LINE.length - 1, Bytes.indexOf(LINE, 0, LINE.length, Bytes.ascii("!")));
+    }
+
+    @Test
+    void emptyPatternMatchesAtTheStartOfTheSlice() {
+        assertEquals(5, Bytes.indexOf(LINE, 5, 3, new byte[0]));
+        assertTrue(Bytes.contains(LINE, 0, 0, new byte[0]));
+    }
+
+    @Test
+    void patternLongerThanTheSliceNeverMatches() {
+        assertFalse(Bytes.contains(LINE, 0, 3, Bytes.ascii("[12:")));
+    }
+
+    @Test
+    void parsesDigitsUntilTheFirstNonDigit() {
+        byte[] text = Bytes.ascii("took 1234ms");
+        assertEquals(1234, Bytes.parseLong(text, 5, text.length));
+        assertEquals(12, Bytes.parseLong(text, 5, 7));
+        assertEquals(-1, Bytes.parseLong(text, 0, text.length));
+    }
+}
@@ -0,0 +1,44 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class CommandSchedulerTest {
+
+    private static ScheduledCommand command(String command, String every, String cron, String after) {
+        ScheduledCommand config = new ScheduledCommand();
+        config.setCommand(command);
+        config.setEvery(every);
+        config.setCron(cron);
+        config.setAfter(after);
+        return config;
+    }
+
+    @Test
+    void acceptsOneKindOfScheduleEach() {
+        assertDoesNotThrow(() ->
+            new CommandScheduler(
+                Arrays.asList(
+                    command("save-all", "30m", null, null),
+                    command("say Restarting soon", null, "55 3 * * *", null),
+                    command("@lobby gamerule doDaylightCycle false", null, null, "Done (")
+                )
+            )
+        );
+    }
+
+    @Test
+    void rejectsInvalidEntries() {
+        assertThrows(IllegalArgumentException.class, () -> new CommandScheduler(Arrays.asList(command(" ", "30m", null, null))));
+        assertThrows(IllegalArgumentException.class, () -> new CommandScheduler(Arrays.asList(command("save-all", null, null, null))));
+        assertThrows(IllegalArgumentException.class, () ->
+            new CommandScheduler(Arrays.asList(command("save-all", "30m", "0 * * * *", null)))
+        );
+        assertThrows(IllegalArgumentException.class, () -> new CommandScheduler(Arrays.asList(command("save-all", "500ms", null, null))));
+        // An empty after would match every line
+        assertThrows(IllegalArgumentException.class, () -> new CommandScheduler(Arrays.asList(command("save-all", null, null, ""))));
+    }
+}
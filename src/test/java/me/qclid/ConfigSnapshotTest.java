@@ -0,0 +1,97 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ConfigSnapshotTest {
+
+    private static final String BUILD = "1234:5678";
+
+    @TempDir
+    Path directory;
+
+    private File config() throws Exception {
+        File config = directory.resolve("server.yml").toFile();
+        ConfigManager.createDefaultConfig(config);
+        return config;
+    }
+
+    private File snapshot(File config, ServerConfig loaded) {
+        File snapshot = directory.resolve("cache/config.snapshot").toFile();
+        ConfigSnapshot.write(ConfigSnapshot.serialize(config, loaded, BUILD), snapshot);
+        return snapshot;
+    }
+
+    @Test
+    void readsBackWhatWasLoaded() throws Exception {
+        File config = config();
+        ServerConfig loaded = ConfigManager.loadConfig(config);
+        loaded.setRamMax("6G");
+        loaded.getLogging().setMaxFiles(7);
+        File snapshot = snapshot(config, loaded);
+
+        ServerConfig read = ConfigSnapshot.read(config, snapshot, BUILD);
+        assertNotNull(read);
+        assertEquals("6G", read.getRamMax());
+        assertEquals(7, read.getLogging().getMaxFiles());
+        assertEquals(loaded.toString(), read.toString());
+        assertEquals(loaded.getFilters().size(), read.getFilters().size());
+    }
+
+    @Test
+    void keepsTheConfigurationAsItWasWhenSerialized() throws Exception {
+        File config = config();
+        ServerConfig loaded = ConfigManager.loadConfig(config);
+        byte[] bytes = ConfigSnapshot.serialize(config, loaded, BUILD);
+        // Whatever happens to the live configuration afterwards does not end up in the file
+        loaded.setRamMax("3G");
+        File snapshot = directory.resolve("config.snapshot").toFile();
+        ConfigSnapshot.write(bytes, snapshot);
+        assertEquals("1G", ConfigSnapshot.read(config, snapshot, BUILD).getRamMax());
+    }
+
+    @Test
+    void survivesATouchButNotAnEdit() throws Exception {
+        File config = config();
+        File snapshot = snapshot(config, ConfigManager.loadConfig(config));
+
+        config.setLastModified(config.lastModified() - 60_000);
+        assertNotNull(ConfigSnapshot.read(config, snapshot, BUILD));
+
+        // Same size, different contents
+        byte[] text = Files.readAllBytes(config.toPath());
+        int at = new String(text, StandardCharsets.UTF_8).indexOf("ram-max: ") + "ram-max: ".length();
+        text[at] = (byte) (text[at] == '9' ? '8' : '9');
+        Files.write(config.toPath(), text);
+        config.setLastModified(config.lastModified() - 120_000);
+        assertNull(ConfigSnapshot.read(config, snapshot, BUILD));
+    }
+
+    @Test
+    void refusesAnotherSizeBuildOrABrokenFile() throws Exception {
+        File config = config();
+        File snapshot = snapshot(config, ConfigManager.loadConfig(config));
+
+        assertNull(ConfigSnapshot.read(config, snapshot, "1234:9999"));
+        assertNull(ConfigSnapshot.read(config, snapshot, null));
+        assertNull(ConfigSnapshot.read(config, directory.resolve("missing").toFile(), BUILD));
+
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        Files.write(snapshot.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+        assertNull(ConfigSnapshot.read(config, snapshot, BUILD));
+
+        snapshot = snapshot(config, ConfigManager.loadConfig(config));
+        Files.write(config.toPath(), "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertNull(ConfigSnapshot.read(config, snapshot, BUILD));
+    }
+}
@@ -0,0 +1,71 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import org.junit.jupiter.api.Test;
+
+class CronScheduleTest {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    // 2024-05-01 was a Wednesday
+    private static ZonedDateTime at(int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(2024, month, day, hour, minute, 0, 0, UTC);
+    }
+
+    private static ZonedDateTime next(String expression, ZonedDateTime after) {
+        return new CronSchedule(expression).next(after);
+    }
+
+    @Test
+    void firesStrictlyAfterTheGivenMinute() {
+        assertEquals(at(5, 1, 3, 55), next("55 3 * * *", at(5, 1, 3, 54)));
+        assertEquals(at(5, 2, 3, 55), next("55 3 * * *", at(5, 1, 3, 55)));
+        assertEquals(at(5, 1, 12, 1), next("* * * * *", at(5, 1, 12, 0).plusSeconds(30)));
+    }
+
+    @Test
+    void followsRangesListsAndSteps() {
+        assertEquals(at(5, 1, 12, 10), next("*/10 * * * *", at(5, 1, 12, 0)));
+        assertEquals(at(5, 1, 12, 25), next("5/20 * * * *", at(5, 1, 12, 5)));
+        assertEquals(at(5, 1, 10, 0), next("0 8-18/2 * * *", at(5, 1, 8, 0)));
+        assertEquals(at(5, 2, 8, 0), next("0 8-18/2 * * *", at(5, 1, 18, 0)));
+        assertEquals(at(5, 15, 0, 0), next("0 0 1,15 * *", at(5, 1, 0, 0)));
+    }
+
+    @Test
+    void crossesMonthAndYearEnds() {
+        assertEquals(at(6, 1, 0, 0), next("@monthly", at(5, 31, 23, 59)));
+        assertEquals(ZonedDateTime.of(2025, 1, 1, 0, 0, 0, 0, UTC), next("0 0 1 1 *", at(5, 1, 0, 0)));
+        assertEquals(ZonedDateTime.of(2028, 2, 29, 6, 0, 0, 0, UTC), next("0 6 29 2 *", at(3, 1, 0, 0)));
+    }
+
+    @Test
+    void matchesEitherDayWhenBothAreRestricted() {
+        // The 10th or any Sunday, whichever comes first
+        assertEquals(at(5, 5, 0, 0), next("0 0 10 * 0", at(5, 1, 0, 0)));
+        assertEquals(at(5, 10, 0, 0), next("0 0 10 * 7", at(5, 6, 0, 0)));
+        // With a star for the day of month only the weekday counts
+        assertEquals(at(5, 6, 0, 0), next("0 0 * * 1-5", at(5, 3, 0, 0)));
+        assertEquals(at(5, 5, 0, 0), next("@weekly", at(5, 1, 0, 0)));
+    }
+
+    @Test
+    void returnsNullWhenNothingEverMatches() {
+        assertNull(next("0 0 31 2 *", at(5, 1, 0, 0)));
+    }
+
+    @Test
+    void rejectsInvalidExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("* * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("60 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("0 18-8 * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("*/0 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("/10 * * * *"));
+        assertThrows(IllegalArgumentException.class, () -> new CronSchedule("1,/10 * * * *"));
+    }
+}
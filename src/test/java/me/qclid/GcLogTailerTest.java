@@ -0,0 +1,71 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GcLogTailerTest {
+
+    @TempDir
+    Path directory;
+
+    private GcLogTailer tailer() {
+        GcLogConfig config = new GcLogConfig();
+        config.setDirectory(directory.toString());
+        config.setWindow("5m");
+        config.setPauseWarning("50ms");
+        return new GcLogTailer(config, null, "server");
+    }
+
+    private static String scrape(GcLogTailer tailer) {
+        Metrics metrics = new Metrics();
+        metrics.register(tailer);
+        return metrics.scrape(-1);
+    }
+
+    @Test
+    void asksForThePlainGcTagWithWallClockTimes() {
+        String flag = tailer().jvmFlag();
+        assertTrue(flag.startsWith("-Xlog:gc:file="), flag);
+        assertTrue(flag.contains(":uptime,timemillis,level,tags:"), flag);
+    }
+
+    @Test
+    void readsPausesHeapAndAllocation() {
+        GcLogTailer tailer = tailer();
+        long now = System.currentTimeMillis();
+        tailer.onLine("[1.000s][" + (now - 2000) + "ms][info][gc] Using G1");
+        tailer.onLine("[1.000s][" + (now - 2000) + "ms][info][gc] GC(0) Pause Young (Normal) (G1 Evacuation Pause) 100M->20M(512M) 10.000ms");
+        tailer.onLine("[2.000s][" + (now - 1000) + "ms][info][gc] GC(1) Pause Young (Normal) (G1 Evacuation Pause) 120M->30M(512M) 30.000ms");
+        String metrics = scrape(tailer);
+        assertTrue(metrics.contains("anyjar_gc_pauses_total 2\n"), metrics);
+        assertTrue(metrics.contains("anyjar_gc_pause_max_seconds 0.0300000\n"), metrics);
+        assertTrue(metrics.contains("anyjar_gc_heap_after_bytes " + 30L * 1024 * 1024 + "\n"), metrics);
+        assertTrue(metrics.contains("anyjar_gc_heap_committed_bytes " + 512L * 1024 * 1024 + "\n"), metrics);
+        // 100M allocated between the two collections, one second apart
+        assertTrue(metrics.contains("anyjar_gc_allocated_bytes_total " + 100L * 1024 * 1024 + "\n"), metrics);
+        assertTrue(metrics.contains("anyjar_gc_allocation_rate_bytes " + 100L * 1024 * 1024 + "\n"), metrics);
+    }
+
+    @Test
+    void placesPausesAtTheTimeInTheLine() {
+        GcLogTailer tailer = tailer();
+        long now = System.currentTimeMillis();
+        // Written an hour ago and only read now: outside the five minute window
+        tailer.onLine("[1.000s][" + (now - 3_600_000) + "ms][info][gc] GC(0) Pause Full (System.gc()) 50M->10M(64M) 80.000ms");
+        tailer.onLine("[9.000s][" + now + "ms][info][gc] GC(1) Pause Young (Normal) (G1 Evacuation Pause) 20M->12M(64M) 5.000ms");
+        String metrics = scrape(tailer);
+        assertTrue(metrics.contains("anyjar_gc_pauses_total 2\n"), metrics);
+        assertTrue(metrics.contains("anyjar_gc_pause_max_seconds 0.00500000\n"), metrics);
+        assertTrue(metrics.contains("anyjar_gc_slow_pauses_total 1\n"), metrics);
+    }
+
+    @Test
+    void fallsBackToTheReadTimeWithoutTheDecoration() {
+        GcLogTailer tailer = tailer();
+        tailer.onLine("[3.000s][info][gc] GC(4) Pause Remark 40M->40M(64M) 2.000ms");
+        assertTrue(scrape(tailer).contains("anyjar_gc_pause_max_seconds 0.00200000\n"));
+    }
+}
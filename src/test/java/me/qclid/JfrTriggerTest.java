@@ -0,0 +1,37 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JfrTriggerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void prunesOnlyItsOwnRecordings() throws Exception {
+        Path oldest = Files.write(directory.resolve("lobby-2024-01-01_00-00-00-lag.jfr"), new byte[10]);
+        Path middle = Files.write(directory.resolve("lobby-2024-01-02_00-00-00-cpu.jfr"), new byte[10]);
+        Path newest = Files.write(directory.resolve("lobby-2024-01-03_00-00-00-memory.jfr"), new byte[10]);
+        Path others = Files.write(directory.resolve("hub-2023-01-01_00-00-00-lag.jfr"), new byte[10]);
+        Path lookalike = Files.write(directory.resolve("lobby-2-2023-01-01_00-00-00-lag.jfr"), new byte[10]);
+        Path manual = Files.write(directory.resolve("profile.jfr"), new byte[10]);
+
+        JfrConfig config = new JfrConfig();
+        config.setDirectory(directory.toString());
+        config.setMaxRecordings(2);
+        new JfrTrigger(config, "lobby", "lobby", new TickHealthAnalyzer(), null);
+
+        assertFalse(Files.exists(oldest));
+        assertTrue(Files.exists(middle));
+        assertTrue(Files.exists(newest));
+        assertTrue(Files.exists(others));
+        assertTrue(Files.exists(lookalike));
+        assertTrue(Files.exists(manual));
+    }
+}
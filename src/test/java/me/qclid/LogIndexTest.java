@@ -0,0 +1,80 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogIndexTest {
+
+    @TempDir
+    Path directory;
+
+    private static long epoch(int hour, int minute, int second) {
+        return LocalDateTime.of(2024, 5, 1, hour, minute, second).atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    private static long parse(String line) {
+        byte[] padded = Bytes.ascii("x" + line);
+        return LogIndex.parseSecond(padded, 1, padded.length - 1);
+    }
+
+    @Test
+    void parsesTheTimestampAtTheStartOfALine() {
+        assertEquals(epoch(14, 2, 30), parse("2024-05-01 14:02:30 [INFO] Done"));
+        assertEquals(epoch(0, 0, 0), parse("2024-05-01 00:00:00"));
+    }
+
+    @Test
+    void rejectsLinesWithoutAValidTimestamp() {
+        assertEquals(-1, parse("    at me.qclid.Main.main(Main.java:42)"));
+        assertEquals(-1, parse("2024-05-01 14:02"));
+        assertEquals(-1, parse("2024-05-01 1a:02:30 [INFO]"));
+        assertEquals(-1, parse("2024-13-01 14:02:30 [INFO]"));
+        assertEquals(-1, parse("2024-02-30 14:02:30 [INFO]"));
+    }
+
+    @Test
+    void seeksToTheLastEntryBeforeTheTime() {
+        long[] entries = { 100, 0, 200, 4096, 200, 8192, 300, 12288 };
+        assertEquals(0, LogIndex.seek(entries, 50));
+        assertEquals(0, LogIndex.seek(entries, 100));
+        assertEquals(0, LogIndex.seek(entries, 150));
+        // Both entries for second 200 are at or after it, so start before them
+        assertEquals(0, LogIndex.seek(entries, 200));
+        assertEquals(8192, LogIndex.seek(entries, 250));
+        assertEquals(12288, LogIndex.seek(entries, 1000));
+        assertEquals(0, LogIndex.seek(new long[0], 1000));
+    }
+
+    @Test
+    void writesAndReadsBackEntries() throws Exception {
+        File index = directory.resolve("segment.txt.idx").toFile();
+        try (LogIndex.Writer writer = new LogIndex.Writer(index, false)) {
+            writer.add(100, 0);
+            writer.add(200, 65536);
+        }
+        try (LogIndex.Writer writer = new LogIndex.Writer(index, true)) {
+            writer.add(300, 1L << 40);
+        }
+        assertEquals(3 * LogIndex.ENTRY, Files.size(index.toPath()));
+        assertEquals(6, LogIndex.read(index).length);
+        assertEquals(1L << 40, LogIndex.read(index)[5]);
+        assertEquals(100, LogIndex.firstSecond(index));
+    }
+
+    @Test
+    void treatsAMissingOrTruncatedIndexAsNone() throws Exception {
+        File index = directory.resolve("segment.txt.idx").toFile();
+        assertEquals(-1, LogIndex.firstSecond(index));
+        assertEquals(0, LogIndex.read(index).length);
+        Files.write(index.toPath(), new byte[LogIndex.ENTRY - 1]);
+        assertEquals(-1, LogIndex.firstSecond(index));
+        assertEquals(0, LogIndex.read(index).length);
+    }
+}
@@ -0,0 +1,84 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import org.junit.jupiter.api.Test;
+
+class LogPipelineTest {
+
+    @Test
+    void nullMessageIsLoggedAsNullNotAsAnOlderRawRecord() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LogPipeline pipeline = new LogPipeline("test", out, 4);
+        byte[] raw = "raw line".getBytes(StandardCharsets.UTF_8);
+        // Fill every slot once so each holds stale raw bytes
+        for (int i = 0; i < 4; i++) {
+            pipeline.publish(Level.INFO, raw, 0, raw.length);
+        }
+        pipeline.publish(Level.INFO, (String) null);
+        pipeline.close();
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(6, lines.length);
+        assertTrue(lines[4].endsWith(" INFO: null"), lines[4]);
+        assertTrue(lines[5].contains("Log pipeline 'test' closed: 5 lines"), lines[5]);
+    }
+
+    @Test
+    void recordsPublishedDuringCloseKeepTheirOrder() throws InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LogPipeline pipeline = new LogPipeline("test", out, 16);
+        int perThread = 5_000;
+        Thread[] producers = new Thread[3];
+        for (int t = 0; t < producers.length; t++) {
+            String prefix = "p" + t + " ";
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    byte[] line = (prefix + i).getBytes(StandardCharsets.UTF_8);
+                    pipeline.publish(Level.INFO, line, 0, line.length);
+                }
+            });
+            producers[t].start();
+        }
+        pipeline.close();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        // Late records are written directly; close() is safe to call again
+        pipeline.publish(Level.WARNING, "after close");
+        pipeline.close();
+
+        int[] next = new int[producers.length];
+        int lines = 0;
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            lines++;
+            String message = line.substring(line.indexOf(": ") + 2);
+            if (message.startsWith("p")) {
+                int producer = message.charAt(1) - '0';
+                assertEquals(next[producer]++, Integer.parseInt(message.substring(3)), line);
+            }
+        }
+        for (int count : next) {
+            assertEquals(perThread, count);
+        }
+        assertEquals(producers.length * perThread + 2, lines);
+    }
+
+    @Test
+    void lineRateFallsToZeroWhenTheChildGoesQuiet() throws InterruptedException {
+        LogPipeline pipeline = new LogPipeline("test", new ByteArrayOutputStream(), 64);
+        long end = System.nanoTime() + 1_500_000_000L;
+        while (System.nanoTime() < end) {
+            pipeline.publish(Level.INFO, "busy");
+            Thread.sleep(1);
+        }
+        assertTrue(pipeline.getLinesPerSecond() > 0);
+        Thread.sleep(2_500);
+        assertEquals(0.0, pipeline.getLinesPerSecond());
+        pipeline.close();
+    }
+}
@@ -0,0 +1,45 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import org.junit.jupiter.api.Test;
+
+class LogQueryTest {
+
+    private static final DateTimeFormatter LINE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Test
+    void fillsInTheRestOfAMinuteOrDay() {
+        assertEquals("2024-05-01 00:00:00", LogQuery.parseTime("2024-05-01", false));
+        assertEquals("2024-05-01 23:59:59", LogQuery.parseTime("2024-05-01", true));
+        assertEquals("2024-05-01 14:02:00", LogQuery.parseTime("2024-05-01 14:02", false));
+        assertEquals("2024-05-01 14:02:59", LogQuery.parseTime("2024-05-01T14:02", true));
+        assertEquals("2024-05-01 14:02:30", LogQuery.parseTime(" 2024-05-01 14:02:30 ", true));
+    }
+
+    @Test
+    void readsATimeOfDayAsToday() {
+        String today = LocalDate.now().toString();
+        assertEquals(today + " 09:05:00", LogQuery.parseTime("9:05", false));
+        assertEquals(today + " 14:02:30", LogQuery.parseTime("14:02:30", true));
+    }
+
+    @Test
+    void readsRelativeTimesAsAgo() {
+        LocalDateTime before = LocalDateTime.now().withNano(0).minusMinutes(30);
+        LocalDateTime parsed = LocalDateTime.parse(LogQuery.parseTime("30m", false), LINE_TIME);
+        assertTrue(!parsed.isBefore(before) && !parsed.isAfter(before.plusSeconds(2)), parsed.toString());
+    }
+
+    @Test
+    void rejectsWhatItCannotRead() {
+        assertThrows(IllegalArgumentException.class, () -> LogQuery.parseTime("yesterday", false));
+        assertThrows(IllegalArgumentException.class, () -> LogQuery.parseTime("2024-05-32", false));
+        assertThrows(IllegalArgumentException.class, () -> LogQuery.parseTime("25:00", false));
+    }
+}
@@ -0,0 +1,126 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MemoryWatchdogTest {
+
+    private static final long MB = 1024L * 1024;
+    private static final long GB = 1024 * MB;
+
+    @TempDir
+    Path directory;
+
+    private MemoryWatchdog watchdog(String name, boolean java) {
+        MemoryConfig config = new MemoryConfig();
+        config.setDumpDirectory(directory.toString());
+        config.setMaxDumps(2);
+        config.setMaxDumpBytes("1G");
+        return new MemoryWatchdog(config, name, name, null, java);
+    }
+
+    private static boolean uncaught(String line) {
+        byte[] bytes = Bytes.ascii(line);
+        return MemoryWatchdog.isUncaughtOom(bytes, 0, bytes.length);
+    }
+
+    private static void feed(StreamGobbler.LineListener listener, String line) {
+        byte[] bytes = Bytes.ascii(line);
+        listener.onLine(bytes, 0, bytes.length);
+    }
+
+    private static String scrape(MemoryWatchdog watchdog) {
+        Metrics metrics = new Metrics();
+        metrics.register(watchdog);
+        return metrics.scrape(-1);
+    }
+
+    @Test
+    void growsTheHeapByAQuarterWithinTheHeadroom() {
+        assertEquals(1280 * MB, MemoryWatchdog.grownHeap(GB, GB, 4 * GB, 1536 * MB));
+        // Only 216M left after the tenth for everything else, rounded down to whole 16M steps
+        assertEquals(3280 * MB, MemoryWatchdog.grownHeap(3 * GB, 2 * GB, 10 * GB, 9000 * MB));
+        // Never beyond twice the configured heap
+        assertEquals(2 * GB, MemoryWatchdog.grownHeap(1800 * MB, GB, 16 * GB, 2 * GB));
+        assertEquals(-1, MemoryWatchdog.grownHeap(2 * GB, GB, 16 * GB, 2 * GB));
+        // No headroom left
+        assertEquals(-1, MemoryWatchdog.grownHeap(GB, GB, 2 * GB, 1900 * MB));
+    }
+
+    @Test
+    void shrinksTheHeapAfterAnOomKill() {
+        // By the overshoot above nine tenths of the limit, as it is more than a tenth of the heap
+        assertEquals(2656 * MB, MemoryWatchdog.shrunkHeap(3 * GB, 3 * GB, 4 * GB, 4 * GB));
+        // By a tenth when the peak looked fine
+        assertEquals(1840 * MB, MemoryWatchdog.shrunkHeap(2 * GB, 2 * GB, 4 * GB, 3 * GB));
+        // Straight to three quarters of the limit when the heap alone did not fit
+        assertEquals(3 * GB, MemoryWatchdog.shrunkHeap(4 * GB, 4 * GB, 4 * GB, 3 * GB));
+        // Never below half the configured heap
+        assertEquals(512 * MB, MemoryWatchdog.shrunkHeap(528 * MB, GB, 4 * GB, 4 * GB));
+        assertEquals(-1, MemoryWatchdog.shrunkHeap(512 * MB, GB, 4 * GB, 4 * GB));
+    }
+
+    @Test
+    void recognizesOnlyUncaughtOutOfMemoryErrors() {
+        assertTrue(uncaught("Exception in thread \"Server thread\" java.lang.OutOfMemoryError: Java heap space"));
+        assertTrue(uncaught("  Exception in thread \"main\" java.lang.OutOfMemoryError: Metaspace"));
+        assertFalse(uncaught("[12:00:00 WARN]: Caught java.lang.OutOfMemoryError while loading a chunk, skipping it"));
+        assertFalse(uncaught("Exception in thread \"main\" java.lang.IllegalStateException"));
+        assertFalse(uncaught("Exception in thread"));
+    }
+
+    @Test
+    void countsAJvmOomFromTheTerminatingLineOrAnUncaughtErrorOnly() {
+        MemoryWatchdog logged = watchdog("server", false);
+        feed(logged, "[12:00:00 ERROR]: Exception in thread \"Server thread\" java.lang.OutOfMemoryError: Java heap space");
+        feed(logged.errorListener(), "[12:00:00 WARN]: Plugin survived a java.lang.OutOfMemoryError");
+        logged.onExit(1);
+        assertTrue(scrape(logged).contains("anyjar_oom_total{kind=\"jvm\"} 0\n"));
+
+        MemoryWatchdog terminated = watchdog("server", false);
+        feed(terminated, "Terminating due to java.lang.OutOfMemoryError: Java heap space");
+        terminated.onExit(3);
+        assertTrue(scrape(terminated).contains("anyjar_oom_total{kind=\"jvm\"} 1\n"));
+
+        MemoryWatchdog uncaught = watchdog("server", false);
+        feed(uncaught.errorListener(), "Exception in thread \"Server thread\" java.lang.OutOfMemoryError: Java heap space");
+        uncaught.onExit(1);
+        assertTrue(scrape(uncaught).contains("anyjar_oom_total{kind=\"jvm\"} 1\n"));
+    }
+
+    @Test
+    void keepsAndPrunesOnlyItsOwnDumps() throws Exception {
+        Path others = Files.write(directory.resolve("hub-2024-01-01_00-00-00.hprof"), new byte[10]);
+        Path othersPending = Files.write(directory.resolve("hub-pending.hprof"), new byte[10]);
+        Path older = Files.write(directory.resolve("lobby-2024-01-01_00-00-00.hprof"), new byte[10]);
+        older.toFile().setLastModified(System.currentTimeMillis() - 60_000);
+        Path lookalike = Files.write(directory.resolve("lobby-2-2024-01-01_00-00-00.hprof"), new byte[10]);
+        lookalike.toFile().setLastModified(System.currentTimeMillis() - 120_000);
+        Files.write(directory.resolve("lobby-pending.hprof"), new byte[10]);
+
+        MemoryWatchdog watchdog = watchdog("lobby", true);
+        List<String> flags = watchdog.jvmFlags(List.of("-Xmx16M"));
+        assertTrue(flags.contains("-XX:HeapDumpPath=" + directory.toAbsolutePath().normalize().resolve("lobby-pending.hprof")), flags.toString());
+
+        // The left-over dump was kept under a dated name, and one dump of lobby's is left to make room for the next
+        assertFalse(Files.exists(directory.resolve("lobby-pending.hprof")));
+        assertFalse(Files.exists(older));
+        assertTrue(Files.exists(others));
+        assertTrue(Files.exists(othersPending));
+        assertTrue(Files.exists(lookalike));
+        assertTrue(scrape(watchdog).contains("anyjar_heap_dumps_total 1\n"));
+        long lobby;
+        try (Stream<Path> files = Files.list(directory)) {
+            lobby = files.filter(p -> p.getFileName().toString().matches("lobby-\\d{4}.*\\.hprof")).count();
+        }
+        assertEquals(1, lobby);
+    }
+}
@@ -0,0 +1,90 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class StreamGobblerTest {
+
+    /**
+     * Hands out the input a few bytes per read, so lines straddle reads.
+     */
+    private static class ChunkedStream extends ByteArrayInputStream {
+
+        private final int chunk;
+
+        ChunkedStream(byte[] data, int chunk) {
+            super(data);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+    }
+
+    private static List<String> lines(InputStream in) {
+        List<String> lines = new ArrayList<>();
+        StreamGobbler.LineListener listener = (buffer, offset, length) ->
+            lines.add(new String(buffer, offset, length, StandardCharsets.UTF_8));
+        new StreamGobbler(in, Collections.singletonList(listener)).run();
+        return lines;
+    }
+
+    @Test
+    void splitsLinesThatStraddleReads() {
+        byte[] data = "first line\nsecond\r\n\nthird".getBytes(StandardCharsets.UTF_8);
+        for (int chunk = 1; chunk <= data.length; chunk++) {
+            assertEquals(
+                Arrays.asList("first line", "second", "", "third"),
+                lines(new ChunkedStream(data, chunk)),
+                "chunk " + chunk
+            );
+        }
+    }
+
+    @Test
+    void keepsLinesLongerThanTheInitialBufferWhole() {
+        char[] longLine = new char[200_000];
+        Arrays.fill(longLine, 'x');
+        String text = new String(longLine);
+        byte[] data = ("a\n" + text + "\nb\n").getBytes(StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList("a", text, "b"), lines(new ChunkedStream(data, 8192)));
+    }
+
+    @Test
+    void splitsOverlongLinesAtTheLimit() {
+        int limit = 1024 * 1024;
+        byte[] data = new byte[limit + 101];
+        Arrays.fill(data, (byte) 'y');
+        data[data.length - 1] = '\n';
+        List<String> lines = lines(new ChunkedStream(data, 64 * 1024));
+        assertEquals(2, lines.size());
+        assertEquals(limit, lines.get(0).length());
+        assertEquals(100, lines.get(1).length());
+    }
+
+    @Test
+    void flushesListenersAfterTheStreamEnds() {
+        int[] flushes = { 0 };
+        StreamGobbler.LineListener listener = new StreamGobbler.LineListener() {
+            @Override
+            public void onLine(byte[] buffer, int offset, int length) {}
+
+            @Override
+            public void flush() {
+                flushes[0]++;
+            }
+        };
+        new StreamGobbler(new ByteArrayInputStream(new byte[0]), Collections.singletonList(listener)).run();
+        assertEquals(1, flushes[0]);
+    }
+}
@@ -0,0 +1,103 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class SupervisorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private static RestartConfig config(String policy) {
+        RestartConfig config = new RestartConfig();
+        config.setPolicy(policy);
+        config.setInitialBackoff("1s");
+        config.setMaxBackoff("10s");
+        config.setJitter(0);
+        config.setStableAfter("60s");
+        config.setCrashLoopLimit(0);
+        config.setCrashLoopWindow("10m");
+        return config;
+    }
+
+    /**
+     * Runs the child for the given time and lets it exit.
+     * @return The restart delay
+     */
+    private static long run(Supervisor supervisor, long[] clock, long seconds, int exitCode) {
+        supervisor.onLaunch(clock[0]);
+        clock[0] += seconds * SECOND;
+        long delay = supervisor.onExit(exitCode, clock[0]);
+        clock[0] += Math.max(0, delay) * 1_000_000;
+        return delay;
+    }
+
+    @Test
+    void backsOffExponentiallyUpToTheMaximum() {
+        Supervisor supervisor = new Supervisor(config("always"), "server");
+        long[] clock = { SECOND };
+        long[] delays = new long[6];
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = run(supervisor, clock, 5, 1);
+        }
+        assertArrayEquals(new long[] { 1000, 2000, 4000, 8000, 10000, 10000 }, delays);
+        assertEquals(6, supervisor.getRestarts());
+    }
+
+    @Test
+    void startsOverAfterAStableRun() {
+        Supervisor supervisor = new Supervisor(config("always"), "server");
+        long[] clock = { SECOND };
+        run(supervisor, clock, 5, 1);
+        run(supervisor, clock, 5, 1);
+        assertEquals(4000, run(supervisor, clock, 5, 1));
+        assertEquals(1000, run(supervisor, clock, 60, 1));
+        assertEquals(2000, run(supervisor, clock, 5, 1));
+    }
+
+    @Test
+    void keepsJitterWithinItsShare() {
+        RestartConfig config = config("always");
+        config.setJitter(0.2);
+        config.setInitialBackoff("10s");
+        config.setMaxBackoff("10s");
+        Supervisor supervisor = new Supervisor(config, "server");
+        long[] clock = { SECOND };
+        for (int i = 0; i < 100; i++) {
+            long delay = run(supervisor, clock, 5, 1);
+            assertTrue(delay >= 8000 && delay <= 12000, "delay " + delay);
+        }
+    }
+
+    @Test
+    void givesUpOnACrashLoopWithinTheWindowOnly() {
+        RestartConfig config = config("always");
+        config.setCrashLoopLimit(3);
+        config.setCrashLoopWindow("60s");
+        Supervisor supervisor = new Supervisor(config, "server");
+        long[] clock = { SECOND };
+        // Exits a minute apart never put three into one window
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1000, run(supervisor, clock, 61, 1));
+        }
+        // The last long run's exit plus two quick ones do
+        assertEquals(2000, run(supervisor, clock, 5, 1));
+        assertEquals(-1, run(supervisor, clock, 5, 1));
+    }
+
+    @Test
+    void followsThePolicy() {
+        long[] clock = { SECOND };
+        assertEquals(-1, run(new Supervisor(config("never"), "server"), clock, 5, 1));
+        assertEquals(-1, run(new Supervisor(config("on-failure"), "server"), clock, 5, 0));
+        assertEquals(1000, run(new Supervisor(config("on-failure"), "server"), clock, 5, 1));
+        assertEquals(1000, run(new Supervisor(config("always"), "server"), clock, 5, 0));
+        assertEquals(-1, run(new Supervisor(config("sometimes"), "server"), clock, 5, 1));
+
+        Supervisor stopped = new Supervisor(config("always"), "server");
+        stopped.requestStop();
+        assertEquals(-1, run(stopped, clock, 5, 1));
+    }
+}
@@ -0,0 +1,129 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TickHealthAnalyzerTest {
+
+    private static void feed(TickHealthAnalyzer analyzer, String... lines) {
+        for (String line : lines) {
+            // Pad on both sides so the slice does not start at the beginning of the buffer
+            byte[] padded = Bytes.ascii("xx" + line + "yy");
+            analyzer.onLine(padded, 2, padded.length - 4);
+        }
+    }
+
+    private static String scrape(TickHealthAnalyzer analyzer) {
+        Metrics metrics = new Metrics();
+        metrics.register(analyzer);
+        return metrics.scrape(-1);
+    }
+
+    @Test
+    void parsesLagWarnings() {
+        TickHealthAnalyzer analyzer = new TickHealthAnalyzer();
+        long before = System.currentTimeMillis();
+        feed(
+            analyzer,
+            "[12:00:00 WARN]: Can't keep up! Is the server overloaded? Running 2034ms or 40 ticks behind",
+            "[12:00:05 WARN]: Can't keep up! Is the server overloaded? Running 5000ms or 100 ticks behind",
+            "[12:00:09 WARN]: Can't keep up! Did the system time change, or is the server overloaded?"
+        );
+        assertEquals(3, analyzer.getLagEvents());
+        assertEquals(3, analyzer.lagEventsSince(before));
+        String metrics = scrape(analyzer);
+        assertTrue(metrics.contains("anyjar_server_lag_behind_ms_total 7034\n"), metrics);
+        assertTrue(metrics.contains("anyjar_server_ticks_behind_bucket{le=\"20\"} 0\n"), metrics);
+        assertTrue(metrics.contains("anyjar_server_ticks_behind_bucket{le=\"50\"} 1\n"), metrics);
+        assertTrue(metrics.contains("anyjar_server_ticks_behind_bucket{le=\"100\"} 2\n"), metrics);
+        assertTrue(metrics.contains("anyjar_server_ticks_behind_sum 140\n"), metrics);
+        assertTrue(metrics.contains("anyjar_server_ticks_behind_count 2\n"), metrics);
+    }
+
+    @Test
+    void tracksPlayersFromJoinsLeavesAndList() {
+        TickHealthAnalyzer analyzer = new TickHealthAnalyzer();
+        feed(
+            analyzer,
+            "[12:00:00 INFO]: Steve joined the game",
+            "[12:00:01 INFO]: Alex joined the game",
+            "[12:00:02 INFO]: Steve left the game"
+        );
+        assertEquals(1, analyzer.getOnlinePlayers());
+        feed(analyzer, "[12:00:03 INFO]: There are 7 of a max of 20 players online: a, b");
+        assertEquals(7, analyzer.getOnlinePlayers());
+        feed(analyzer, "[12:00:04 INFO]: Alex left the game", "[12:00:05 INFO]: Alex left the game");
+        assertEquals(5, analyzer.getOnlinePlayers());
+        assertTrue(scrape(analyzer).contains("anyjar_server_players_online_peak 7\n"));
+    }
+
+    @Test
+    void countsWatchdogGcAndOutOfMemoryLines() {
+        TickHealthAnalyzer analyzer = new TickHealthAnalyzer();
+        feed(
+            analyzer,
+            "[12:00:00 ERROR]: The server has stopped responding! This is (probably) not a Paper bug.",
+            "[12:00:00 ERROR]: A single server tick took 60.00 seconds (should be max 0.05)",
+            "Exception in thread \"Server thread\" java.lang.OutOfMemoryError: Java heap space",
+            "[2.345s][warning][gc] GC locker stall",
+            "java.lang.OutOfMemoryError: GC overhead limit exceeded",
+            "[12:00:01 INFO]: nothing to see here"
+        );
+        assertEquals(2, analyzer.getOutOfMemoryErrors());
+        String metrics = scrape(analyzer);
+        assertTrue(metrics.contains("anyjar_server_watchdog_events_total 2\n"), metrics);
+        assertTrue(metrics.contains("anyjar_server_gc_warnings_total 1\n"), metrics);
+        assertEquals(0, analyzer.getLagEvents());
+    }
+
+    @Test
+    void lagWinsOverOtherMarkersOnTheSameLine() {
+        TickHealthAnalyzer analyzer = new TickHealthAnalyzer();
+        feed(analyzer, "<Steve> Steve joined the game? Can't keep up! Running 10ms or 2 ticks behind");
+        assertEquals(1, analyzer.getLagEvents());
+        assertEquals(0, analyzer.getOnlinePlayers());
+    }
+
+    @Test
+    void remembersAsManyLagEventsAsAsked() {
+        TickHealthAnalyzer analyzer = new TickHealthAnalyzer();
+        long before = System.currentTimeMillis();
+        String lag = "[12:00:00 WARN]: Can't keep up! Is the server overloaded? Running 2034ms or 40 ticks behind";
+        for (int i = 0; i < 70; i++) {
+            feed(analyzer, lag);
+        }
+        assertEquals(TickHealthAnalyzer.RECENT_LAG_EVENTS, analyzer.lagEventsSince(before));
+        analyzer.rememberLagEvents(100);
+        assertEquals(TickHealthAnalyzer.RECENT_LAG_EVENTS, analyzer.lagEventsSince(before));
+        for (int i = 0; i < 50; i++) {
+            feed(analyzer, lag);
+        }
+        assertEquals(100, analyzer.lagEventsSince(before));
+    }
+
+    @Test
+    void countsCorrectlyWhenBothStreamsFeedItAtOnce() throws InterruptedException {
+        TickHealthAnalyzer analyzer = new TickHealthAnalyzer();
+        Thread stdout = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                feed(analyzer, "[12:00:00 WARN]: Can't keep up! Is the server overloaded? Running 10ms or 2 ticks behind");
+            }
+        });
+        Thread stderr = new Thread(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                feed(analyzer, "Exception in thread \"Server thread\" java.lang.OutOfMemoryError: Java heap space");
+            }
+        });
+        stdout.start();
+        stderr.start();
+        stdout.join();
+        stderr.join();
+        assertEquals(20_000, analyzer.getLagEvents());
+        assertEquals(20_000, analyzer.getOutOfMemoryErrors());
+        String metrics = scrape(analyzer);
+        assertTrue(metrics.contains("anyjar_server_lag_behind_ms_total 200000\n"), metrics);
+        assertTrue(metrics.contains("anyjar_server_ticks_behind_sum 40000\n"), metrics);
+    }
+}
@@ -0,0 +1,52 @@
+package me.qclid;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class UnitsTest {
+
+    @Test
+    void parsesSizesWithAndWithoutUnits() {
+        assertEquals(4096, Units.parseBytes("4096"));
+        assertEquals(512L * 1024, Units.parseBytes("512K"));
+        assertEquals(100L * 1024 * 1024, Units.parseBytes("100M"));
+        assertEquals(100L * 1024 * 1024, Units.parseBytes(" 100mb "));
+        assertEquals(2L * 1024 * 1024 * 1024, Units.parseBytes("2G"));
+        assertEquals(1536L * 1024 * 1024, Units.parseBytes("1.5G"));
+        assertEquals(1024L * 1024 * 1024 * 1024, Units.parseBytes("1T"));
+    }
+
+    @Test
+    void rejectsSizesThatAreNotNumbers() {
+        assertThrows(IllegalArgumentException.class, () -> Units.parseBytes("GB"));
+        assertThrows(IllegalArgumentException.class, () -> Units.parseBytes(""));
+        assertThrows(IllegalArgumentException.class, () -> Units.parseBytes("lots"));
+    }
+
+    @Test
+    void parsesDurationsWithAndWithoutUnits() {
+        assertEquals(30_000, Units.parseMillis("30"));
+        assertEquals(250, Units.parseMillis("250ms"));
+        assertEquals(30_000, Units.parseMillis("30s"));
+        assertEquals(300_000, Units.parseMillis("5M"));
+        assertEquals(90_000, Units.parseMillis("1.5m"));
+        assertEquals(7_200_000, Units.parseMillis("2h"));
+        assertEquals(86_400_000, Units.parseMillis("1d"));
+    }
+
+    @Test
+    void rejectsDurationsThatAreNotNumbers() {
+        assertThrows(IllegalArgumentException.class, () -> Units.parseMillis("soon"));
+        assertThrows(IllegalArgumentException.class, () -> Units.parseMillis("ms"));
+    }
+
+    @Test
+    void formatsBytesInBinaryUnits() {
+        assertEquals("512 B", Units.formatBytes(512));
+        assertEquals("1.5 KiB", Units.formatBytes(1536));
+        assertEquals("2.0 GiB", Units.formatBytes(2L * 1024 * 1024 * 1024));
+        assertEquals("2048.0 TiB", Units.formatBytes(2048L * 1024 * 1024 * 1024 * 1024));
+    }
+}